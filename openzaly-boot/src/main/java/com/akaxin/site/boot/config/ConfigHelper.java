@@ -75,6 +75,18 @@ public class ConfigHelper implements ConfigKey {
 		return Integer.parseInt(configValue);
 	}
 
+	/**
+	 * 启动时没有通过-D设置的调优参数，使用配置文件中的值设置到系统属性，各模块通过System.getProperty读取
+	 */
+	public static void loadTuningConfig() {
+		for (String configName : SITE_TUNING_CONFIGS) {
+			Object configValue = getProperties().get(configName);
+			if (StringUtils.isBlank(System.getProperty(configName)) && configValue != null) {
+				System.setProperty(configName, configValue.toString());
+			}
+		}
+	}
+
 	public static Map<Integer, String> getConfigMap() {
 		Map<Integer, String> configMap = new HashMap<Integer, String>();
 		configMap.put(ConfigProto.ConfigKey.SITE_ADDRESS_VALUE, getStringConfig(SITE_ADDRESS));
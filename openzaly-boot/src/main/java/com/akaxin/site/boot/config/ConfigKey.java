@@ -41,4 +41,98 @@ public interface ConfigKey {
 	public String SITE_BASE_DIR = "site.baseDir";
 	// 最大成员人数
 	public String GROUP_MEMBERS_COUNT = "group.members.count";
+	// netty解码器模式 replay/frame
+	public String SITE_DECODER = "site.decoder";
+	// 业务线程数，0表示在netty I/O线程中执行业务
+	public String SITE_WORKER_THREADS = "site.worker.threads";
+	// 业务线程池队列大小
+	public String SITE_WORKER_QUEUE = "site.worker.queue";
+	// 单个连接允许积压的请求数，超过后暂停读取
+	public String SITE_WORKER_CHANNEL_PENDING = "site.worker.channel.pending";
+	// 数据库连接模式 single(单连接)/pool(WAL单写线程+只读连接池)
+	public String SITE_DB_MODE = "site.db.mode";
+	// pool模式下只读连接数
+	public String SITE_DB_READERS = "site.db.readers";
+	// pool模式下写连接的synchronous：full(默认，提交即落盘)/normal(更快，断电可能丢失最近的提交)
+	public String SITE_DB_SYNCHRONOUS = "site.db.synchronous";
+	// 群消息存储模式 join(同步时逐群查询)/inbox(写扩散，同步只查有新消息的群)
+	public String SITE_GROUP_STORAGE = "site.group.storage";
+	// 以下调优参数由各模块通过System.getProperty读取，启动时没有-D设置的，由Bootstrap用配置文件中的值补上
+	// im消息按发送者分段执行的段数，0表示cpu核数*2；每段队列大小
+	public String SITE_MESSAGE_STRIPES = "site.message.stripes";
+	public String SITE_MESSAGE_STRIPE_QUEUE = "site.message.stripe.queue";
+	// 消息批量写库：每批最多条数、攒批等待毫秒数、写队列大小
+	public String SITE_MESSAGE_BATCH_SIZE = "site.message.batch.size";
+	public String SITE_MESSAGE_BATCH_DELAY = "site.message.batch.delay";
+	public String SITE_MESSAGE_BATCH_QUEUE = "site.message.batch.queue";
+	// 二人消息游标合并刷库的间隔毫秒数
+	public String SITE_POINTER_FLUSH_INTERVAL = "site.pointer.flush.interval";
+	// inbox模式启动时重建群收件箱
+	public String SITE_GROUP_INBOX_REBUILD = "site.group.inbox.rebuild";
+	// 同步消息时连接不可写的最长等待毫秒数
+	public String SITE_SYNC_WRITE_TIMEOUT = "site.sync.write.timeout";
+	// 存储缓存大小（key个数）与写入后过期秒数
+	public String SITE_CACHE_POINTER_SIZE = "site.cache.pointer.size";
+	public String SITE_CACHE_SESSION_SIZE = "site.cache.session.size";
+	public String SITE_CACHE_SESSION_TTL = "site.cache.session.ttl";
+	public String SITE_CACHE_SESSION_NEGATIVE_TTL = "site.cache.session.negative.ttl";
+	public String SITE_CACHE_USER_SIZE = "site.cache.user.size";
+	public String SITE_CACHE_USER_TTL = "site.cache.user.ttl";
+	public String SITE_CACHE_USER_FRIENDS_SIZE = "site.cache.user.friends.size";
+	public String SITE_CACHE_USER_FRIENDS_TTL = "site.cache.user.friends.ttl";
+	public String SITE_CACHE_USER_GROUPS_SIZE = "site.cache.user.groups.size";
+	public String SITE_CACHE_GROUP_SIZE = "site.cache.group.size";
+	public String SITE_CACHE_GROUP_TTL = "site.cache.group.ttl";
+	// push：合并窗口毫秒数、每批用户数、最多等待合并的用户数
+	public String SITE_PUSH_WINDOW = "site.push.window";
+	public String SITE_PUSH_BATCH_SIZE = "site.push.batch.size";
+	public String SITE_PUSH_MAX_PENDING_USERS = "site.push.max.pending.users";
+	// push服务地址、端口、超时毫秒数、连接数、每个连接最多未响应请求数
+	public String SITE_PUSH_ADDRESS = "site.push.address";
+	public String SITE_PUSH_PORT = "site.push.port";
+	public String SITE_PUSH_TIMEOUT = "site.push.timeout";
+	public String SITE_PUSH_CONNECTIONS = "site.push.connections";
+	public String SITE_PUSH_MAX_PENDING = "site.push.max.pending";
+	// push线程池，队列满时的策略 drop-oldest/drop-newest
+	public String SITE_PUSH_THREADS_CORE = "site.push.threads.core";
+	public String SITE_PUSH_THREADS_MAX = "site.push.threads.max";
+	public String SITE_PUSH_QUEUE_SIZE = "site.push.queue.size";
+	public String SITE_PUSH_OVERFLOW_POLICY = "site.push.overflow.policy";
+	// 文件存储方式 date(按日期目录)/cas(按内容hash去重)
+	public String SITE_FILE_STORE = "site.file.store";
+	// 分片上传：每片最大字节数、文件最大字节数、未完成上传的过期秒数
+	public String SITE_FILE_CHUNK_MAX = "site.file.chunk.max";
+	public String SITE_FILE_MAX_SIZE = "site.file.max.size";
+	public String SITE_FILE_UPLOAD_EXPIRE = "site.file.upload.expire";
+	// 缩略图：小图/中图最长边像素、线程数、队列大小、原图最大像素数
+	public String SITE_FILE_THUMB_SMALL = "site.file.thumb.small";
+	public String SITE_FILE_THUMB_MEDIUM = "site.file.thumb.medium";
+	public String SITE_FILE_THUMB_THREADS = "site.file.thumb.threads";
+	public String SITE_FILE_THUMB_QUEUE = "site.file.thumb.queue";
+	public String SITE_FILE_THUMB_MAX_PIXELS = "site.file.thumb.max.pixels";
+	// 文件内存缓存：总字节数、单个文件最大字节数、是否堆外、加载线程数、加载队列大小
+	public String SITE_FILE_CACHE_SIZE = "site.file.cache.size";
+	public String SITE_FILE_CACHE_MAX_FILE = "site.file.cache.max.file";
+	public String SITE_FILE_CACHE_OFFHEAP = "site.file.cache.offheap";
+	public String SITE_FILE_CACHE_LOADER_THREADS = "site.file.cache.loader.threads";
+	public String SITE_FILE_CACHE_LOADER_QUEUE = "site.file.cache.loader.queue";
+	// http文件下载：是否开启、公开文件缓存秒数、读文件线程数、队列大小
+	public String SITE_HTTP_FILE_ENABLED = "site.http.file.enabled";
+	public String SITE_HTTP_FILE_MAX_AGE = "site.http.file.max.age";
+	public String SITE_HTTP_FILE_THREADS = "site.http.file.threads";
+	public String SITE_HTTP_FILE_QUEUE = "site.http.file.queue";
+
+	public String[] SITE_TUNING_CONFIGS = { SITE_MESSAGE_STRIPES, SITE_MESSAGE_STRIPE_QUEUE, SITE_MESSAGE_BATCH_SIZE,
+			SITE_MESSAGE_BATCH_DELAY, SITE_MESSAGE_BATCH_QUEUE, SITE_POINTER_FLUSH_INTERVAL, SITE_GROUP_INBOX_REBUILD,
+			SITE_SYNC_WRITE_TIMEOUT, SITE_CACHE_POINTER_SIZE, SITE_CACHE_SESSION_SIZE, SITE_CACHE_SESSION_TTL,
+			SITE_CACHE_SESSION_NEGATIVE_TTL, SITE_CACHE_USER_SIZE, SITE_CACHE_USER_TTL, SITE_CACHE_USER_FRIENDS_SIZE,
+			SITE_CACHE_USER_FRIENDS_TTL, SITE_CACHE_USER_GROUPS_SIZE, SITE_CACHE_GROUP_SIZE, SITE_CACHE_GROUP_TTL,
+			SITE_PUSH_WINDOW, SITE_PUSH_BATCH_SIZE, SITE_PUSH_MAX_PENDING_USERS, SITE_PUSH_ADDRESS, SITE_PUSH_PORT,
+			SITE_PUSH_TIMEOUT, SITE_PUSH_CONNECTIONS, SITE_PUSH_MAX_PENDING, SITE_PUSH_THREADS_CORE,
+			SITE_PUSH_THREADS_MAX, SITE_PUSH_QUEUE_SIZE, SITE_PUSH_OVERFLOW_POLICY, SITE_FILE_STORE,
+			SITE_FILE_CHUNK_MAX, SITE_FILE_MAX_SIZE, SITE_FILE_UPLOAD_EXPIRE, SITE_FILE_THUMB_SMALL,
+			SITE_FILE_THUMB_MEDIUM, SITE_FILE_THUMB_THREADS, SITE_FILE_THUMB_QUEUE, SITE_FILE_THUMB_MAX_PIXELS,
+			SITE_FILE_CACHE_SIZE, SITE_FILE_CACHE_MAX_FILE, SITE_FILE_CACHE_OFFHEAP, SITE_FILE_CACHE_LOADER_THREADS,
+			SITE_FILE_CACHE_LOADER_QUEUE, SITE_HTTP_FILE_ENABLED, SITE_HTTP_FILE_MAX_AGE, SITE_HTTP_FILE_THREADS,
+			SITE_HTTP_FILE_QUEUE };
 }
@@ -8,11 +8,10 @@ import org.apache.log4j.Logger;
 
 import com.akaxin.common.logs.LogCreater;
 import com.akaxin.common.logs.LogUtils;
-import com.akaxin.site.business.impl.site.SiteConfig;
 import com.akaxin.site.message.utils.SiteConfigHelper;
 
 /**
- * 站点配置监听器，定时更新缓存中数据
+ * 站点配置监听器，定时从数据库刷新配置快照；配置写入时已即时刷新，这里仅作为兜底
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-02-01 14:52:50
@@ -28,7 +27,7 @@ public class ConfigListener {
 				doListenning();
 			}
 
-		}, 20, 20, TimeUnit.SECONDS);
+		}, 60, 60, TimeUnit.SECONDS);
 	}
 
 	public static void startListenning() {
@@ -36,9 +35,7 @@ public class ConfigListener {
 	}
 
 	public static void doListenning() {
-		Map<Integer, String> apiConfigMap = SiteConfigHelper.updateConfig();
-		LogUtils.info(logger, "update api site config={}", apiConfigMap);
-		Map<Integer, String> imConfigMap = SiteConfig.updateConfig();
-		LogUtils.info(logger, "update im site config={}", imConfigMap);
+		Map<Integer, String> configMap = SiteConfigHelper.updateConfig();
+		LogUtils.info(logger, "update site config={}", configMap);
 	}
 }
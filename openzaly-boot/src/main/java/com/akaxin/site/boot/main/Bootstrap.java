@@ -57,18 +57,32 @@ public class Bootstrap {
 	public static void main(String[] args) {
 		logger.info("start openzaly site server...");
 		try {
+			// 各模块的调优参数在类加载时读取，需要最先设置
+			ConfigHelper.loadTuningConfig();
 			String siteAddress = ConfigHelper.getStringConfig(ConfigKey.SITE_ADDRESS);
 			int sitePort = ConfigHelper.getIntConfig(ConfigKey.SITE_PORT);
+			String siteDecoder = ConfigHelper.getStringConfig(ConfigKey.SITE_DECODER);
+			int workerThreads = ConfigHelper.getIntConfig(ConfigKey.SITE_WORKER_THREADS);
+			int workerQueue = ConfigHelper.getIntConfig(ConfigKey.SITE_WORKER_QUEUE);
+			int channelPending = ConfigHelper.getIntConfig(ConfigKey.SITE_WORKER_CHANNEL_PENDING);
 			String httpAddress = ConfigHelper.getStringConfig(ConfigKey.HTTP_ADDRESS);
 			int httpPort = ConfigHelper.getIntConfig(ConfigKey.HTTP_PORT);
 			String adminAddress = ConfigHelper.getStringConfig(ConfigKey.SITE_ADMIN_ADDRESS);
 			int adminPort = ConfigHelper.getIntConfig(ConfigKey.SITE_ADMIN_PORT);
 			String dbDir = ConfigHelper.getStringConfig(ConfigKey.SITE_BASE_DIR);
 			String adminUic = ConfigHelper.getStringConfig(ConfigKey.SITE_ADMIN_UIC);
+			String dbMode = ConfigHelper.getStringConfig(ConfigKey.SITE_DB_MODE);
+			int dbReaders = ConfigHelper.getIntConfig(ConfigKey.SITE_DB_READERS);
+			String dbSynchronous = ConfigHelper.getStringConfig(ConfigKey.SITE_DB_SYNCHRONOUS);
+			String groupStorage = ConfigHelper.getStringConfig(ConfigKey.SITE_GROUP_STORAGE);
 			Map<Integer, String> siteConfigMap = ConfigHelper.getConfigMap();
 
 			DBConfigBean bean = new DBConfigBean();
 			bean.setDbDir(dbDir);
+			bean.setDbMode(dbMode);
+			bean.setDbReaders(dbReaders);
+			bean.setDbSynchronous(dbSynchronous);
+			bean.setGroupStorage(groupStorage);
 			bean.setAdminAddress(adminAddress);
 			bean.setAdminPort(adminPort);
 			bean.setAdminUic(adminUic);
@@ -80,7 +94,7 @@ public class Bootstrap {
 
 			initDataSource(bean);
 			startHttpServer(httpAddress, httpPort);
-			startNettyServer(siteAddress, sitePort);
+			startNettyServer(siteAddress, sitePort, siteDecoder, workerThreads, workerQueue, channelPending);
 			addConfigListener();
 		} catch (Exception e) {
 			logger.error("start Bootstrap args exception.args:{}", Arrays.toString(args));
@@ -115,9 +129,14 @@ public class Bootstrap {
 	 * 
 	 * @param address
 	 * @param port
+	 * @param decoderMode
+	 * @param workerThreads
+	 * @param workerQueue
+	 * @param channelPending
 	 */
-	private static void startNettyServer(String address, int port) {
-		new NettyServer() {
+	private static void startNettyServer(String address, int port, String decoderMode, int workerThreads,
+			int workerQueue, int channelPending) {
+		NettyServer nettyServer = new NettyServer() {
 
 			@Override
 			public void loadExecutor(AbstracteExecutor<Command> executor) {
@@ -126,7 +145,10 @@ public class Bootstrap {
 				executor.addChain(RequestAction.API.getName(), new ApiRequestHandler());
 			}
 
-		}.start(address, port);
+		};
+		nettyServer.setDecoderMode(decoderMode);
+		nettyServer.setExecutionStage(workerThreads, workerQueue, channelPending);
+		nettyServer.start(address, port);
 		logger.info("start openzaly netty server {}:{} ok.", address, port);
 	}
 
@@ -21,11 +21,12 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.akaxin.site.message.utils.SiteConfigHelper;
 import com.akaxin.site.storage.api.ISiteConfigDao;
 import com.akaxin.site.storage.service.SiteConfigDaoService;
 
 /**
- * 站点配置，供业务逻辑使用
+ * 站点配置，供业务逻辑使用；写入成功后立即刷新SiteConfigHelper中的配置快照
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-25 16:18:58
@@ -66,16 +67,25 @@ public class SiteConfigDao {
 			}
 		} catch (SQLException e) {
 			logger.error("update site configmap error.", e);
+		} finally {
+			if (count > 0) {
+				SiteConfigHelper.updateConfig();
+			}
 		}
 		return false;
 	}
 
 	public boolean updateSiteConfig(int key, String value) {
+		int count = 0;
 		try {
-			return siteConfigDao.updateSiteConfig(key, value) > 0;
+			count = siteConfigDao.updateSiteConfig(key, value);
 		} catch (SQLException e) {
 			logger.error("update site config error.", e);
+		} finally {
+			if (count > 0) {
+				SiteConfigHelper.updateConfig();
+			}
 		}
-		return false;
+		return count > 0;
 	}
 }
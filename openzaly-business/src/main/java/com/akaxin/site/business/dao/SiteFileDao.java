@@ -0,0 +1,86 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.business.dao;
+
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.site.storage.api.IFileRefDao;
+import com.akaxin.site.storage.service.FileRefDaoService;
+
+/**
+ * 内容寻址存储的文件引用计数
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-21 15:20:18
+ */
+public class SiteFileDao {
+	private static final Logger logger = LoggerFactory.getLogger(SiteFileDao.class);
+	private IFileRefDao fileRefDao = new FileRefDaoService();
+	private static SiteFileDao instance = new SiteFileDao();
+
+	public static SiteFileDao getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 增加引用，失败返回-1
+	 */
+	public int addFileRef(String fileId, long fileSize, int fileType) {
+		try {
+			return fileRefDao.addFileRef(fileId, fileSize, fileType);
+		} catch (SQLException e) {
+			logger.error("add file ref error.", e);
+		}
+		return -1;
+	}
+
+	/**
+	 * 上传时记录的文件类型，记录不存在或失败返回0（FileType.UNKNOWN_FILE）
+	 */
+	public int getFileType(String fileId) {
+		try {
+			return fileRefDao.getFileType(fileId);
+		} catch (SQLException e) {
+			logger.error("get file type error.", e);
+		}
+		return 0;
+	}
+
+	public boolean updateFileType(String fileId, int fileType) {
+		try {
+			return fileRefDao.updateFileType(fileId, fileType);
+		} catch (SQLException e) {
+			logger.error("update file type error.", e);
+		}
+		return false;
+	}
+
+	/**
+	 * 减少引用，返回剩余引用数；记录不存在或失败返回-1
+	 */
+	public int releaseFileRef(String fileId) {
+		try {
+			return fileRefDao.releaseFileRef(fileId);
+		} catch (SQLException e) {
+			logger.error("release file ref error.", e);
+		}
+		return -1;
+	}
+
+}
@@ -17,7 +17,10 @@ package com.akaxin.site.business.dao;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +55,18 @@ public class UserProfileDao {
 		return userBean;
 	}
 
+	/**
+	 * 批量查询用户简要资料，查询失败返回空map
+	 */
+	public Map<String, SimpleUserBean> getSimpleProfiles(Collection<String> siteUserIds) {
+		try {
+			return userProfileDao.getSimpleProfiles(siteUserIds);
+		} catch (SQLException e) {
+			logger.error("get User Simple Profiles error.", e);
+		}
+		return new HashMap<String, SimpleUserBean>();
+	}
+
 	public SimpleUserBean getSimpleProfileByPubk(String userIdPubk) {
 		SimpleUserBean userBean = new SimpleUserBean();
 		try {
@@ -1,11 +1,10 @@
 package com.akaxin.site.business.impl;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.akaxin.common.chain.MethodInvokerTable;
+import com.akaxin.common.chain.MethodInvokerTable.MethodInvoker;
 import com.akaxin.common.command.Command;
 import com.akaxin.common.command.CommandResponse;
 import com.akaxin.common.constant.CommandConst;
@@ -17,28 +16,23 @@ import com.akaxin.common.constant.ErrorCode;
  */
 public abstract class AbstractRequest implements IRequestService {
 	private static final Logger logger = LoggerFactory.getLogger(AbstractRequest.class);
+	private final MethodInvokerTable methodTable = MethodInvokerTable.forClass(this.getClass(), Command.class);
 
 	public CommandResponse execute(Command command) {
-		return executeMethodByReflect(command);
+		return executeMethod(command);
 	}
 
-	private CommandResponse executeMethodByReflect(Command command) {
+	private CommandResponse executeMethod(Command command) {
+		String methodName = command.getMethod();
 		try {
 			logger.info("AbstractApiBusiness command={}", command.toString());
-			String methodName = command.getMethod();
-			Method m = this.getClass().getDeclaredMethod(methodName, command.getClass());
-			CommandResponse result = (CommandResponse) m.invoke(this, command);
-			return result;
-		} catch (NoSuchMethodException e) {
-			logger.error("request business NoSuchMethod error.", e);
-		} catch (SecurityException e) {
-			logger.error("request business Security error.", e);
-		} catch (IllegalAccessException e) {
-			logger.error("request business IllegalAccess error.", e);
-		} catch (IllegalArgumentException e) {
-			logger.error("request business IllegalArgument error.", e);
-		} catch (InvocationTargetException e) {
-			logger.error("request business InvocationTarget error.", e);
+			MethodInvoker invoker = methodTable.getInvoker(methodName);
+			if (invoker != null) {
+				return (CommandResponse) invoker.invoke(this, command);
+			}
+			logger.error("request business NoSuchMethod error. method={}", methodName);
+		} catch (Throwable e) {
+			logger.error("request business invoke error. method=" + methodName, e);
 		}
 		return new CommandResponse().setVersion(CommandConst.PROTOCOL_VERSION).setAction(CommandConst.ACTION_RES)
 				.setErrCode(ErrorCode.ERROR);
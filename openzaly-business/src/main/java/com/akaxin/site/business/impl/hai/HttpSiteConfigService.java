@@ -29,7 +29,6 @@ import com.akaxin.proto.plugin.HaiSiteUpdateConfigProto;
 import com.akaxin.site.business.dao.SiteConfigDao;
 import com.akaxin.site.business.impl.AbstractRequest;
 import com.akaxin.site.business.impl.site.SiteConfig;
-import com.akaxin.site.message.utils.SiteConfigHelper;
 
 /**
  * hai接口，提供对站点配置相关操作
@@ -87,8 +86,6 @@ public class HttpSiteConfigService extends AbstractRequest {
 			if (configMap != null) {
 				if (SiteConfigDao.getInstance().updateSiteConfig(configMap)) {
 					errorCode = ErrorCode2.SUCCESS;
-					SiteConfig.updateConfig();
-					SiteConfigHelper.updateConfig();
 				}
 			} else {
 				errorCode = ErrorCode2.ERROR_PARAMETER;
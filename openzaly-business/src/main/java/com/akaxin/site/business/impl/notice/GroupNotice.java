@@ -16,6 +16,7 @@
 package com.akaxin.site.business.impl.notice;
 
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,11 +56,15 @@ public class GroupNotice {
 		String noticeText = "";
 		try {
 			if (userIdList != null) {
+				Map<String, SimpleUserBean> profiles = UserProfileDao.getInstance().getSimpleProfiles(userIdList);
+				StringBuilder names = new StringBuilder();
 				for (String userId : userIdList) {
-					SimpleUserBean bean = UserProfileDao.getInstance().getSimpleProfileById(userId);
-					String userName = bean.getUserName();
-					noticeText += userName + ",";
+					SimpleUserBean bean = profiles.get(userId);
+					if (bean != null) {
+						names.append(bean.getUserName()).append(",");
+					}
 				}
+				noticeText = names.toString();
 			}
 			noticeText = noticeText + NoticeText.USER_ADD_GROUP;
 			this.groupMsgNotice(siteUserId, groupId, noticeText);
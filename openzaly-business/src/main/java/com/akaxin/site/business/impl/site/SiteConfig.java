@@ -24,10 +24,10 @@ import org.slf4j.LoggerFactory;
 import com.akaxin.common.constant.ConfigConst;
 import com.akaxin.proto.core.ConfigProto;
 import com.akaxin.site.business.constant.GroupConfig;
-import com.akaxin.site.business.dao.SiteConfigDao;
+import com.akaxin.site.message.utils.SiteConfigHelper;
 
 /**
- * 管理站点配置相关信息
+ * 管理站点配置相关信息，配置快照统一由SiteConfigHelper维护
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-14 21:18:49
@@ -35,35 +35,19 @@ import com.akaxin.site.business.dao.SiteConfigDao;
 public class SiteConfig {
 	private static final Logger logger = LoggerFactory.getLogger(SiteConfig.class);
 
-	private static volatile Map<Integer, String> configMap;
-
 	private SiteConfig() {
 	}
 
 	public static Map<Integer, String> getConfigMap() {
-		if (configMap == null) {
-			configMap = SiteConfigDao.getInstance().getSiteConfig();
-		}
-		return configMap;
+		return SiteConfigHelper.getConfigMap();
 	}
 
 	public static Map<Integer, String> updateConfig() {
-		try {
-			configMap = SiteConfigDao.getInstance().getSiteConfig();
-			logger.info("update site config : {}", configMap);
-		} catch (Exception e) {
-			logger.error("update site config error.", e);
-		}
-		return configMap;
+		return SiteConfigHelper.updateConfig();
 	}
 
 	public static String getConfig(int key) {
-		try {
-			return getConfigMap().get(key);
-		} catch (Exception e) {
-			logger.error("get config value error", e);
-		}
-		return null;
+		return SiteConfigHelper.getSnapshot().getConfig(key);
 	}
 
 	/**
@@ -76,14 +60,7 @@ public class SiteConfig {
 	 * @return true/false
 	 */
 	public static boolean isOpen() {
-		if (getConfigMap() != null) {
-			String value = getConfigMap().get(ConfigProto.ConfigKey.SITE_STATUS_VALUE);
-
-			if (StringUtils.isNumeric(value)) {
-				return ConfigProto.SiteStatus.OPEN_VALUE == Integer.valueOf(value);
-			}
-		}
-		return false;
+		return SiteConfigHelper.getSnapshot().isSiteOpen();
 	}
 
 	/**
@@ -101,21 +78,11 @@ public class SiteConfig {
 	 * @return
 	 */
 	public static ConfigProto.RegisterWay getRegisterWay() {
-		ConfigProto.RegisterWay regway = null;
-		if (getConfigMap() != null) {
-			String value = getConfigMap().get(ConfigProto.ConfigKey.REGISTER_WAY_VALUE);
-			if (StringUtils.isNumeric(value)) {
-				regway = ConfigProto.RegisterWay.forNumber(Integer.valueOf(value));
-			}
-		}
-		return regway == null ? ConfigProto.RegisterWay.ANONYMOUS : regway;
+		return SiteConfigHelper.getSnapshot().getRegisterWay();
 	}
 
 	public static String getSiteAdmin() {
-		if (getConfigMap() != null) {
-			return getConfigMap().get(ConfigProto.ConfigKey.SITE_ADMIN_VALUE);
-		}
-		return null;
+		return SiteConfigHelper.getSnapshot().getSiteAdmin();
 	}
 
 	public static boolean hasNoAdminUser() {
@@ -132,32 +99,11 @@ public class SiteConfig {
 	}
 
 	public static int getMaxGroupMemberSize() {
-		try {
-			Map<Integer, String> map = getConfigMap();
-			if (map != null) {
-				String memberCount = map.get(ConfigProto.ConfigKey.GROUP_MEMBERS_COUNT_VALUE);
-				if (StringUtils.isNumeric(memberCount)) {
-					return Integer.valueOf(memberCount);
-				}
-			}
-		} catch (Exception e) {
-			logger.error("get max group member size error.", e);
-		}
-		return GroupConfig.GROUP_MAX_MEMBER_COUNT;
+		int memberCount = SiteConfigHelper.getSnapshot().getGroupMembersCount();
+		return memberCount >= 0 ? memberCount : GroupConfig.GROUP_MAX_MEMBER_COUNT;
 	}
 
 	public static ConfigProto.U2EncryptionStatus getU2EncryStatus() {
-		try {
-			Map<Integer, String> map = getConfigMap();
-			if (map != null) {
-				String statusNum = map.get(ConfigProto.ConfigKey.U2_ENCRYPTION_STATUS_VALUE);
-				if (StringUtils.isNumeric(statusNum)) {
-					return ConfigProto.U2EncryptionStatus.forNumber(Integer.valueOf(statusNum));
-				}
-			}
-		} catch (Exception e) {
-			logger.error("get u2 encry status error", e);
-		}
-		return ConfigProto.U2EncryptionStatus.U2_CLOSE;
+		return SiteConfigHelper.getSnapshot().getU2EncryptionStatus();
 	}
 }
\ No newline at end of file
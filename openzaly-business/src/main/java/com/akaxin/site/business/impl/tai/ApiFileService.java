@@ -15,23 +15,33 @@
  */
 package com.akaxin.site.business.impl.tai;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.akaxin.common.command.Command;
 import com.akaxin.common.command.CommandResponse;
 import com.akaxin.common.constant.ErrorCode2;
+import com.akaxin.common.constant.FileHeaderKey;
 import com.akaxin.proto.core.FileProto;
 import com.akaxin.proto.site.ApiFileDownloadProto;
 import com.akaxin.proto.site.ApiFileUploadProto;
 import com.akaxin.site.business.impl.AbstractRequest;
+import com.akaxin.site.business.utils.FileChunkManager;
 import com.akaxin.site.business.utils.FilePathUtils;
 import com.akaxin.site.business.utils.FileServerUtils;
+import com.akaxin.site.business.utils.ImageThumbnailer;
+import com.akaxin.site.business.utils.MediaCache;
 import com.google.protobuf.ByteString;
 
 /**
- * 文件（图片，语音）上传下载
+ * 文件（图片，语音）上传下载，header中FILE_TRANSFER_MODE为chunk时按分片传输，FILE_VARIANT指定图片缩略图（见FileHeaderKey）
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-25 17:52:08
@@ -46,11 +56,15 @@ public class ApiFileService extends AbstractRequest {
 			ApiFileUploadProto.ApiFileUploadRequest request = ApiFileUploadProto.ApiFileUploadRequest
 					.parseFrom(command.getParams());
 			FileProto.File file = request.getFile();
+			if (isChunkMode(command)) {
+				return chunkUpload(command, file);
+			}
 			int type = file.getFileTypeValue();
 			byte[] content = file.getFileContent().toByteArray();
 			logger.info("api.file.upload command={} type={} content={}", command.toString(), type, content.length);
 
 			String fileId = FileServerUtils.saveFile(content, FilePathUtils.getPicPath(), type);
+			ImageThumbnailer.getInstance().submit(FilePathUtils.getPicPath(), fileId, type);
 			ApiFileUploadProto.ApiFileUploadResponse response = ApiFileUploadProto.ApiFileUploadResponse.newBuilder()
 					.setFileId(fileId).build();
 			commandResponse.setParams(response.toByteArray());
@@ -71,11 +85,22 @@ public class ApiFileService extends AbstractRequest {
 					.parseFrom(command.getParams());
 			String fileId = request.getFileId();
 			logger.info("api.file.download request={}", request.toString());
-			if (StringUtils.isNotBlank(fileId)) {
-				byte[] imageBytes = FileServerUtils.fileToBinary(FilePathUtils.getPicPath(), fileId);
+			String storageFileId = fileId;
+			if (command.getHeader() != null) {
+				storageFileId = ImageThumbnailer.getInstance().resolveFileId(FilePathUtils.getPicPath(), fileId,
+						command.getHeader().get(FileHeaderKey.FILE_VARIANT));
+			}
+			if (StringUtils.isNotBlank(fileId) && isChunkMode(command)) {
+				return chunkDownload(command, fileId, storageFileId);
+			} else if (StringUtils.isNotBlank(fileId)) {
+				// 头像等热点小文件优先从内存缓存读取
+				ByteBuffer cachedContent = MediaCache.getInstance().get(storageFileId,
+						FileServerUtils.getFile(FilePathUtils.getPicPath(), storageFileId));
+				ByteString fileContent = cachedContent != null ? ByteString.copyFrom(cachedContent)
+						: ByteString.copyFrom(FileServerUtils.fileToBinary(FilePathUtils.getPicPath(), storageFileId));
 
-				FileProto.File file = FileProto.File.newBuilder().setFileId(fileId)
-						.setFileContent(ByteString.copyFrom(imageBytes)).build();
+				FileProto.File file = FileProto.File.newBuilder().setFileId(fileId).setFileContent(fileContent)
+						.build();
 
 				ApiFileDownloadProto.ApiFileDownloadResponse response = ApiFileDownloadProto.ApiFileDownloadResponse
 						.newBuilder().setFile(file).build();
@@ -93,4 +118,109 @@ public class ApiFileService extends AbstractRequest {
 		return commandResponse.setErrCode2(errCode);
 	}
 
+	/**
+	 * <pre>
+	 * 分片上传，分片位置和会话信息通过header传递（见FileHeaderKey）
+	 * 		分片位置超出已接收的位置或CRC32校验失败时返回ERROR2_FILE_CHUNK，响应header中的FILE_OFFSET为服务端已接收的字节数
+	 * </pre>
+	 */
+	private CommandResponse chunkUpload(Command command, FileProto.File file) {
+		CommandResponse commandResponse = new CommandResponse();
+		Map<Integer, String> responseHeader = new HashMap<Integer, String>();
+		ErrorCode2 errCode = ErrorCode2.ERROR;
+		try {
+			Map<Integer, String> header = command.getHeader();
+			String uploadId = header.get(FileHeaderKey.FILE_UPLOAD_ID);
+			long offset = NumberUtils.toLong(header.get(FileHeaderKey.FILE_OFFSET), 0);
+			ByteBuffer chunk = file.getFileContent().asReadOnlyByteBuffer();
+			logger.info("api.file.upload chunk siteUserId={} uploadId={} offset={} length={}",
+					command.getSiteUserId(), uploadId, offset, chunk.remaining());
+
+			FileChunkManager.UploadSession session = null;
+			if (StringUtils.isBlank(uploadId)) {
+				long totalSize = NumberUtils.toLong(header.get(FileHeaderKey.FILE_TOTAL_SIZE), -1);
+				if (totalSize >= 0 && totalSize <= FileChunkManager.FILE_MAX_SIZE) {
+					session = FileChunkManager.getInstance().openUpload(command.getSiteUserId(),
+							file.getFileTypeValue(), totalSize);
+				} else {
+					errCode = ErrorCode2.ERROR_PARAMETER;
+				}
+			} else {
+				session = FileChunkManager.getInstance().getUpload(command.getSiteUserId(), uploadId);
+				if (session == null) {
+					errCode = ErrorCode2.ERROR2_FILE_UPLOAD_SESSION;
+				}
+			}
+
+			if (session != null) {
+				String crc32 = header.get(FileHeaderKey.FILE_CHUNK_CRC32);
+				if (chunk.remaining() > FileChunkManager.CHUNK_MAX_SIZE || (chunk.hasRemaining()
+						&& !StringUtils.equalsIgnoreCase(crc32, FileChunkManager.crc32(chunk)))) {
+					errCode = ErrorCode2.ERROR2_FILE_CHUNK;
+				} else if (FileChunkManager.getInstance().writeChunk(session, offset, chunk) < 0) {
+					errCode = ErrorCode2.ERROR2_FILE_CHUNK;
+				} else {
+					String fileId = FileChunkManager.getInstance().completeUpload(session);
+					ApiFileUploadProto.ApiFileUploadResponse.Builder responseBuilder = ApiFileUploadProto.ApiFileUploadResponse
+							.newBuilder();
+					if (fileId != null) {
+						responseBuilder.setFileId(fileId);
+					}
+					commandResponse.setParams(responseBuilder.build().toByteArray());
+					errCode = ErrorCode2.SUCCESS;
+				}
+				responseHeader.put(FileHeaderKey.FILE_UPLOAD_ID, session.getUploadId());
+				responseHeader.put(FileHeaderKey.FILE_OFFSET, String.valueOf(session.getReceived()));
+				responseHeader.put(FileHeaderKey.FILE_TOTAL_SIZE, String.valueOf(session.getTotalSize()));
+			}
+		} catch (Exception e) {
+			errCode = ErrorCode2.ERROR_SYSTEMERROR;
+			logger.error("upload file chunk error.", e);
+		}
+		logger.info("api.file.upload chunk result={} header={}", errCode.toString(), responseHeader);
+		return commandResponse.setHeader(responseHeader).setErrCode2(errCode);
+	}
+
+	/**
+	 * 分片下载，每次最多返回FileChunkManager.CHUNK_MAX_SIZE字节；storageFileId为实际读取的文件（原图或缩略图）
+	 */
+	private CommandResponse chunkDownload(Command command, String fileId, String storageFileId) {
+		CommandResponse commandResponse = new CommandResponse();
+		Map<Integer, String> responseHeader = new HashMap<Integer, String>();
+		ErrorCode2 errCode = ErrorCode2.ERROR;
+		try {
+			Map<Integer, String> header = command.getHeader();
+			long offset = NumberUtils.toLong(header.get(FileHeaderKey.FILE_OFFSET), 0);
+			int length = NumberUtils.toInt(header.get(FileHeaderKey.FILE_LENGTH), FileChunkManager.CHUNK_MAX_SIZE);
+			File storageFile = FileServerUtils.getFile(FilePathUtils.getPicPath(), storageFileId);
+			if (storageFile == null || !storageFile.isFile() || offset < 0 || offset > storageFile.length()
+					|| length < 0) {
+				errCode = ErrorCode2.ERROR_PARAMETER;
+			} else {
+				byte[] chunk = FileChunkManager.getInstance().readChunk(storageFile, offset, length);
+				FileProto.File file = FileProto.File.newBuilder().setFileId(fileId)
+						.setFileContent(ByteString.copyFrom(chunk)).build();
+				ApiFileDownloadProto.ApiFileDownloadResponse response = ApiFileDownloadProto.ApiFileDownloadResponse
+						.newBuilder().setFile(file).build();
+				commandResponse.setParams(response.toByteArray());
+
+				responseHeader.put(FileHeaderKey.FILE_TOTAL_SIZE, String.valueOf(storageFile.length()));
+				responseHeader.put(FileHeaderKey.FILE_OFFSET, String.valueOf(offset));
+				responseHeader.put(FileHeaderKey.FILE_LENGTH, String.valueOf(chunk.length));
+				responseHeader.put(FileHeaderKey.FILE_CHUNK_CRC32, FileChunkManager.crc32(ByteBuffer.wrap(chunk)));
+				errCode = ErrorCode2.SUCCESS;
+			}
+		} catch (Exception e) {
+			errCode = ErrorCode2.ERROR_SYSTEMERROR;
+			logger.error("download file chunk error.", e);
+		}
+		logger.info("api.file.download chunk result={} header={}", errCode.toString(), responseHeader);
+		return commandResponse.setHeader(responseHeader).setErrCode2(errCode);
+	}
+
+	private boolean isChunkMode(Command command) {
+		return command.getHeader() != null
+				&& FileHeaderKey.MODE_CHUNK.equals(command.getHeader().get(FileHeaderKey.FILE_TRANSFER_MODE));
+	}
+
 }
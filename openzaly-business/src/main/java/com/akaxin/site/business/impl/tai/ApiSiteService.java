@@ -222,7 +222,6 @@ public class ApiSiteService extends AbstractRequest {
 					SiteConfigDao.getInstance().updateSiteConfig(ConfigProto.ConfigKey.SITE_PORT_VALUE, port);
 				}
 			}
-			SiteConfig.updateConfig();
 		}
 	}
 
@@ -30,33 +30,41 @@ import com.akaxin.site.business.impl.tai.ApiSiteService;
 import com.akaxin.site.business.impl.tai.ApiUserService;
 
 /**
- * API业务请求，分发工厂
+ * API业务请求，分发工厂；业务实现无状态，启动时创建单例并解析方法表
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2017.10.24 18:25:31
  */
 public class ApiServiceFactory {
 	private static final Logger logger = LoggerFactory.getLogger(ApiServiceFactory.class);
+	private static final IRequestService siteService = new ApiSiteService();
+	private static final IRequestService userService = new ApiUserService();
+	private static final IRequestService friendService = new ApiFriendService();
+	private static final IRequestService groupService = new ApiGroupService();
+	private static final IRequestService secretChatService = new ApiSecretChatService();
+	private static final IRequestService fileService = new ApiFileService();
+	private static final IRequestService deviceService = new ApiDeviceService();
+	private static final IRequestService pluginService = new ApiPluginService();
 
 	public static IRequestService getService(String serviceName) {
 		RequestAction nameEnum = RequestAction.getAction(serviceName);
 		switch (nameEnum) {
 		case SITE:
-			return new ApiSiteService();
+			return siteService;
 		case API_USER:
-			return new ApiUserService();
+			return userService;
 		case API_FRIEND:
-			return new ApiFriendService();
+			return friendService;
 		case API_GROUP:
-			return new ApiGroupService();
+			return groupService;
 		case API_SECRETCHAT:
-			return new ApiSecretChatService();
+			return secretChatService;
 		case API_FILE:
-			return new ApiFileService();
+			return fileService;
 		case API_DEVICE:
-			return new ApiDeviceService();
+			return deviceService;
 		case API_PLUGIN:
-			return new ApiPluginService();
+			return pluginService;
 		default:
 			logger.info("api business service error.service={}", nameEnum.getName());
 			break;
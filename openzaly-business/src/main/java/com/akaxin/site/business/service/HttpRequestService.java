@@ -41,6 +41,12 @@ import com.akaxin.site.business.impl.site.SiteConfig;
  */
 public class HttpRequestService implements IRequest {
 	private static final Logger logger = LoggerFactory.getLogger(HttpRequestService.class);
+	private static final HttpUserService userService = new HttpUserService();
+	private static final HttpGroupService groupService = new HttpGroupService();
+	private static final HttpFriendService friendService = new HttpFriendService();
+	private static final HttpSiteConfigService siteConfigService = new HttpSiteConfigService();
+	private static final HttpPluginService pluginService = new HttpPluginService();
+	private static final HttpUICService uicService = new HttpUICService();
 
 	public CommandResponse process(Command command) {
 		HttpUriAction huaEnum = HttpUriAction.getUriActionEnum(command.getUri());
@@ -57,7 +63,7 @@ public class HttpRequestService implements IRequest {
 			case HAI_USER_SEARCH:
 			case HAI_USER_PROFILE:
 			case HAI_USER_RELATIONLIST:
-				return new HttpUserService().execute(command);
+				return userService.execute(command);
 			case HAI_GROUP_LIST:
 			case HAI_GROUP_PROFILE:
 			case HAI_GROUP_MEMBERS:
@@ -68,16 +74,16 @@ public class HttpRequestService implements IRequest {
 			case HAI_GROUP_UPDATEPROFILE:
 			case HAI_GROUP_NONMEMBERS:
 				if (checkPermissions(command.getSiteUserId())) {
-					response = new HttpGroupService().execute(command);
+					response = groupService.execute(command);
 				}
 				break;
 			case HAI_FRIEND_APPLY:
-				response = new HttpFriendService().execute(command);
+				response = friendService.execute(command);
 				break;
 			case HAI_SITE_GETCONFIG:
 			case HAI_SITE_UPDATECONFIG:
 				if (checkPermissions(command.getSiteUserId())) {
-					response = new HttpSiteConfigService().execute(command);
+					response = siteConfigService.execute(command);
 				}
 				break;
 			case HAI_PLUGIN_ADD:
@@ -88,14 +94,14 @@ public class HttpRequestService implements IRequest {
 			case HAI_PLUGIN_UPDATE:
 			case HAI_PLUGIN_UPDATESTATUS:
 				if (checkPermissions(command.getSiteUserId())) {
-					response = new HttpPluginService().execute(command);
+					response = pluginService.execute(command);
 				}
 				break;
 			case HAI_UIC_CREATE:
 			case HAI_UIC_INFO:
 			case HAI_UIC_LIST:
 				if (checkPermissions(command.getSiteUserId())) {
-					response = new HttpUICService().execute(command);
+					response = uicService.execute(command);
 				}
 				break;
 			default:
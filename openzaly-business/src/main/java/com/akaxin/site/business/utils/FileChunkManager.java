@@ -0,0 +1,276 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.business.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * <pre>
+ * 文件分片上传/下载
+ * 		1.上传会话的临时文件和元数据保存在文件目录下的.upload目录，已接收的字节数即临时文件的长度，服务重启后仍然可以续传
+ * 		2.分片只能从已接收的位置（或之前，重传）开始写入，每个分片最大site.file.chunk.max字节，文件最大site.file.max.size字节
+ * 		3.全部接收后临时文件移动到正式的文件目录，生成与整个文件上传相同格式的fileId
+ * 		4.超过site.file.upload.expire秒没有新分片的上传会话会被清理
+ * 	每次传输占用的内存只与分片大小有关，与文件大小无关
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-20 16:58:31
+ */
+public class FileChunkManager {
+	private static final Logger logger = LoggerFactory.getLogger(FileChunkManager.class);
+	public static final int CHUNK_MAX_SIZE = Integer.getInteger("site.file.chunk.max", 512 * 1024);
+	public static final long FILE_MAX_SIZE = Long.getLong("site.file.max.size", 100L * 1024 * 1024);
+	private static final long UPLOAD_EXPIRE_MILLIS = TimeUnit.SECONDS
+			.toMillis(Long.getLong("site.file.upload.expire", 24 * 3600));
+	private static final String UPLOAD_DIR = ".upload";
+	private static final String PART_SUFFIX = ".part";
+	private static final String META_SUFFIX = ".meta";
+	private static FileChunkManager instance = new FileChunkManager();
+
+	private final ConcurrentHashMap<String, UploadSession> uploadSessions = new ConcurrentHashMap<String, UploadSession>();
+
+	private FileChunkManager() {
+		ScheduledExecutorService cleaner = Executors
+				.newSingleThreadScheduledExecutor(new DefaultThreadFactory("file-upload-cleaner", true));
+		cleaner.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					cleanExpiredUploads();
+				} catch (Throwable t) {
+					logger.error("clean expired file uploads error", t);
+				}
+			}
+		}, 10, 10, TimeUnit.MINUTES);
+	}
+
+	public static FileChunkManager getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 新建上传会话
+	 */
+	public UploadSession openUpload(String siteUserId, int fileType, long totalSize) throws IOException {
+		File uploadDir = getUploadDir();
+		if (!uploadDir.exists()) {
+			uploadDir.mkdirs();
+		}
+		String uploadId = UUID.randomUUID().toString().replaceAll("-", "");
+		UploadSession session = new UploadSession(uploadId, siteUserId, fileType, totalSize, uploadDir);
+		session.partFile.createNewFile();
+
+		Properties meta = new Properties();
+		meta.setProperty("siteUserId", siteUserId);
+		meta.setProperty("fileType", String.valueOf(fileType));
+		meta.setProperty("totalSize", String.valueOf(totalSize));
+		OutputStream out = new FileOutputStream(session.metaFile);
+		try {
+			meta.store(out, null);
+		} finally {
+			out.close();
+		}
+		uploadSessions.put(uploadId, session);
+		return session;
+	}
+
+	/**
+	 * 查询上传会话，内存中没有时从元数据文件恢复；会话不存在或不属于该用户返回null
+	 */
+	public UploadSession getUpload(String siteUserId, String uploadId) {
+		if (!StringUtils.isAlphanumeric(uploadId)) {
+			return null;
+		}
+		UploadSession session = uploadSessions.get(uploadId);
+		if (session == null) {
+			session = loadUpload(uploadId);
+			if (session != null) {
+				UploadSession old = uploadSessions.putIfAbsent(uploadId, session);
+				session = old != null ? old : session;
+			}
+		}
+		if (session == null || !session.siteUserId.equals(siteUserId)) {
+			return null;
+		}
+		return session;
+	}
+
+	private UploadSession loadUpload(String uploadId) {
+		File uploadDir = getUploadDir();
+		File metaFile = new File(uploadDir, uploadId + META_SUFFIX);
+		if (!metaFile.exists()) {
+			return null;
+		}
+		Properties meta = new Properties();
+		try {
+			InputStream in = new FileInputStream(metaFile);
+			try {
+				meta.load(in);
+			} finally {
+				in.close();
+			}
+			UploadSession session = new UploadSession(uploadId, meta.getProperty("siteUserId"),
+					Integer.parseInt(meta.getProperty("fileType")), Long.parseLong(meta.getProperty("totalSize")),
+					uploadDir);
+			session.received = session.partFile.length();
+			return session;
+		} catch (Exception e) {
+			logger.error("load file upload session error uploadId=" + uploadId, e);
+		}
+		return null;
+	}
+
+	/**
+	 * 写入一个分片，offset只能小于等于已接收的字节数，否则不写入
+	 * 
+	 * @return 写入后已接收的字节数，offset超出已接收位置时返回-1
+	 */
+	public long writeChunk(UploadSession session, long offset, ByteBuffer chunk) throws IOException {
+		synchronized (session) {
+			if (offset < 0 || offset > session.received || offset + chunk.remaining() > session.totalSize) {
+				return -1;
+			}
+			RandomAccessFile raf = new RandomAccessFile(session.partFile, "rw");
+			try {
+				FileChannel channel = raf.getChannel();
+				long position = offset;
+				while (chunk.hasRemaining()) {
+					position += channel.write(chunk, position);
+				}
+				session.received = Math.max(session.received, position);
+			} finally {
+				raf.close();
+			}
+			session.metaFile.setLastModified(System.currentTimeMillis());
+			return session.received;
+		}
+	}
+
+	/**
+	 * 已全部接收时把临时文件移动到文件目录，返回fileId；未接收完返回null
+	 */
+	public String completeUpload(UploadSession session) throws IOException {
+		synchronized (session) {
+			if (session.fileId == null && session.received == session.totalSize) {
+				session.fileId = FileServerUtils.saveFile(session.partFile, FilePathUtils.getPicPath(),
+						session.fileType);
+				ImageThumbnailer.getInstance().submit(FilePathUtils.getPicPath(), session.fileId, session.fileType);
+				session.metaFile.delete();
+				uploadSessions.remove(session.uploadId, session);
+			}
+			return session.fileId;
+		}
+	}
+
+	/**
+	 * 读取文件中从offset开始最多length字节（不超过CHUNK_MAX_SIZE）
+	 */
+	public byte[] readChunk(File file, long offset, int length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long remaining = raf.length() - offset;
+			int size = (int) Math.max(0, Math.min(remaining, Math.min(length, CHUNK_MAX_SIZE)));
+			byte[] bytes = new byte[size];
+			raf.seek(offset);
+			raf.readFully(bytes);
+			return bytes;
+		} finally {
+			raf.close();
+		}
+	}
+
+	public static String crc32(ByteBuffer data) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(data.duplicate());
+		return Long.toHexString(crc32.getValue());
+	}
+
+	private void cleanExpiredUploads() {
+		File[] metaFiles = getUploadDir().listFiles();
+		if (metaFiles == null) {
+			return;
+		}
+		long expireTime = System.currentTimeMillis() - UPLOAD_EXPIRE_MILLIS;
+		for (File file : metaFiles) {
+			if (file.getName().endsWith(META_SUFFIX) && file.lastModified() < expireTime) {
+				String uploadId = file.getName().substring(0, file.getName().length() - META_SUFFIX.length());
+				uploadSessions.remove(uploadId);
+				new File(file.getParentFile(), uploadId + PART_SUFFIX).delete();
+				file.delete();
+				logger.info("clean expired file upload uploadId={}", uploadId);
+			}
+		}
+	}
+
+	private File getUploadDir() {
+		return new File(FilePathUtils.getPicPath(), UPLOAD_DIR);
+	}
+
+	public static class UploadSession {
+		private final String uploadId;
+		private final String siteUserId;
+		private final int fileType;
+		private final long totalSize;
+		private final File partFile;
+		private final File metaFile;
+		private volatile long received;
+		private volatile String fileId;
+
+		UploadSession(String uploadId, String siteUserId, int fileType, long totalSize, File uploadDir) {
+			this.uploadId = uploadId;
+			this.siteUserId = siteUserId;
+			this.fileType = fileType;
+			this.totalSize = totalSize;
+			this.partFile = new File(uploadDir, uploadId + PART_SUFFIX);
+			this.metaFile = new File(uploadDir, uploadId + META_SUFFIX);
+		}
+
+		public String getUploadId() {
+			return uploadId;
+		}
+
+		public long getTotalSize() {
+			return totalSize;
+		}
+
+		public long getReceived() {
+			return received;
+		}
+	}
+}
@@ -17,42 +17,70 @@ package com.akaxin.site.business.utils;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Calendar;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 
+import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.akaxin.proto.core.FileProto.FileType;
+import com.akaxin.site.business.dao.SiteFileDao;
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.Striped;
 
 /**
+ * <pre>
  * 文件服务相关操作
+ * 		默认按 类型/年/月/日 目录存储，文件名为时间戳+随机串
+ * 		site.file.store=cas时使用内容寻址存储：
+ * 			1.fileId为H-{hash前2位}-{hash第3、4位}-{sha256}，对应目录H/xx/yy/，相同内容只保存一份，每个目录下的文件数有上限
+ * 			2.每次上传增加一次引用（site_file_ref），deleteFile减少引用，引用减到0时才删除文件
+ * 			  目前业务中没有调用deleteFile：头像、消息中的fileId可以不经上传直接写入其他用户或群的资料，
+ * 			  引用只统计上传次数，减到0时文件仍可能被引用，所以文件只增不删，回收需要先按资料和消息统计引用
+ * 			3.同一文件的保存和删除使用分段锁串行，避免删除与新的引用交错
+ * 			4.site_file_ref记录上传时的文件类型，相同内容又以公开类型（头像、logo等）上传时改为公开类型
+ * 		两种fileId都可以直接映射为文件路径，切换模式后旧的fileId仍然可以访问
+ * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:21:39
  */
 public class FileServerUtils {
 	private static final Logger logger = LoggerFactory.getLogger(FileServerUtils.class);
+	private static final boolean CAS_ENABLED = "cas".equalsIgnoreCase(System.getProperty("site.file.store", "date"));
+	private static final String CAS_FILE_PREFIX = "H-";
+	private static final Striped<Lock> casLocks = Striped.lock(64);
+	private static final Cache<String, Integer> casFileTypeCache = CacheRegistry.newCache("casFileType", 10000, 60);
 
 	public static String saveFile(byte[] imageBytes, String defaultDir, int type) {
+		if (CAS_ENABLED) {
+			try {
+				return saveCasFile(imageBytes, null, defaultDir, type);
+			} catch (IOException e) {
+				logger.error("uplaod file error.", e);
+				return null;
+			}
+		}
 		String fileUrl = null;
 		BufferedOutputStream bos = null;
 		try {
 			if (!defaultDir.endsWith("/")) {
 				defaultDir += "/";
 			}
-			String parentDir = createParentDir(defaultDir, type);
-			String fileSuffix = UUID.randomUUID().toString().substring(0, 8);
-			String file = System.currentTimeMillis() + fileSuffix;
-			File storageFile = new File(parentDir, file);
-			if (!storageFile.getParentFile().exists()) {
-				storageFile.getParentFile().mkdirs();
-			}
-
+			File storageFile = newStorageFile(defaultDir, type);
 			if (!storageFile.exists()) {
 				storageFile.createNewFile();
 			}
@@ -77,20 +105,188 @@ public class FileServerUtils {
 		return fileUrl.substring(defaultDir.length(), fileUrl.length()).replaceAll("/", "-");
 	}
 
+	/**
+	 * 把已经写好的文件（如分片上传的临时文件）移动到文件存储目录，返回fileId
+	 */
+	public static String saveFile(File sourceFile, String defaultDir, int type) throws IOException {
+		if (CAS_ENABLED) {
+			return saveCasFile(null, sourceFile, defaultDir, type);
+		}
+		if (!defaultDir.endsWith("/")) {
+			defaultDir += "/";
+		}
+		File storageFile = newStorageFile(defaultDir, type);
+		Files.move(sourceFile.toPath(), storageFile.toPath());
+
+		String fileUrl = storageFile.getPath();
+		logger.info("upload file URL={}", fileUrl);
+		return fileUrl.substring(defaultDir.length(), fileUrl.length()).replaceAll("/", "-");
+	}
+
+	/**
+	 * 删除文件（包括缩略图）；内容寻址存储的文件减少一次引用，引用减到0时才删除
+	 * 只能在确认调用方持有一次上传引用时调用，目前没有业务调用
+	 */
+	public static boolean deleteFile(String defaultDir, String fileId) {
+		File file = getFile(defaultDir, fileId);
+		if (file == null) {
+			return false;
+		}
+		if (!fileId.startsWith(CAS_FILE_PREFIX)) {
+			MediaCache.getInstance().invalidate(fileId);
+			ImageThumbnailer.getInstance().deleteThumbnails(defaultDir, fileId);
+			return file.delete();
+		}
+		Lock lock = casLocks.get(fileId);
+		lock.lock();
+		try {
+			int refCount = SiteFileDao.getInstance().releaseFileRef(fileId);
+			logger.info("release file fileId={} refCount={}", fileId, refCount);
+			if (refCount == 0) {
+				MediaCache.getInstance().invalidate(fileId);
+				ImageThumbnailer.getInstance().deleteThumbnails(defaultDir, fileId);
+				return file.delete();
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 内容寻址存储，bytes和sourceFile二选一；内容已存在时只增加引用
+	 */
+	private static String saveCasFile(byte[] bytes, File sourceFile, String defaultDir, int type)
+			throws IOException {
+		String hash = bytes != null ? sha256Hex(bytes) : sha256Hex(sourceFile);
+		String fileId = CAS_FILE_PREFIX + hash.substring(0, 2) + "-" + hash.substring(2, 4) + "-" + hash;
+		File storageFile = getFile(defaultDir, fileId);
+		long fileSize = bytes != null ? bytes.length : sourceFile.length();
+
+		Lock lock = casLocks.get(fileId);
+		lock.lock();
+		try {
+			boolean created = false;
+			if (storageFile.exists()) {
+				if (sourceFile != null) {
+					sourceFile.delete();
+				}
+			} else {
+				storageFile.getParentFile().mkdirs();
+				File tmpFile = new File(storageFile.getParentFile(), hash + ".tmp");
+				if (bytes != null) {
+					Files.write(tmpFile.toPath(), bytes);
+				} else {
+					Files.move(sourceFile.toPath(), tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				Files.move(tmpFile.toPath(), storageFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				created = true;
+			}
+			int refCount = SiteFileDao.getInstance().addFileRef(fileId, fileSize, type);
+			if (refCount < 0) {
+				logger.warn("add file ref failed, retry fileId={}", fileId);
+				refCount = SiteFileDao.getInstance().addFileRef(fileId, fileSize, type);
+			}
+			if (refCount < 0) {
+				// 没有引用记录的文件会在第一次删除时被误删，上传失败；本次新建的文件没有其他引用，直接删除
+				if (created) {
+					storageFile.delete();
+				}
+				throw new IOException("add file ref failed fileId=" + fileId);
+			}
+			// 相同内容又作为头像/logo等公开类型上传时，文件变为公开
+			if (refCount > 1 && isPublicType(type) && !isPublicType(SiteFileDao.getInstance().getFileType(fileId))) {
+				SiteFileDao.getInstance().updateFileType(fileId, type);
+				casFileTypeCache.invalidate(fileId);
+			}
+			logger.info("upload file fileId={} size={} type={} refCount={}", fileId, fileSize, type, refCount);
+		} finally {
+			lock.unlock();
+		}
+		return fileId;
+	}
+
+	private static String sha256Hex(byte[] bytes) {
+		return Hex.encodeHexString(newSha256().digest(bytes));
+	}
+
+	private static String sha256Hex(File file) throws IOException {
+		MessageDigest digest = newSha256();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, len);
+			}
+		} finally {
+			in.close();
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	private static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 上传时的文件类型（FileType），旧格式fileId由存储目录得到，内容寻址存储的fileId查询site_file_ref
+	 */
+	public static int getFileType(String fileId) {
+		if (fileId == null) {
+			return FileType.UNKNOWN_FILE_VALUE;
+		}
+		if (fileId.startsWith(CAS_FILE_PREFIX)) {
+			// 类型只会从私有变为公开，缓存过期前最多按私有文件处理
+			Integer fileType = casFileTypeCache.getIfPresent(fileId);
+			if (fileType == null) {
+				fileType = SiteFileDao.getInstance().getFileType(fileId);
+				casFileTypeCache.put(fileId, fileType);
+			}
+			return fileType;
+		}
+		for (ImageType imageType : ImageType.values()) {
+			if (fileId.startsWith(imageType.getPth().replace('/', '-') + "-")) {
+				return imageType.getType();
+			}
+		}
+		return FileType.UNKNOWN_FILE_VALUE;
+	}
+
+	/**
+	 * 用户/群头像、站点logo和扩展图片是公开文件，其他（消息图片、语音等）只对站点用户开放
+	 */
+	public static boolean isPublicType(int fileType) {
+		return fileType == FileType.USER_PORTRAIT_VALUE || fileType == FileType.GROUP_PORTRAIT_VALUE
+				|| fileType == FileType.SITE_PLUGIN_VALUE || fileType == FileType.SITE_ICON_VALUE;
+	}
+
+	/**
+	 * fileId对应的文件，fileId不合法（包含..或以.开头）时返回null
+	 */
+	public static File getFile(String defaultDir, String fileId) {
+		if (fileId == null || fileId.isEmpty() || fileId.startsWith(".") || fileId.contains("..")
+				|| fileId.contains("/") || fileId.contains("\\")) {
+			return null;
+		}
+		return new File(defaultDir, fileId.replaceAll("-", "/"));
+	}
+
 	public static byte[] fileToBinary(String defaultDir, String fileUrl) {
-		fileUrl = fileUrl.replaceAll("-", "/");
-		if (defaultDir.endsWith("/")) {
-			fileUrl = defaultDir + fileUrl;
-		} else {
-			fileUrl = defaultDir + "/" + fileUrl;
+		File file = getFile(defaultDir, fileUrl);
+		logger.info("download file URL={}", file);
+		if (file == null) {
+			return null;
 		}
-		logger.info("download file URL={}", fileUrl);
-		File file = new File(fileUrl);
 		BufferedInputStream bis = null;
 		try {
 			bis = new BufferedInputStream(new FileInputStream(file));
-			byte[] bytes = new byte[bis.available()];
-			bis.read(bytes);
+			byte[] bytes = new byte[(int) file.length()];
+			new DataInputStream(bis).readFully(bytes);
 			return bytes;
 		} catch (IOException e) {
 			logger.error("download file error.", e);
@@ -111,8 +307,8 @@ public class FileServerUtils {
 		BufferedInputStream bis = null;
 		try {
 			bis = new BufferedInputStream(new FileInputStream(file));
-			byte[] bytes = new byte[bis.available()];
-			bis.read(bytes);
+			byte[] bytes = new byte[(int) file.length()];
+			new DataInputStream(bis).readFully(bytes);
 			return bytes;
 		} catch (IOException e) {
 			logger.error("file to binary bytes error.", e);
@@ -128,6 +324,17 @@ public class FileServerUtils {
 		return null;
 	}
 
+	private static File newStorageFile(String defaultDir, int type) {
+		String parentDir = createParentDir(defaultDir, type);
+		String fileSuffix = UUID.randomUUID().toString().substring(0, 8);
+		String file = System.currentTimeMillis() + fileSuffix;
+		File storageFile = new File(parentDir, file);
+		if (!storageFile.getParentFile().exists()) {
+			storageFile.getParentFile().mkdirs();
+		}
+		return storageFile;
+	}
+
 	private static String createParentDir(String defaultDir, int type) {
 		StringBuilder url = new StringBuilder(defaultDir);
 		ImageType imageType = ImageType.getImageByType(type);
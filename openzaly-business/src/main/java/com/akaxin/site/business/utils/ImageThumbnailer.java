@@ -0,0 +1,252 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.business.utils;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.proto.core.FileProto.FileType;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * <pre>
+ * 图片缩略图生成，只使用JDK ImageIO
+ * 		1.消息图片、用户/群头像上传后，在后台线程池生成缩略图：s（最长边site.file.thumb.small像素）和m（最长边site.file.thumb.medium像素）
+ * 		2.缩略图与原图放在同一目录，fileId为原图fileId加"_s"/"_m"，原图本身不超过该尺寸时不生成
+ * 		3.线程池大小site.file.thumb.threads，队列长度site.file.thumb.queue，队列满时丢弃任务，不影响上传
+ * 		4.下载时通过FILE_VARIANT（api.file.download header）或size参数（http）指定缩略图，缩略图还没有生成时返回原图
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-22 11:05:37
+ */
+public class ImageThumbnailer {
+	private static final Logger logger = LoggerFactory.getLogger(ImageThumbnailer.class);
+	public static final String VARIANT_SMALL = "s";
+	public static final String VARIANT_MEDIUM = "m";
+	private static final String[] VARIANTS = { VARIANT_SMALL, VARIANT_MEDIUM };
+	private static final int SMALL_SIZE = Integer.getInteger("site.file.thumb.small", 200);
+	private static final int MEDIUM_SIZE = Integer.getInteger("site.file.thumb.medium", 800);
+	private static final int THREADS = Integer.getInteger("site.file.thumb.threads", 2);
+	private static final int QUEUE_SIZE = Integer.getInteger("site.file.thumb.queue", 500);
+	// 超过该像素数的图片不处理，避免解码时占用过多内存
+	private static final long MAX_PIXELS = Long.getLong("site.file.thumb.max.pixels", 40L * 1000 * 1000);
+	private static final String VARIANT_SEPARATOR = "_";
+	private static ImageThumbnailer instance = new ImageThumbnailer();
+
+	private final ThreadPoolExecutor thumbnailExecutor;
+
+	private ImageThumbnailer() {
+		thumbnailExecutor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new DefaultThreadFactory("file-thumbnail", true),
+				new RejectedExecutionHandler() {
+
+					@Override
+					public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+						logger.warn("thumbnail queue is full, discard task");
+					}
+				});
+		thumbnailExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	public static ImageThumbnailer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * 上传完成后提交生成缩略图的任务，只处理消息图片和头像
+	 */
+	public void submit(final String defaultDir, final String fileId, int fileType) {
+		if (StringUtils.isBlank(fileId) || !isImageType(fileType)) {
+			return;
+		}
+		thumbnailExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					createThumbnails(defaultDir, fileId);
+				} catch (Throwable t) {
+					logger.error("create thumbnail error fileId=" + fileId, t);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 返回缩略图的fileId；variant无法识别或者缩略图不存在时返回原图fileId
+	 */
+	public String resolveFileId(String defaultDir, String fileId, String variant) {
+		if (StringUtils.isBlank(fileId) || !isVariant(variant)) {
+			return fileId;
+		}
+		String variantFileId = getVariantFileId(fileId, variant);
+		File variantFile = FileServerUtils.getFile(defaultDir, variantFileId);
+		if (variantFile != null && variantFile.isFile()) {
+			return variantFileId;
+		}
+		return fileId;
+	}
+
+	/**
+	 * 删除原图时一起删除缩略图
+	 */
+	public void deleteThumbnails(String defaultDir, String fileId) {
+		for (String variant : VARIANTS) {
+			String variantFileId = getVariantFileId(fileId, variant);
+			File variantFile = FileServerUtils.getFile(defaultDir, variantFileId);
+			if (variantFile != null && variantFile.isFile()) {
+				variantFile.delete();
+			}
+			MediaCache.getInstance().invalidate(variantFileId);
+		}
+	}
+
+	private void createThumbnails(String defaultDir, String fileId) throws IOException {
+		File sourceFile = FileServerUtils.getFile(defaultDir, fileId);
+		if (sourceFile == null || !sourceFile.isFile()) {
+			return;
+		}
+		if (!checkImageSize(sourceFile)) {
+			logger.info("skip thumbnail, not an image or too large fileId={}", fileId);
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		BufferedImage source = ImageIO.read(sourceFile);
+		if (source == null) {
+			return;
+		}
+		for (String variant : VARIANTS) {
+			int maxSize = VARIANT_SMALL.equals(variant) ? SMALL_SIZE : MEDIUM_SIZE;
+			if (Math.max(source.getWidth(), source.getHeight()) <= maxSize) {
+				continue;
+			}
+			File variantFile = FileServerUtils.getFile(defaultDir, getVariantFileId(fileId, variant));
+			if (variantFile.exists()) {
+				continue;
+			}
+			writeImage(resize(source, maxSize), variantFile);
+		}
+		logger.info("create thumbnail fileId={} cost={}ms", fileId, System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * 解码前先读取图片宽高，不是图片或者像素数超过MAX_PIXELS时返回false
+	 */
+	private boolean checkImageSize(File sourceFile) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(sourceFile);
+		if (input == null) {
+			return false;
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				return false;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				return (long) reader.getWidth(0) * reader.getHeight(0) <= MAX_PIXELS;
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private BufferedImage resize(BufferedImage source, int maxSize) {
+		double scale = (double) maxSize / Math.max(source.getWidth(), source.getHeight());
+		int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+		int imageType = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage target = new BufferedImage(width, height, imageType);
+		Graphics2D graphics = target.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(source, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		return target;
+	}
+
+	/**
+	 * 有透明通道的保存为png，否则保存为jpg；先写临时文件再移动，下载时不会读到不完整的缩略图
+	 */
+	private void writeImage(BufferedImage image, File variantFile) throws IOException {
+		String format = image.getColorModel().hasAlpha() ? "png" : "jpg";
+		File tempFile = new File(variantFile.getParentFile(), "." + variantFile.getName() + ".tmp");
+		try {
+			if (!ImageIO.write(image, format, tempFile)) {
+				logger.warn("no image writer for format={}", format);
+				return;
+			}
+			Files.move(tempFile.toPath(), variantFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * 缩略图fileId返回原图fileId，其他fileId原样返回
+	 */
+	public String getSourceFileId(String fileId) {
+		int index = fileId.lastIndexOf(VARIANT_SEPARATOR);
+		if (index > 0 && isVariant(fileId.substring(index + VARIANT_SEPARATOR.length()))) {
+			return fileId.substring(0, index);
+		}
+		return fileId;
+	}
+
+	private String getVariantFileId(String fileId, String variant) {
+		return fileId + VARIANT_SEPARATOR + variant;
+	}
+
+	private boolean isVariant(String variant) {
+		for (String name : VARIANTS) {
+			if (name.equals(variant)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isImageType(int fileType) {
+		return fileType == FileType.MESSAGE_IMAGE_VALUE || fileType == FileType.USER_PORTRAIT_VALUE
+				|| fileType == FileType.GROUP_PORTRAIT_VALUE;
+	}
+}
@@ -0,0 +1,201 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.business.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * <pre>
+ * 热点小文件（头像、站点图标等）的内存缓存，key为fileId（fileId对应的文件内容不会变化）
+ * 		1.只缓存不超过site.file.cache.max.file字节的文件，总大小不超过site.file.cache.size字节，LRU淘汰
+ * 		2.公开文件（上传时记录的类型为用户/群头像、站点logo和扩展图片，缩略图按原图）第一次读取就缓存；
+ * 		     其他文件第二次读取才缓存，避免一次性的消息图片把热点挤出去
+ * 		3.site.file.cache.offheap=true时缓存内容放在堆外内存
+ * 		     淘汰的堆外buffer要等GC回收才释放，所以必须显式设置-XX:MaxDirectMemorySize，且不小于2倍site.file.cache.size
+ * 		     （达到上限时JVM会触发GC回收已淘汰的buffer），否则启动时打印告警并退回堆内缓存
+ * 		4.netty事件循环中使用getIfCached/loadAsync，读文件在file-cache-loader线程中执行，不阻塞IO线程
+ * 	命中率等统计信息每分钟输出到storageCache日志（mediaCache）
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-21 17:40:05
+ */
+public class MediaCache {
+	private static final Logger logger = LoggerFactory.getLogger(MediaCache.class);
+	private static final long CACHE_SIZE = Long.getLong("site.file.cache.size", 64L * 1024 * 1024);
+	private static final int MAX_FILE_SIZE = Integer.getInteger("site.file.cache.max.file", 256 * 1024);
+	private static final boolean OFF_HEAP = Boolean.getBoolean("site.file.cache.offheap") && checkDirectMemory();
+	private static final int LOADER_THREADS = Integer.getInteger("site.file.cache.loader.threads", 2);
+	private static final int LOADER_QUEUE = Integer.getInteger("site.file.cache.loader.queue", 1000);
+	private static MediaCache instance = new MediaCache();
+
+	private final Cache<String, ByteBuffer> fileCache = CacheRegistry.newWeightedCache("mediaCache", CACHE_SIZE,
+			new Weigher<String, ByteBuffer>() {
+
+				@Override
+				public int weigh(String fileId, ByteBuffer content) {
+					return content.capacity();
+				}
+			});
+	// 读取过一次但还没有缓存的fileId
+	private final Cache<String, Boolean> seenFiles = CacheBuilder.newBuilder()
+			.maximumSize(Math.max(1024, CACHE_SIZE / 4096)).build();
+	// 正在异步加载的fileId，避免同一个文件重复提交
+	private final Set<String> loadingFiles = ConcurrentHashMap.newKeySet();
+	private final ThreadPoolExecutor loaderExecutor;
+
+	private MediaCache() {
+		loaderExecutor = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(LOADER_QUEUE), new DefaultThreadFactory("file-cache-loader", true));
+		loaderExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	public static MediaCache getInstance() {
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return CACHE_SIZE > 0 && MAX_FILE_SIZE > 0;
+	}
+
+	/**
+	 * 返回文件内容（只读），文件太大、不存在或者还不满足缓存条件时返回null，由调用方直接读取文件
+	 */
+	public ByteBuffer get(String fileId, File file) throws IOException {
+		if (!isEnabled() || file == null) {
+			return null;
+		}
+		ByteBuffer content = fileCache.getIfPresent(fileId);
+		if (content != null) {
+			return content.duplicate();
+		}
+		if (!shouldLoad(fileId, file)) {
+			return null;
+		}
+		return load(fileId, file).duplicate();
+	}
+
+	/**
+	 * 只查询内存，不读磁盘，可以在事件循环中调用；未命中时返回null
+	 */
+	public ByteBuffer getIfCached(String fileId) {
+		if (!isEnabled()) {
+			return null;
+		}
+		ByteBuffer content = fileCache.getIfPresent(fileId);
+		return content == null ? null : content.duplicate();
+	}
+
+	/**
+	 * 满足缓存条件时在file-cache-loader线程中读取文件放入缓存，本次请求由调用方直接读取文件
+	 */
+	public void loadAsync(final String fileId, final File file) {
+		if (!isEnabled() || file == null || !shouldLoad(fileId, file) || !loadingFiles.add(fileId)) {
+			return;
+		}
+		try {
+			loaderExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						load(fileId, file);
+					} catch (IOException e) {
+						logger.warn("load media cache error fileId={} error={}", fileId, e.getMessage());
+					} finally {
+						loadingFiles.remove(fileId);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loadingFiles.remove(fileId);
+		}
+	}
+
+	private boolean shouldLoad(String fileId, File file) {
+		long fileSize = file.length();
+		return fileSize > 0 && fileSize <= MAX_FILE_SIZE && admit(fileId);
+	}
+
+	private ByteBuffer load(String fileId, File file) throws IOException {
+		ByteBuffer content;
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		if (OFF_HEAP) {
+			content = ByteBuffer.allocateDirect(bytes.length);
+			content.put(bytes);
+			content.flip();
+		} else {
+			content = ByteBuffer.wrap(bytes);
+		}
+		content = content.asReadOnlyBuffer();
+		fileCache.put(fileId, content);
+		return content;
+	}
+
+	public void invalidate(String fileId) {
+		fileCache.invalidate(fileId);
+		seenFiles.invalidate(fileId);
+	}
+
+	private boolean admit(String fileId) {
+		String sourceFileId = ImageThumbnailer.getInstance().getSourceFileId(fileId);
+		if (FileServerUtils.isPublicType(FileServerUtils.getFileType(sourceFileId))) {
+			return true;
+		}
+		if (seenFiles.asMap().remove(fileId) != null) {
+			return true;
+		}
+		seenFiles.put(fileId, Boolean.TRUE);
+		return false;
+	}
+
+	private static boolean checkDirectMemory() {
+		boolean limited = false;
+		for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (argument.startsWith("-XX:MaxDirectMemorySize=")) {
+				limited = true;
+			}
+		}
+		long maxDirectMemory = PlatformDependent.maxDirectMemory();
+		if (!limited || maxDirectMemory < 2 * CACHE_SIZE) {
+			logger.warn("media cache off-heap disabled, set -XX:MaxDirectMemorySize >= {} bytes (current={})",
+					2 * CACHE_SIZE, limited ? maxDirectMemory : "unset");
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,129 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.common.chain;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * 方法调用表，代替每次请求getDeclaredMethod + Method.invoke的反射调用
+ * 		1.按类在首次使用时解析一次：类中声明的、只有一个paramType参数且有返回值的public方法
+ * 		2.每个方法生成一个MethodInvoker（LambdaMetafactory），调用时只需一次hash查找和直接调用
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-15 16:42:10
+ */
+public class MethodInvokerTable {
+	private static final Logger logger = LoggerFactory.getLogger(MethodInvokerTable.class);
+	private static final Map<Class<?>, MethodInvokerTable> tables = new ConcurrentHashMap<Class<?>, MethodInvokerTable>();
+
+	private final Map<String, MethodInvoker> invokers;
+
+	private MethodInvokerTable(Class<?> clazz, Class<?> paramType) {
+		Map<String, MethodInvoker> invokerMap = new HashMap<String, MethodInvoker>();
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (Method method : clazz.getDeclaredMethods()) {
+			Class<?>[] types = method.getParameterTypes();
+			if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())
+					|| types.length != 1 || !types[0].isAssignableFrom(paramType) || method.isBridge()
+					|| method.getReturnType() == void.class) {
+				continue;
+			}
+			try {
+				invokerMap.put(method.getName(), createInvoker(lookup, clazz, method));
+			} catch (Throwable t) {
+				logger.error("create method invoker error. method=" + method, t);
+			}
+		}
+		this.invokers = Collections.unmodifiableMap(invokerMap);
+	}
+
+	/**
+	 * 获取clazz的方法调用表，同一个类只解析一次
+	 * 
+	 * @param clazz
+	 * @param paramType
+	 *            方法参数类型，如Command.class
+	 * @return
+	 */
+	public static MethodInvokerTable forClass(Class<?> clazz, Class<?> paramType) {
+		MethodInvokerTable table = tables.get(clazz);
+		if (table == null) {
+			table = new MethodInvokerTable(clazz, paramType);
+			tables.put(clazz, table);
+		}
+		return table;
+	}
+
+	/**
+	 * @param methodName
+	 * @return 不存在时返回null
+	 */
+	public MethodInvoker getInvoker(String methodName) {
+		return methodName == null ? null : invokers.get(methodName);
+	}
+
+	public Set<String> getMethodNames() {
+		return invokers.keySet();
+	}
+
+	private static MethodInvoker createInvoker(MethodHandles.Lookup lookup, Class<?> clazz, Method method)
+			throws Throwable {
+		MethodHandle handle = lookup.unreflect(method);
+		MethodType invokeType = MethodType.methodType(Object.class, Object.class, Object.class);
+		try {
+			Class<?> returnType = MethodType.methodType(method.getReturnType()).wrap().returnType();
+			MethodType instantiatedType = MethodType.methodType(returnType, clazz, method.getParameterTypes()[0]);
+			CallSite callSite = LambdaMetafactory.metafactory(lookup, "invoke",
+					MethodType.methodType(MethodInvoker.class), invokeType, handle, instantiatedType);
+			return (MethodInvoker) callSite.getTarget().invoke();
+		} catch (Throwable t) {
+			// 无法生成lambda时退化为MethodHandle调用
+			logger.warn("create lambda invoker fail, use method handle. method={}", method);
+			final MethodHandle genericHandle = handle.asType(invokeType);
+			return new MethodInvoker() {
+
+				@Override
+				public Object invoke(Object target, Object param) throws Throwable {
+					return genericHandle.invokeExact(target, param);
+				}
+			};
+		}
+	}
+
+	/**
+	 * 预先生成的方法调用入口
+	 */
+	public interface MethodInvoker {
+		public Object invoke(Object target, Object param) throws Throwable;
+	}
+
+}
@@ -15,43 +15,40 @@
  */
 package com.akaxin.common.chain;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.akaxin.common.chain.MethodInvokerTable.MethodInvoker;
 import com.akaxin.common.command.Command;
 
 /**
+ * 按command中的method调用子类中同名的public方法，方法在创建handler时解析到MethodInvokerTable中
+ * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:26:07
  * @param <T>
  */
 public class MethodReflectHandler<T> implements IHandler<T> {
 	private static final Logger logger = LoggerFactory.getLogger(MethodReflectHandler.class);
+	private final MethodInvokerTable methodTable = MethodInvokerTable.forClass(this.getClass(), Command.class);
 
 	public boolean handle(T t) {
+		Command cmd = (Command) t;
+		String methodName = cmd.getMethod();
 		try {
-			Command cmd = (Command) t;
-			String methodName = cmd.getMethod();
+			MethodInvoker invoker = methodTable.getInvoker(methodName);
+			if (invoker == null) {
+				logger.error("method handler NoSuchMethod error. method={}", methodName);
+				return false;
+			}
 
-			Method m = this.getClass().getDeclaredMethod(methodName, cmd.getClass());
-			Object result = m.invoke(this, t);
+			Object result = invoker.invoke(this, t);
 
 			if (result != null && result instanceof Boolean) {
 				return (Boolean) result;
 			}
-		} catch (NoSuchMethodException e) {
-			logger.error("method handler NoSuchMethod error.", e);
-		} catch (SecurityException e) {
-			logger.error("method handler Security error.", e);
-		} catch (IllegalAccessException e) {
-			logger.error("method handler IllegalAccess error.", e);
-		} catch (IllegalArgumentException e) {
-			logger.error("method handler IllegalArgument error.", e);
-		} catch (InvocationTargetException e) {
-			logger.error("method handler InvocationTarget error.", e);
+		} catch (Throwable e) {
+			logger.error("method handler invoke error. method=" + methodName, e);
 		}
 		return false;
 	}
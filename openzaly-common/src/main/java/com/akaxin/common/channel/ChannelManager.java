@@ -15,17 +15,31 @@
  */
 package com.akaxin.common.channel;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 
 /**
+ * <pre>
+ * 长连接管理
+ * 		1.deviceId -> ChannelSession
+ * 		2.在线索引 siteUserId -> 该用户所有在线的ChannelSession，认证成功时加入，连接关闭（closeFuture）时移除
+ * 			认证在业务线程中执行，连接可能在认证完成前已经断开，此时channelInactive还没有userId无法移除，由closeFuture监听移除
+ * 	PSN等在线投递直接查在线索引，不再查询数据库，不在线的用户直接跳过
+ * </pre>
+ * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:26:34
  */
 public class ChannelManager {
 
 	private static Map<String, ChannelSession> clientChannelSessions = new ConcurrentHashMap<String, ChannelSession>();
+	private static ConcurrentHashMap<String, Set<ChannelSession>> userChannelSessions = new ConcurrentHashMap<String, Set<ChannelSession>>();
 
 	private ChannelManager() {
 
@@ -41,6 +55,64 @@ public class ChannelManager {
 		return clientChannelSessions;
 	}
 
+	/**
+	 * 认证成功后调用，channelSession中必须已经设置userId与deviceId；连接已经关闭时立即移除
+	 */
+	public static void addUserChannelSession(final ChannelSession channelSession) {
+		clientChannelSessions.put(channelSession.getDeviceId(), channelSession);
+		userChannelSessions.compute(channelSession.getUserId(),
+				new BiFunction<String, Set<ChannelSession>, Set<ChannelSession>>() {
+
+					@Override
+					public Set<ChannelSession> apply(String siteUserId, Set<ChannelSession> sessions) {
+						if (sessions == null) {
+							sessions = Collections.newSetFromMap(new ConcurrentHashMap<ChannelSession, Boolean>());
+						}
+						sessions.add(channelSession);
+						return sessions;
+					}
+				});
+		// 先加入再监听，连接已经关闭时监听立即执行
+		channelSession.getChannel().closeFuture().addListener(new ChannelFutureListener() {
+
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				delUserChannelSession(channelSession);
+			}
+		});
+	}
+
+	/**
+	 * 连接断开时调用，只移除当前channelSession，同一设备重连后的新连接不受影响
+	 */
+	public static void delUserChannelSession(final ChannelSession channelSession) {
+		clientChannelSessions.remove(channelSession.getDeviceId(), channelSession);
+		userChannelSessions.computeIfPresent(channelSession.getUserId(),
+				new BiFunction<String, Set<ChannelSession>, Set<ChannelSession>>() {
+
+					@Override
+					public Set<ChannelSession> apply(String siteUserId, Set<ChannelSession> sessions) {
+						sessions.remove(channelSession);
+						return sessions.isEmpty() ? null : sessions;
+					}
+				});
+	}
+
+	/**
+	 * 用户所有在线的长连接，不在线返回空集合
+	 */
+	public static Set<ChannelSession> getUserChannelSessions(String siteUserId) {
+		Set<ChannelSession> sessions = userChannelSessions.get(siteUserId);
+		if (sessions == null) {
+			return Collections.emptySet();
+		}
+		return sessions;
+	}
+
+	public static boolean isUserOnline(String siteUserId) {
+		return userChannelSessions.containsKey(siteUserId);
+	}
+
 	public static ChannelSession getChannelSession(String deviceId) {
 		return clientChannelSessions.get(deviceId);
 	}
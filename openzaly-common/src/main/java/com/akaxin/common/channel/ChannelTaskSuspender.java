@@ -0,0 +1,44 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.common.channel;
+
+import io.netty.util.AttributeKey;
+
+/**
+ * <pre>
+ * 挂起/恢复channel的串行任务队列（由connector的业务执行阶段实现，挂在channel的属性上）
+ * 		任务需要等待（如等待channel可写）但又不能阻塞worker线程时：
+ * 			1.在任务中调用suspend()，任务返回后该channel的后续请求不再执行
+ * 			2.等待结束后调用resume(continuation)，continuation先于后续请求在同一个串行队列中执行
+ * 	没有业务执行阶段（业务逻辑在I/O线程中执行）时channel上没有该属性
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-13 15:20:42
+ */
+public interface ChannelTaskSuspender {
+	AttributeKey<ChannelTaskSuspender> KEY = AttributeKey.valueOf("channelTaskSuspender");
+
+	/**
+	 * 只能在该channel当前执行的任务中调用
+	 */
+	void suspend();
+
+	/**
+	 * 恢复队列，continuation不为null时先执行continuation
+	 */
+	void resume(Runnable continuation);
+}
@@ -26,6 +26,11 @@ import com.akaxin.common.resp.RedisDoubleParameter;
 import com.akaxin.common.resp.RedisIntegerParameter;
 import com.akaxin.common.resp.RedisStringParameter;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
 /**
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:27:39
@@ -80,6 +85,67 @@ public class RedisCommand {
 
 	}
 
+	public void encode(ByteBuf buf) {
+		buf.writeByte('*');
+		RedisIntegerParameter.writeInteger(buf, arguments.size());
+		buf.writeBytes(CRLF);
+		for (AbstractParameter argument : arguments) {
+			argument.encode(buf);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * 编码到allocator分配的ByteBuf中
+	 * 		1.长度小于wrapThreshold的参数直接写入ByteBuf
+	 * 		2.长度不小于wrapThreshold的byte[]参数不复制，包装后与头部组合成CompositeByteBuf
+	 * </pre>
+	 * 
+	 * @param allocator
+	 * @param wrapThreshold
+	 * @return
+	 */
+	public ByteBuf encode(ByteBufAllocator allocator, int wrapThreshold) {
+		int headSize = CRLF.length + 1 + RedisIntegerParameter.getIntegerByteSize(arguments.size());
+		for (AbstractParameter argument : arguments) {
+			if (!isWrapped(argument, wrapThreshold)) {
+				headSize += argument.getSize();
+			}
+		}
+
+		ByteBuf buf = allocator.ioBuffer(headSize);
+		buf.writeByte('*');
+		RedisIntegerParameter.writeInteger(buf, arguments.size());
+		buf.writeBytes(CRLF);
+
+		CompositeByteBuf composite = null;
+		for (AbstractParameter argument : arguments) {
+			if (!isWrapped(argument, wrapThreshold)) {
+				argument.encode(buf);
+				continue;
+			}
+			byte[] value = argument.getBytesValue();
+			RedisBytesParameter.writeHeader(buf, value.length);
+			if (composite == null) {
+				composite = allocator.compositeBuffer();
+			}
+			composite.addComponent(true, buf);
+			composite.addComponent(true, Unpooled.wrappedBuffer(value));
+			buf = allocator.ioBuffer(headSize);
+			buf.writeBytes(CRLF);
+		}
+
+		if (composite == null) {
+			return buf;
+		}
+		composite.addComponent(true, buf);
+		return composite;
+	}
+
+	private boolean isWrapped(AbstractParameter argument, int wrapThreshold) {
+		return argument instanceof RedisBytesParameter && argument.getBytesValue().length >= wrapThreshold;
+	}
+
 	public int getByteSize() {
 		int byteSize = CRLF.length + 1;
 		byteSize += RedisIntegerParameter.getIntegerByteSize(arguments.size());
@@ -90,17 +156,33 @@ public class RedisCommand {
 	}
 
 	public String getParameterByIndex(int i) {
-		if (i > arguments.size()) {
+		if (i >= arguments.size()) {
 			return null;
 		}
 		return arguments.get(i).getValue();
 	}
 
 	public byte[] getBytesParamByIndex(int i) {
-		if (i > arguments.size()) {
+		if (i >= arguments.size()) {
 			return null;
 		}
 		return arguments.get(i).getBytesValue();
 	}
 
+	public ByteBuf getByteBufParamByIndex(int i) {
+		if (i >= arguments.size()) {
+			return null;
+		}
+		return arguments.get(i).getByteBufValue();
+	}
+
+	/**
+	 * 释放参数中引用的解码缓冲区
+	 */
+	public void release() {
+		for (AbstractParameter argument : arguments) {
+			argument.release();
+		}
+	}
+
 }
@@ -71,6 +71,9 @@ public enum ErrorCode2 {
 
 	ERROR2_SECRETCHAT_CLOSE("error.alter", "站点服务不支持绝密聊天"), //
 
+	ERROR2_FILE_UPLOAD_SESSION("error.alter", "上传已过期，请重新上传"), //
+	ERROR2_FILE_CHUNK("error.alter", "文件分片错误"), // 分片位置或校验错误，客户端从响应中的offset继续上传
+
 	ERROR("error.alter", "请求失败"); // 默认未知错误
 
 	private String code;
@@ -0,0 +1,41 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.common.constant;
+
+/**
+ * <pre>
+ * 文件分片上传/下载使用的请求/响应header（TransportPackageData.header），与CoreProto.HeaderKey的取值不重叠
+ * 		上传：首个分片不带FILE_UPLOAD_ID，带FILE_TOTAL_SIZE，响应中返回FILE_UPLOAD_ID和服务端已接收的FILE_OFFSET；
+ * 			之后每个分片带FILE_UPLOAD_ID、FILE_OFFSET和FILE_CHUNK_CRC32，全部接收后响应中返回fileId；
+ * 			断线后可以发送空分片查询已接收的FILE_OFFSET，从该位置继续上传
+ * 		下载：带FILE_OFFSET和FILE_LENGTH，响应中返回FILE_TOTAL_SIZE、实际的FILE_OFFSET/FILE_LENGTH和FILE_CHUNK_CRC32
+ * 	下载图片时可以带FILE_VARIANT（s/m）获取缩略图，整个文件和分片下载都支持
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-20 16:42:10
+ */
+public interface FileHeaderKey {
+	public int FILE_TRANSFER_MODE = 2001;// 传输模式，值为MODE_CHUNK时按分片传输，否则为整个文件
+	public int FILE_UPLOAD_ID = 2002;// 分片上传会话id
+	public int FILE_OFFSET = 2003;// 分片在文件中的起始位置
+	public int FILE_LENGTH = 2004;// 分片长度
+	public int FILE_TOTAL_SIZE = 2005;// 文件总大小
+	public int FILE_CHUNK_CRC32 = 2006;// 分片内容的CRC32，十六进制
+	public int FILE_VARIANT = 2007;// 图片缩略图规格，s或m，缩略图不存在时返回原图
+
+	public String MODE_CHUNK = "chunk";
+}
@@ -0,0 +1,245 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.common.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * 分段串行执行器
+ * 		1.相同key的任务落在同一个stripe上，按提交顺序串行执行
+ * 		2.不同key的任务分散到多个stripe，每个stripe一个线程
+ * 		3.stripe队列有界，队列满时提交线程阻塞等待（背压）
+ * 		4.记录每个stripe的队列深度、等待时间、执行时间
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-14 11:05:18
+ */
+public class StripedExecutor {
+	private static final Logger logger = LoggerFactory.getLogger(StripedExecutor.class);
+
+	private final Stripe[] stripes;
+
+	public StripedExecutor(String name, int stripeCount, int queueSize) {
+		this.stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe(name + "-stripe-" + i, queueSize);
+			stripes[i].start();
+		}
+	}
+
+	/**
+	 * 按key提交任务，key为null时落在第一个stripe上
+	 * 
+	 * @param key
+	 * @param task
+	 */
+	public void execute(Object key, Runnable task) {
+		int hash = key == null ? 0 : key.hashCode();
+		hash ^= (hash >>> 16);
+		Stripe stripe = stripes[(hash & 0x7fffffff) % stripes.length];
+		try {
+			stripe.queue.put(new TimedTask(task));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("submit striped task interrupted, key=" + key, e);
+		}
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	public List<StripeStats> getStats() {
+		List<StripeStats> statsList = new ArrayList<StripeStats>(stripes.length);
+		for (Stripe stripe : stripes) {
+			statsList.add(stripe.getStats());
+		}
+		return statsList;
+	}
+
+	public void shutdown() {
+		for (Stripe stripe : stripes) {
+			stripe.interrupt();
+		}
+	}
+
+	private static class TimedTask {
+		private final Runnable task;
+		private final long submitNanos;
+
+		TimedTask(Runnable task) {
+			this.task = task;
+			this.submitNanos = System.nanoTime();
+		}
+	}
+
+	private static class Stripe extends Thread {
+		private final BlockingQueue<TimedTask> queue;
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong totalWaitNanos = new AtomicLong();
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+		private final AtomicLong totalServiceNanos = new AtomicLong();
+		private final AtomicLong maxServiceNanos = new AtomicLong();
+
+		Stripe(String name, int queueSize) {
+			super(name);
+			this.queue = new LinkedBlockingQueue<TimedTask>(queueSize);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				TimedTask timedTask;
+				try {
+					timedTask = queue.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				long startNanos = System.nanoTime();
+				try {
+					timedTask.task.run();
+				} catch (Throwable t) {
+					logger.error("execute striped task error. stripe=" + getName(), t);
+				}
+				long endNanos = System.nanoTime();
+				record(startNanos - timedTask.submitNanos, endNanos - startNanos);
+			}
+		}
+
+		private void record(long waitNanos, long serviceNanos) {
+			completed.incrementAndGet();
+			totalWaitNanos.addAndGet(waitNanos);
+			totalServiceNanos.addAndGet(serviceNanos);
+			updateMax(maxWaitNanos, waitNanos);
+			updateMax(maxServiceNanos, serviceNanos);
+		}
+
+		private void updateMax(AtomicLong max, long value) {
+			long current;
+			while (value > (current = max.get())) {
+				if (max.compareAndSet(current, value)) {
+					break;
+				}
+			}
+		}
+
+		StripeStats getStats() {
+			StripeStats stats = new StripeStats();
+			stats.setName(getName());
+			stats.setQueueDepth(queue.size());
+			stats.setCompleted(completed.get());
+			stats.setTotalWaitNanos(totalWaitNanos.get());
+			stats.setMaxWaitNanos(maxWaitNanos.get());
+			stats.setTotalServiceNanos(totalServiceNanos.get());
+			stats.setMaxServiceNanos(maxServiceNanos.get());
+			return stats;
+		}
+	}
+
+	/**
+	 * 单个stripe的统计快照
+	 */
+	public static class StripeStats {
+		private String name;
+		private int queueDepth;
+		private long completed;
+		private long totalWaitNanos;
+		private long maxWaitNanos;
+		private long totalServiceNanos;
+		private long maxServiceNanos;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		public void setQueueDepth(int queueDepth) {
+			this.queueDepth = queueDepth;
+		}
+
+		public long getCompleted() {
+			return completed;
+		}
+
+		public void setCompleted(long completed) {
+			this.completed = completed;
+		}
+
+		public long getTotalWaitNanos() {
+			return totalWaitNanos;
+		}
+
+		public void setTotalWaitNanos(long totalWaitNanos) {
+			this.totalWaitNanos = totalWaitNanos;
+		}
+
+		public long getMaxWaitNanos() {
+			return maxWaitNanos;
+		}
+
+		public void setMaxWaitNanos(long maxWaitNanos) {
+			this.maxWaitNanos = maxWaitNanos;
+		}
+
+		public long getTotalServiceNanos() {
+			return totalServiceNanos;
+		}
+
+		public void setTotalServiceNanos(long totalServiceNanos) {
+			this.totalServiceNanos = totalServiceNanos;
+		}
+
+		public long getMaxServiceNanos() {
+			return maxServiceNanos;
+		}
+
+		public void setMaxServiceNanos(long maxServiceNanos) {
+			this.maxServiceNanos = maxServiceNanos;
+		}
+
+		public long getAvgWaitMicros() {
+			return completed == 0 ? 0 : totalWaitNanos / completed / 1000;
+		}
+
+		public long getAvgServiceMicros() {
+			return completed == 0 ? 0 : totalServiceNanos / completed / 1000;
+		}
+
+		@Override
+		public String toString() {
+			return "name=" + name + ",queueDepth=" + queueDepth + ",completed=" + completed + ",avgWait="
+					+ getAvgWaitMicros() + "us,maxWait=" + (maxWaitNanos / 1000) + "us,avgService="
+					+ getAvgServiceMicros() + "us,maxService=" + (maxServiceNanos / 1000) + "us";
+		}
+	}
+}
@@ -0,0 +1,434 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.common.netty;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.command.RedisCommand;
+import com.akaxin.common.logs.LogCreater;
+import com.akaxin.common.logs.LogUtils;
+import com.akaxin.common.netty.codec.MessageDecoder;
+import com.akaxin.common.netty.codec.MessageEncoder;
+import com.akaxin.proto.core.CoreProto;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * <pre>
+ * 长连接netty客户端连接池，用于与平台（push等）通信
+ * 		1.所有连接共用一个EventLoopGroup，连接在首次使用时建立，断开后按指数退避重连
+ * 		2.请求以流水线方式发送，不等待上一个响应；服务端按序响应，响应按发送顺序与请求对应
+ * 		  批量发送的请求写入同一连接，只flush一次
+ * 		3.请求超时后关闭所在连接，避免后续响应错位；每个连接排队+在途请求数有上限
+ * 		4.每分钟输出一次统计：请求数、失败数、在途数、平均/最大耗时、重连次数
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-19 15:20:08
+ */
+public class NettyClientPool {
+	private static final Logger logger = LoggerFactory.getLogger(NettyClientPool.class);
+	private static final long RECONNECT_BASE_DELAY = 200;
+	private static final long RECONNECT_MAX_DELAY = 30 * 1000;
+	private static final Exception BUSY_EXCEPTION = new Exception("too many pending requests on connection");
+	private static final Exception TIMEOUT_EXCEPTION = new Exception("request timeout");
+	private static final Exception CLOSED_EXCEPTION = new Exception("connection closed before response");
+
+	private final String name;
+	private final String host;
+	private final int port;
+	private final int maxPending;
+	private final long requestTimeoutMillis;
+	private final EventLoopGroup eventLoopGroup;
+	private final Bootstrap clientBoot = new Bootstrap();
+	private final PooledConnection[] connections;
+	private final AtomicInteger nextConnection = new AtomicInteger();
+	private final org.apache.log4j.Logger statsLogger;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private final AtomicLong reconnects = new AtomicLong();
+
+	/**
+	 * @param name
+	 *            线程名以及统计日志名
+	 * @param connectionSize
+	 *            连接数
+	 * @param maxPending
+	 *            每个连接最多排队+在途的请求数，超过后直接失败
+	 * @param requestTimeoutMillis
+	 *            请求超时时间
+	 */
+	public NettyClientPool(String name, String host, int port, int connectionSize, int maxPending,
+			long requestTimeoutMillis) {
+		this.name = name;
+		this.host = host;
+		this.port = port;
+		this.maxPending = maxPending;
+		this.requestTimeoutMillis = requestTimeoutMillis;
+		this.eventLoopGroup = new NioEventLoopGroup(connectionSize, new DefaultThreadFactory(name, true));
+		this.clientBoot.group(eventLoopGroup);
+		this.clientBoot.channel(NioSocketChannel.class);
+		this.clientBoot.option(ChannelOption.TCP_NODELAY, true);
+		this.clientBoot.option(ChannelOption.SO_KEEPALIVE, true);
+		this.clientBoot.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(requestTimeoutMillis, 10000));
+		this.connections = new PooledConnection[connectionSize];
+		for (int i = 0; i < connectionSize; i++) {
+			this.connections[i] = new PooledConnection(eventLoopGroup.next());
+		}
+		this.statsLogger = LogCreater.createTimeLogger(name);
+		this.eventLoopGroup.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				LogUtils.info(statsLogger, "{}", snapshotAndResetStats());
+			}
+
+		}, 60, 60, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * 发送请求，返回的future在收到响应、超时或失败时完成，调用方无需阻塞
+	 */
+	public Future<IRedisCommandResponse> send(RedisCommand redisCommand) {
+		int index = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+		return connections[index].send(redisCommand);
+	}
+
+	/**
+	 * 批量发送，所有请求写入同一个连接后统一flush
+	 */
+	public List<Future<IRedisCommandResponse>> send(List<RedisCommand> redisCommands) {
+		int index = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+		return connections[index].send(redisCommands);
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public void close() {
+		eventLoopGroup.shutdownGracefully();
+	}
+
+	private void recordLatency(long latencyNanos, boolean success) {
+		inFlight.decrementAndGet();
+		if (!success) {
+			failures.incrementAndGet();
+		}
+		totalLatencyNanos.addAndGet(latencyNanos);
+		long max = maxLatencyNanos.get();
+		while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	private String snapshotAndResetStats() {
+		long requestCount = requests.getAndSet(0);
+		long latency = totalLatencyNanos.getAndSet(0);
+		return name + " requests=" + requestCount + " failures=" + failures.getAndSet(0) + " inFlight="
+				+ inFlight.get() + " avgLatency="
+				+ (requestCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latency / requestCount)) + "ms maxLatency="
+				+ TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.getAndSet(0)) + "ms reconnects="
+				+ reconnects.getAndSet(0);
+	}
+
+	private static class PendingRequest {
+		private final RedisCommand redisCommand;
+		private final Promise<IRedisCommandResponse> promise;
+		private final long startNanos = System.nanoTime();
+		private ScheduledFuture<?> timeoutFuture;
+		private Channel channel;
+
+		PendingRequest(RedisCommand redisCommand, Promise<IRedisCommandResponse> promise) {
+			this.redisCommand = redisCommand;
+			this.promise = promise;
+		}
+	}
+
+	/**
+	 * 单个连接，所有状态只在自己的eventLoop中读写
+	 */
+	private class PooledConnection {
+		private final EventLoop eventLoop;
+		private final ArrayDeque<PendingRequest> waitingQueue = new ArrayDeque<PendingRequest>();
+		private final ArrayDeque<PendingRequest> inFlightQueue = new ArrayDeque<PendingRequest>();
+		private Channel channel;
+		private boolean connecting;
+		private int failedAttempts;
+		private ScheduledFuture<?> reconnectFuture;
+
+		PooledConnection(EventLoop eventLoop) {
+			this.eventLoop = eventLoop;
+		}
+
+		Future<IRedisCommandResponse> send(RedisCommand redisCommand) {
+			final PendingRequest request = newRequest(redisCommand);
+			eventLoop.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					enqueue(request, true);
+				}
+			});
+			return request.promise;
+		}
+
+		List<Future<IRedisCommandResponse>> send(List<RedisCommand> redisCommands) {
+			final List<PendingRequest> batch = new ArrayList<PendingRequest>(redisCommands.size());
+			List<Future<IRedisCommandResponse>> futures = new ArrayList<Future<IRedisCommandResponse>>(
+					redisCommands.size());
+			for (RedisCommand redisCommand : redisCommands) {
+				PendingRequest request = newRequest(redisCommand);
+				batch.add(request);
+				futures.add(request.promise);
+			}
+			eventLoop.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					for (PendingRequest request : batch) {
+						enqueue(request, false);
+					}
+					if (channel != null) {
+						channel.flush();
+					}
+				}
+			});
+			return futures;
+		}
+
+		private PendingRequest newRequest(RedisCommand redisCommand) {
+			final PendingRequest request = new PendingRequest(redisCommand,
+					eventLoop.<IRedisCommandResponse>newPromise());
+			requests.incrementAndGet();
+			inFlight.incrementAndGet();
+			request.promise.addListener(new GenericFutureListener<Future<IRedisCommandResponse>>() {
+
+				@Override
+				public void operationComplete(Future<IRedisCommandResponse> future) throws Exception {
+					if (request.timeoutFuture != null) {
+						request.timeoutFuture.cancel(false);
+					}
+					recordLatency(System.nanoTime() - request.startNanos, future.isSuccess());
+				}
+			});
+			return request;
+		}
+
+		private void enqueue(final PendingRequest request, boolean flush) {
+			if (waitingQueue.size() + inFlightQueue.size() >= maxPending) {
+				request.promise.tryFailure(BUSY_EXCEPTION);
+				return;
+			}
+			request.timeoutFuture = eventLoop.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					timeout(request);
+				}
+
+			}, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+
+			if (channel != null && channel.isActive()) {
+				write(request, flush);
+			} else {
+				waitingQueue.add(request);
+				connect();
+			}
+		}
+
+		private void write(final PendingRequest request, boolean flush) {
+			request.channel = channel;
+			inFlightQueue.add(request);
+			ChannelFuture writeFuture = flush ? channel.writeAndFlush(request.redisCommand)
+					: channel.write(request.redisCommand);
+			writeFuture.addListener(new ChannelFutureListener() {
+
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					if (!future.isSuccess()) {
+						request.promise.tryFailure(future.cause());
+						future.channel().close();
+					}
+				}
+			});
+		}
+
+		private void timeout(PendingRequest request) {
+			if (!request.promise.tryFailure(TIMEOUT_EXCEPTION)) {
+				return;
+			}
+			if (request.channel == null) {
+				waitingQueue.remove(request);
+			} else {
+				// 响应与请求按顺序对应，丢失一个响应后该连接上的后续响应都会错位
+				logger.warn("{} request timeout, close connection {}", name, request.channel);
+				request.channel.close();
+			}
+		}
+
+		private void connect() {
+			if (connecting || reconnectFuture != null) {
+				return;
+			}
+			connecting = true;
+			clientBoot.clone(eventLoop).handler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast(new MessageEncoder());
+					ch.pipeline().addLast(new MessageDecoder());
+					ch.pipeline().addLast(new WriteTimeoutHandler(10, TimeUnit.SECONDS));
+					ch.pipeline().addLast(new ResponseHandler(PooledConnection.this));
+				}
+
+			}).connect(host, port).addListener(new ChannelFutureListener() {
+
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					connecting = false;
+					if (future.isSuccess()) {
+						connected(future.channel());
+					} else {
+						logger.error(name + " connect to " + host + ":" + port + " error.", future.cause());
+						failedAttempts++;
+						scheduleReconnect();
+					}
+				}
+			});
+		}
+
+		private void connected(final Channel newChannel) {
+			channel = newChannel;
+			newChannel.closeFuture().addListener(new ChannelFutureListener() {
+
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					closed(newChannel);
+				}
+			});
+			logger.info("{} connected to {}:{} channel={}", name, host, port, newChannel);
+
+			PendingRequest request;
+			while (channel.isActive() && (request = waitingQueue.poll()) != null) {
+				if (!request.promise.isDone()) {
+					write(request, false);
+				}
+			}
+			channel.flush();
+		}
+
+		private void closed(Channel closedChannel) {
+			if (channel == closedChannel) {
+				channel = null;
+			}
+			PendingRequest request;
+			while ((request = inFlightQueue.poll()) != null) {
+				request.promise.tryFailure(CLOSED_EXCEPTION);
+			}
+			logger.info("{} connection closed channel={}", name, closedChannel);
+			failedAttempts++;
+			scheduleReconnect();
+		}
+
+		/**
+		 * 有等待中的请求才重连，空闲时等下一次请求再建立连接
+		 */
+		private void scheduleReconnect() {
+			if (waitingQueue.isEmpty() || reconnectFuture != null || connecting || channel != null) {
+				return;
+			}
+			long delay = Math.min(RECONNECT_BASE_DELAY << Math.min(failedAttempts, 10), RECONNECT_MAX_DELAY);
+			reconnects.incrementAndGet();
+			reconnectFuture = eventLoop.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					reconnectFuture = null;
+					if (!waitingQueue.isEmpty()) {
+						connect();
+					}
+				}
+
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		private void response(RedisCommand redisCmd) {
+			PendingRequest request = inFlightQueue.poll();
+			if (request == null) {
+				logger.warn("{} receive response without request, redisCommand={}", name, redisCmd);
+				return;
+			}
+			failedAttempts = 0;
+			try {
+				CoreProto.TransportPackageData packageData = CoreProto.TransportPackageData
+						.parseFrom(redisCmd.getBytesParamByIndex(2));
+				CoreProto.ErrorInfo errInfo = packageData.getErr();
+				request.promise.trySuccess(new RedisCommandResponse(redisCmd, errInfo.getCode(), errInfo.getInfo()));
+			} catch (Exception e) {
+				request.promise.tryFailure(e);
+			}
+		}
+	}
+
+	private static class ResponseHandler extends SimpleChannelInboundHandler<RedisCommand> {
+		private final PooledConnection connection;
+
+		ResponseHandler(PooledConnection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, RedisCommand redisCmd) throws Exception {
+			connection.response(redisCmd);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			logger.error("netty client pool channel exception.", cause);
+			ctx.close();
+		}
+	}
+}
@@ -15,8 +15,6 @@
  */
 package com.akaxin.common.netty.codec;
 
-import java.nio.ByteBuffer;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,11 +53,7 @@ public class MessageEncoder extends MessageToByteEncoder<RedisCommand> {
 
 	@Override
 	protected void encode(ChannelHandlerContext ctx, RedisCommand msg, ByteBuf out) throws Exception {
-		int byteSize = msg.getByteSize();
-		ByteBuffer byteBuffer = ByteBuffer.allocate(byteSize);
-		msg.encode(byteBuffer);
-		byte[] bytes = byteBuffer.array();
-		out.writeBytes(bytes);
+		msg.encode(out);
 	}
 
 }
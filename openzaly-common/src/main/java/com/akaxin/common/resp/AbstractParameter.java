@@ -3,12 +3,20 @@ package com.akaxin.common.resp;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 public abstract class AbstractParameter {
 	protected static final Charset UTF8 = Charset.forName("UTF-8");
 	protected static final byte[] CRLF = "\r\n".getBytes(UTF8);
 
 	public abstract void encode(ByteBuffer buffer);
 
+	/**
+	 * 直接写入Netty的ByteBuf，不经过中间的ByteBuffer
+	 */
+	public abstract void encode(ByteBuf buffer);
+
 	public abstract int getSize();
 
 	public String getValue() {
@@ -18,4 +26,18 @@ public abstract class AbstractParameter {
 	public byte[] getBytesValue() {
 		return null;
 	}
+
+	/**
+	 * 以ByteBuf形式读取参数，默认包装byte[]，不产生复制
+	 */
+	public ByteBuf getByteBufValue() {
+		byte[] bytesValue = getBytesValue();
+		return bytesValue == null ? null : Unpooled.wrappedBuffer(bytesValue);
+	}
+
+	/**
+	 * 释放参数持有的缓冲区，非引用计数参数无需处理
+	 */
+	public void release() {
+	}
 }
@@ -0,0 +1,72 @@
+package com.akaxin.common.resp;
+
+import java.nio.ByteBuffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * 直接引用解码缓冲区中的一段数据（retained slice），避免解码时复制出byte[]；
+ * 使用完毕后必须调用{@link #release()}归还缓冲区
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-12 10:21:35
+ */
+public class RedisByteBufParameter extends AbstractParameter {
+
+	final ByteBuf value;
+
+	public RedisByteBufParameter(ByteBuf value) {
+		this.value = value;
+	}
+
+	public static RedisByteBufParameter of(ByteBuf value) {
+		return new RedisByteBufParameter(value);
+	}
+
+	@Override
+	public void encode(ByteBuffer buffer) {
+		buffer.put((byte) '$');
+		RedisIntegerParameter.writeInteger(buffer, value.readableBytes());
+		buffer.put(CRLF);
+		buffer.put(value.nioBuffer());
+		buffer.put(CRLF);
+	}
+
+	@Override
+	public void encode(ByteBuf buffer) {
+		RedisBytesParameter.writeHeader(buffer, value.readableBytes());
+		buffer.writeBytes(value, value.readerIndex(), value.readableBytes());
+		buffer.writeBytes(CRLF);
+	}
+
+	@Override
+	public String getValue() {
+		return value.toString(UTF8);
+	}
+
+	@Override
+	public byte[] getBytesValue() {
+		return ByteBufUtil.getBytes(value);
+	}
+
+	@Override
+	public ByteBuf getByteBufValue() {
+		return this.value;
+	}
+
+	@Override
+	public int getSize() {
+		int byteSize = CRLF.length * 2 + 1;
+		byteSize += RedisIntegerParameter.getIntegerByteSize(value.readableBytes());
+		byteSize += value.readableBytes();
+		return byteSize;
+	}
+
+	@Override
+	public void release() {
+		if (value.refCnt() > 0) {
+			value.release();
+		}
+	}
+}
@@ -2,6 +2,8 @@ package com.akaxin.common.resp;
 
 import java.nio.ByteBuffer;
 
+import io.netty.buffer.ByteBuf;
+
 public class RedisBytesParameter extends AbstractParameter {
 
 	final byte[] value;
@@ -30,6 +32,26 @@ public class RedisBytesParameter extends AbstractParameter {
 		buffer.put(CRLF);
 	}
 
+	@Override
+	public void encode(ByteBuf buffer) {
+		writeBytes(buffer, value);
+	}
+
+	public static void writeBytes(ByteBuf buffer, byte[] value) {
+		writeHeader(buffer, value.length);
+		buffer.writeBytes(value);
+		buffer.writeBytes(CRLF);
+	}
+
+	/**
+	 * 只写入参数头部：$len\r\n，参数内容由调用方追加
+	 */
+	public static void writeHeader(ByteBuf buffer, int length) {
+		buffer.writeByte('$');
+		RedisIntegerParameter.writeInteger(buffer, length);
+		buffer.writeBytes(CRLF);
+	}
+
 	public static int getByteSize(byte[] value) {
 		int byteSize = CRLF.length * 2 + 1;
 		byteSize += RedisIntegerParameter.getIntegerByteSize(value.length);
@@ -2,6 +2,8 @@ package com.akaxin.common.resp;
 
 import java.nio.ByteBuffer;
 
+import io.netty.buffer.ByteBuf;
+
 public class RedisDoubleParameter extends AbstractParameter {
 	final double value;
 
@@ -18,6 +20,11 @@ public class RedisDoubleParameter extends AbstractParameter {
 		RedisStringParameter.writeString(target, Double.toString(value));
 	}
 
+	@Override
+	public void encode(ByteBuf target) {
+		RedisStringParameter.writeString(target, Double.toString(value));
+	}
+
 	@Override
 	public String getValue() {
 		return String.valueOf(value);
@@ -2,6 +2,8 @@ package com.akaxin.common.resp;
 
 import java.nio.ByteBuffer;
 
+import io.netty.buffer.ByteBuf;
+
 public class RedisIntegerParameter extends AbstractParameter {
 	final long value;
 
@@ -41,6 +43,25 @@ public class RedisIntegerParameter extends AbstractParameter {
 
 	}
 
+	@Override
+	public void encode(ByteBuf target) {
+		RedisStringParameter.writeString(target, Long.toString(value));
+	}
+
+	public static void writeInteger(ByteBuf target, long value) {
+		if (value < 10) {
+			target.writeByte((byte) ('0' + value));
+			return;
+		}
+
+		String asString = Long.toString(value);
+
+		for (int i = 0; i < asString.length(); i++) {
+			target.writeByte((byte) asString.charAt(i));
+		}
+
+	}
+
 	public static int getIntegerByteSize(long value) {
 		int size = 1;
 		if (value < 10) {
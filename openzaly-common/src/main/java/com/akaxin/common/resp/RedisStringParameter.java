@@ -2,6 +2,8 @@ package com.akaxin.common.resp;
 
 import java.nio.ByteBuffer;
 
+import io.netty.buffer.ByteBuf;
+
 public class RedisStringParameter extends AbstractParameter {
 
 	public final String value;
@@ -28,6 +30,15 @@ public class RedisStringParameter extends AbstractParameter {
 		target.put(CRLF);
 	}
 
+	@Override
+	public void encode(ByteBuf target) {
+		writeString(target, value);
+	}
+
+	public static void writeString(ByteBuf target, String value) {
+		RedisBytesParameter.writeBytes(target, value.getBytes(UTF8));
+	}
+
 	public static int getStringByteSize(String value) {
 		int byteSize = CRLF.length * 2 + 1;
 		byte[] valueByte = value.getBytes(UTF8);
@@ -0,0 +1,93 @@
+package com.akaxin.common.test;
+
+import java.lang.reflect.Method;
+
+import com.akaxin.common.chain.MethodInvokerTable;
+import com.akaxin.common.chain.MethodInvokerTable.MethodInvoker;
+import com.akaxin.common.chain.MethodReflectHandler;
+import com.akaxin.common.command.Command;
+import com.akaxin.common.command.CommandResponse;
+
+/**
+ * 对比反射分发（getDeclaredMethod + Method.invoke）与MethodInvokerTable分发的耗时
+ * 
+ * <pre>
+ * api.friend.list : FriendService.list(Command)
+ * im.site.auth    : AuthHandler.auth(Command)
+ * </pre>
+ */
+public class DispatchBenchmark {
+	private static final int ROUNDS = 5000000;
+	private static final CommandResponse RESPONSE = new CommandResponse();
+
+	public static class FriendService {
+		public CommandResponse list(Command command) {
+			return RESPONSE;
+		}
+
+		public CommandResponse profile(Command command) {
+			return RESPONSE;
+		}
+	}
+
+	public static class AuthHandler extends MethodReflectHandler<Command> {
+		public boolean hello(Command command) {
+			return true;
+		}
+
+		public boolean auth(Command command) {
+			return command != null;
+		}
+	}
+
+	public static void main(String[] args) throws Throwable {
+		Command listCommand = new Command();
+		listCommand.setAction("api.friend.list");
+		Command authCommand = new Command();
+		authCommand.setAction("im.site.auth");
+
+		FriendService friendService = new FriendService();
+		AuthHandler authHandler = new AuthHandler();
+		MethodInvokerTable friendTable = MethodInvokerTable.forClass(FriendService.class, Command.class);
+
+		for (int i = 0; i < 2; i++) {
+			boolean print = i == 1;// 第一轮预热
+			long start = System.nanoTime();
+			long hits = 0;
+			for (int j = 0; j < ROUNDS; j++) {
+				Method m = friendService.getClass().getDeclaredMethod(listCommand.getMethod(), listCommand.getClass());
+				hits += m.invoke(friendService, listCommand) == RESPONSE ? 1 : 0;
+			}
+			print(print, "api.friend.list reflect", start, hits);
+
+			start = System.nanoTime();
+			hits = 0;
+			for (int j = 0; j < ROUNDS; j++) {
+				MethodInvoker invoker = friendTable.getInvoker(listCommand.getMethod());
+				hits += invoker.invoke(friendService, listCommand) == RESPONSE ? 1 : 0;
+			}
+			print(print, "api.friend.list table  ", start, hits);
+
+			start = System.nanoTime();
+			hits = 0;
+			for (int j = 0; j < ROUNDS; j++) {
+				Method m = authHandler.getClass().getDeclaredMethod(authCommand.getMethod(), authCommand.getClass());
+				hits += (Boolean) m.invoke(authHandler, authCommand) ? 1 : 0;
+			}
+			print(print, "im.site.auth    reflect", start, hits);
+
+			start = System.nanoTime();
+			hits = 0;
+			for (int j = 0; j < ROUNDS; j++) {
+				hits += authHandler.handle(authCommand) ? 1 : 0;
+			}
+			print(print, "im.site.auth    table  ", start, hits);
+		}
+	}
+
+	private static void print(boolean print, String name, long start, long hits) {
+		if (print) {
+			System.out.println(name + " ns/op=" + ((System.nanoTime() - start) / (double) ROUNDS) + " hits=" + hits);
+		}
+	}
+}
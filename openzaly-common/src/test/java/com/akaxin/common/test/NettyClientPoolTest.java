@@ -0,0 +1,153 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.common.test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.akaxin.common.command.RedisCommand;
+import com.akaxin.common.constant.CommandConst;
+import com.akaxin.common.netty.IRedisCommandResponse;
+import com.akaxin.common.netty.NettyClientPool;
+import com.akaxin.common.netty.codec.MessageDecoder;
+import com.akaxin.common.netty.codec.MessageEncoder;
+import com.akaxin.proto.core.CoreProto;
+import com.google.protobuf.ByteString;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.Future;
+
+/**
+ * <pre>
+ * NettyClientPool测试，使用本地模拟的push平台
+ * 		1.流水线发送多个请求，校验响应与请求一一对应，输出耗时；批量发送同样校验
+ * 		2.平台重启后，请求失败并在平台恢复后自动重连
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-19 16:02:45
+ */
+public class NettyClientPoolTest {
+	private static final int REQUESTS = 20000;
+
+	/**
+	 * 模拟平台：原样返回请求中的data
+	 */
+	static class EchoPlatformHandler extends SimpleChannelInboundHandler<RedisCommand> {
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, RedisCommand redisCmd) throws Exception {
+			CoreProto.TransportPackageData request = CoreProto.TransportPackageData
+					.parseFrom(redisCmd.getBytesParamByIndex(2));
+			CoreProto.TransportPackageData response = CoreProto.TransportPackageData.newBuilder()
+					.setErr(CoreProto.ErrorInfo.newBuilder().setCode("success").build()).setData(request.getData())
+					.build();
+			ctx.writeAndFlush(new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(CommandConst.ACTION_RES)
+					.add(response.toByteArray()));
+		}
+	}
+
+	private static Channel startPlatform(EventLoopGroup group, int port) throws InterruptedException {
+		return new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<Channel>() {
+
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+						ch.pipeline().addLast(new MessageEncoder());
+						ch.pipeline().addLast(new MessageDecoder());
+						ch.pipeline().addLast(new EchoPlatformHandler());
+					}
+				}).bind(port).sync().channel();
+	}
+
+	private static Future<IRedisCommandResponse> send(NettyClientPool client, int i) {
+		CoreProto.TransportPackageData data = CoreProto.TransportPackageData.newBuilder()
+				.setData(ByteString.copyFromUtf8(String.valueOf(i))).build();
+		return client.send(new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(CommandConst.API_PUSH_NOTIFICATION)
+				.add(data.toByteArray()));
+	}
+
+	private static String echoData(IRedisCommandResponse response) throws Exception {
+		return CoreProto.TransportPackageData.parseFrom(response.getRedisCommand().getBytesParamByIndex(2)).getData()
+				.toStringUtf8();
+	}
+
+	public static void main(String[] args) throws Exception {
+		EventLoopGroup platformGroup = new NioEventLoopGroup(2);
+		Channel platform = startPlatform(platformGroup, 0);
+		int port = ((InetSocketAddress) platform.localAddress()).getPort();
+		NettyClientPool client = new NettyClientPool("pushClientTest", "127.0.0.1", port, 2, 100000, 5000);
+
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+			List<Future<IRedisCommandResponse>> futures = new ArrayList<Future<IRedisCommandResponse>>();
+			for (int i = 0; i < REQUESTS; i++) {
+				futures.add(send(client, i));
+			}
+			int mismatched = 0;
+			for (int i = 0; i < REQUESTS; i++) {
+				IRedisCommandResponse response = futures.get(i).get(10, TimeUnit.SECONDS);
+				if (!response.isSuccess() || !String.valueOf(i).equals(echoData(response))) {
+					mismatched++;
+				}
+			}
+			long costMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			System.out.println("round " + round + " requests=" + REQUESTS + " mismatched=" + mismatched + " cost="
+					+ costMillis + "ms qps=" + (REQUESTS * 1000L / Math.max(1, costMillis)));
+		}
+
+		// 批量发送，每批统一flush
+		List<RedisCommand> batch = new ArrayList<RedisCommand>();
+		for (int i = 0; i < 200; i++) {
+			CoreProto.TransportPackageData data = CoreProto.TransportPackageData.newBuilder()
+					.setData(ByteString.copyFromUtf8(String.valueOf(i))).build();
+			batch.add(new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(CommandConst.API_PUSH_NOTIFICATION)
+					.add(data.toByteArray()));
+		}
+		List<Future<IRedisCommandResponse>> batchFutures = client.send(batch);
+		int batchMismatched = 0;
+		for (int i = 0; i < batchFutures.size(); i++) {
+			if (!String.valueOf(i).equals(echoData(batchFutures.get(i).get(10, TimeUnit.SECONDS)))) {
+				batchMismatched++;
+			}
+		}
+		System.out.println("batch requests=" + batch.size() + " mismatched=" + batchMismatched);
+
+		// 平台下线（关闭所有连接），请求失败
+		platformGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+		Future<IRedisCommandResponse> down = send(client, -1).await();
+		System.out.println("platform down, request success=" + down.isSuccess() + " cause=" + down.cause());
+
+		// 平台恢复，请求进入等待队列，退避重连后成功
+		platformGroup = new NioEventLoopGroup(2);
+		platform = startPlatform(platformGroup, port);
+		Future<IRedisCommandResponse> up = send(client, 1).await();
+		System.out.println("platform up, request success=" + up.isSuccess() + " inFlight=" + client.getInFlight());
+
+		client.close();
+		platform.close().sync();
+		platformGroup.shutdownGracefully();
+	}
+}
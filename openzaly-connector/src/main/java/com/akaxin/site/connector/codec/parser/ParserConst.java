@@ -7,6 +7,10 @@ import io.netty.util.AttributeKey;
 public class ParserConst {
 	public static int HEAD_LENGTH = 12;
 
+	// 解码器模式，replay:MessageDecoder frame:MessageFrameDecoder
+	public static final String DECODER_REPLAY = "replay";
+	public static final String DECODER_FRAME = "frame";
+
 	public static final AttributeKey<ProtocolParser> INPARSER = AttributeKey.valueOf("inParser");
 
 	public static final AttributeKey<ChannelSession> CHANNELSESSION = AttributeKey.valueOf("channelSession");
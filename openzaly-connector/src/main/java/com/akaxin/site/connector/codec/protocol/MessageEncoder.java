@@ -15,7 +15,7 @@
  */
 package com.akaxin.site.connector.codec.protocol;
 
-import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,22 +26,23 @@ import com.akaxin.common.constant.RequestAction;
 import com.akaxin.common.logs.LogUtils;
 import com.akaxin.site.connector.codec.parser.ParserConst;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 
 /**
- * 编码器
+ * 编码器，直接写入ctx分配的ByteBuf；较大的byte[]参数（如文件下载）不复制，以CompositeByteBuf输出
  * 
  * @author Sam
  * @since 2017.09.27
  * 
  */
-public class MessageEncoder extends MessageToByteEncoder<RedisCommand> {
+public class MessageEncoder extends MessageToMessageEncoder<RedisCommand> {
 	private static final Logger logger = LoggerFactory.getLogger(MessageEncoder.class);
+	// 不小于此长度的byte[]参数使用包装方式输出
+	private static final int WRAP_THRESHOLD = 16 * 1024;
 
 	@Override
 	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
@@ -58,7 +59,7 @@ public class MessageEncoder extends MessageToByteEncoder<RedisCommand> {
 	}
 
 	@Override
-	protected void encode(ChannelHandlerContext ctx, RedisCommand msg, ByteBuf out) throws Exception {
+	protected void encode(ChannelHandlerContext ctx, RedisCommand msg, List<Object> out) throws Exception {
 		ChannelSession channelSession = ctx.channel().attr(ParserConst.CHANNELSESSION).get();
 		String version = msg.getParameterByIndex(0);
 		String action = msg.getParameterByIndex(1);
@@ -69,11 +70,7 @@ public class MessageEncoder extends MessageToByteEncoder<RedisCommand> {
 			LogUtils.printNetLog(logger, "s->c", version, action, "", "", params.length);
 		}
 
-		int byteSize = msg.getByteSize();
-		ByteBuffer byteBuffer = ByteBuffer.allocate(byteSize);
-		msg.encode(byteBuffer);
-		byte[] bytes = byteBuffer.array();
-		out.writeBytes(bytes);
+		out.add(msg.encode(ctx.alloc(), WRAP_THRESHOLD));
 
 	}
 
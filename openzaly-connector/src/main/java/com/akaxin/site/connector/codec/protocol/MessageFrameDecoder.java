@@ -0,0 +1,199 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.connector.codec.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.akaxin.common.command.RedisCommand;
+import com.akaxin.common.resp.AbstractParameter;
+import com.akaxin.common.resp.RedisByteBufParameter;
+import com.akaxin.common.resp.RedisBytesParameter;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.ByteProcessor;
+
+/**
+ * <pre>
+ * 增量解码器，与{@link MessageDecoder}协议相同（*N\r\n$len\r\n...）
+ * 		1.不使用ReplayingDecoder，半包到达时保留已解析的状态，不会从头重新解析
+ * 		2.长度字段在ByteBuf中原地解析，不生成临时byte[]与String
+ * 		3.较大的参数以retained slice的形式输出，由NettyServerHandler使用后释放
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-12 10:36:20
+ */
+public class MessageFrameDecoder extends ByteToMessageDecoder {
+	// *N、$len行的最大长度，防止异常数据一直缓存
+	private static final int MAX_LINE_LENGTH = 16;
+	/**
+	 * 小于此长度的参数（version/action）直接复制，只有较大的参数使用retained slice；
+	 * 否则包体未收全时slice一直占用累积缓冲区，每次读取都会触发累积缓冲区的整体复制
+	 */
+	private static final int SLICE_THRESHOLD = 128;
+
+	private final LengthProcessor lengthProcessor = new LengthProcessor();
+	private ReplaySignal state = ReplaySignal.START_POINT;
+	private int paramsCount;
+	private int bodyLength;
+	private List<AbstractParameter> paramsList;
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		while (in.isReadable()) {
+			switch (state) {
+			case START_POINT:
+				if (!skipTo(in, (byte) '*')) {
+					return;
+				}
+				int count = readLength(in);
+				if (count < 0) {
+					return;
+				}
+				if (count == 0) {
+					throw new CorruptedFrameException("empty command frame");
+				}
+				paramsCount = count;
+				paramsList = new ArrayList<AbstractParameter>(count);
+				state = ReplaySignal.HEADER_POINT;
+				break;
+			case HEADER_POINT:
+				if (!skipTo(in, (byte) '$')) {
+					return;
+				}
+				int length = readLength(in);
+				if (length < 0) {
+					return;
+				}
+				bodyLength = length;
+				state = ReplaySignal.BODY_POINT;
+				break;
+			case BODY_POINT:
+				if (in.readableBytes() < bodyLength + 2) {
+					return;
+				}
+				// 与长度行一致，结尾不是CRLF说明帧已错位，抛异常断开连接
+				int crlfIndex = in.readerIndex() + bodyLength;
+				if (in.getByte(crlfIndex) != '\r' || in.getByte(crlfIndex + 1) != '\n') {
+					throw new CorruptedFrameException("bulk parameter not end with CRLF");
+				}
+				if (bodyLength < SLICE_THRESHOLD) {
+					byte[] dataBuffer = new byte[bodyLength];
+					in.readBytes(dataBuffer);
+					paramsList.add(RedisBytesParameter.of(dataBuffer));
+				} else {
+					paramsList.add(RedisByteBufParameter.of(in.readRetainedSlice(bodyLength)));
+				}
+				in.skipBytes(2);
+				if (paramsList.size() < paramsCount) {
+					state = ReplaySignal.HEADER_POINT;
+					break;
+				}
+				out.add(new RedisCommand().addAll(paramsList));
+				paramsList = null;
+				state = ReplaySignal.START_POINT;
+				// 每次只输出一个完整的包，剩余数据由ByteToMessageDecoder继续调用decode
+				return;
+			default:
+				throw new CorruptedFrameException("parsing protocol exceptions");
+			}
+		}
+	}
+
+	/**
+	 * 跳过标记字节之前的无效数据，与ProtocolParser丢弃无效字节的行为一致
+	 */
+	private boolean skipTo(ByteBuf in, byte marker) {
+		int markerIndex = in.indexOf(in.readerIndex(), in.writerIndex(), marker);
+		if (markerIndex < 0) {
+			in.skipBytes(in.readableBytes());
+			return false;
+		}
+		in.readerIndex(markerIndex);
+		return true;
+	}
+
+	/**
+	 * 读取标记字节后以CRLF结尾的十进制长度，数据不足时返回-1且不移动readerIndex
+	 */
+	private int readLength(ByteBuf in) {
+		int start = in.readerIndex() + 1;
+		int lfIndex = in.indexOf(start, in.writerIndex(), (byte) '\n');
+		if (lfIndex < 0) {
+			if (in.writerIndex() - start > MAX_LINE_LENGTH) {
+				throw new CorruptedFrameException("length line too long");
+			}
+			return -1;
+		}
+		int crIndex = lfIndex - 1;
+		if (crIndex < start || in.getByte(crIndex) != '\r') {
+			throw new CorruptedFrameException("length line not end with CRLF");
+		}
+		lengthProcessor.reset();
+		in.forEachByte(start, crIndex - start, lengthProcessor);
+		in.readerIndex(lfIndex + 1);
+		return lengthProcessor.value();
+	}
+
+	@Override
+	protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+		// 连接关闭时释放未组成完整包的参数
+		if (paramsList != null) {
+			for (AbstractParameter param : paramsList) {
+				param.release();
+			}
+			paramsList = null;
+		}
+	}
+
+	/**
+	 * 逐字节累加十进制长度，复用同一个实例避免分配
+	 */
+	private static final class LengthProcessor implements ByteProcessor {
+		private int value;
+		private int digits;
+
+		void reset() {
+			value = 0;
+			digits = 0;
+		}
+
+		int value() {
+			if (digits == 0) {
+				throw new CorruptedFrameException("empty length");
+			}
+			return value;
+		}
+
+		@Override
+		public boolean process(byte b) throws Exception {
+			if (b < '0' || b > '9' || digits >= 10) {
+				throw new CorruptedFrameException("invalid length byte: " + b);
+			}
+			value = value * 10 + (b - '0');
+			if (value < 0) {
+				throw new CorruptedFrameException("length overflow");
+			}
+			digits++;
+			return true;
+		}
+	}
+
+}
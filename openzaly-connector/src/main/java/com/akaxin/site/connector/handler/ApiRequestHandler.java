@@ -50,6 +50,7 @@ import io.netty.util.concurrent.GenericFutureListener;
  */
 public class ApiRequestHandler extends AbstractCommonHandler<Command> {
 	private static final Logger logger = LoggerFactory.getLogger(ApiRequestHandler.class);
+	private static final IUserSessionDao sessionDao = new UserSessionDaoService();
 
 	public boolean handle(Command command) {
 		logger.info("api request handler executing....");
@@ -67,7 +68,6 @@ public class ApiRequestHandler extends AbstractCommonHandler<Command> {
 
 				logger.info("API request header sessionId=" + siteSessionId);
 
-				IUserSessionDao sessionDao = new UserSessionDaoService();
 				SimpleAuthBean authBean = sessionDao.getUserSession(siteSessionId);
 
 				logger.info("api session auth result {}", authBean.toString());
@@ -105,6 +105,10 @@ public class ApiRequestHandler extends AbstractCommonHandler<Command> {
 		CoreProto.TransportPackageData.Builder packageBuilder = CoreProto.TransportPackageData.newBuilder();
 		// header
 		Map<Integer, String> header = new HashMap<Integer, String>();
+		// 业务返回的header，如文件分片信息
+		if (comamndResponse.getHeader() != null) {
+			header.putAll(comamndResponse.getHeader());
+		}
 		// 站点业务版本（proto版本）
 		header.put(CoreProto.HeaderKey.SITE_SERVER_VERSION_VALUE, CommandConst.SITE_VERSION);
 		packageBuilder.putAllHeader(header);
@@ -108,7 +108,13 @@ public class ImSiteAuthHandler extends MethodReflectHandler<Command> {
 				channelSession.setCtype(1);
 				channelSession.setUserId(siteUserId);
 				channelSession.setDeviceId(authSessionBean.getDeviceId());
-				ChannelManager.addChannelSession(authSessionBean.getDeviceId(), channelSession);
+				ChannelManager.addUserChannelSession(channelSession);
+				if (!channelSession.getChannel().isActive()) {
+					// 认证期间连接已经断开，channelInactive时还没有userId，这里补设离线
+					SessionManager.getInstance().setUserOffline(siteUserId, authSessionBean.getDeviceId());
+					logger.info("channel closed during im.site.auth siteUserId={}", siteUserId);
+					return false;
+				}
 
 				SessionManager.getInstance().updateActiveTime(siteUserId, authSessionBean.getDeviceId());
 				logger.info("im.site.auth success. ChannelSession={},ChannelSessionSize{}",
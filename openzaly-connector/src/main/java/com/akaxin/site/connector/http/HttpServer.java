@@ -21,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import com.akaxin.common.command.Command;
 import com.akaxin.common.executor.AbstracteExecutor;
 import com.akaxin.common.executor.SimpleExecutor;
+import com.akaxin.site.connector.http.handler.HttpFileHandler;
 import com.akaxin.site.connector.http.handler.HttpServerHandler;
 
 import io.netty.bootstrap.ServerBootstrap;
@@ -61,6 +62,7 @@ public abstract class HttpServer {
 				public void initChannel(SocketChannel ch) throws Exception {
 					ch.pipeline().addLast(new HttpResponseEncoder());
 					ch.pipeline().addLast(new HttpRequestDecoder());
+					ch.pipeline().addLast(new HttpFileHandler());
 					ch.pipeline().addLast(new HttpServerHandler(executor));
 				}
 			});
@@ -0,0 +1,350 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.connector.http.handler;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.site.business.utils.FilePathUtils;
+import com.akaxin.site.business.utils.FileServerUtils;
+import com.akaxin.site.business.utils.ImageThumbnailer;
+import com.akaxin.site.business.utils.MediaCache;
+import com.akaxin.site.storage.api.IUserSessionDao;
+import com.akaxin.site.storage.bean.SimpleAuthBean;
+import com.akaxin.site.storage.service.UserSessionDaoService;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * <pre>
+ * 通过http GET/HEAD下载站点文件：GET /file/{fileId}
+ * 		0.与HttpServerHandler相同的客户端ip检查；头像、站点logo和扩展图片公开访问，
+ * 			其他文件（消息图片、语音等）需要带站点session（请求头site-session-id或参数site_session_id），否则返回403
+ * 			文件类型、session查询和读文件在http-file线程中执行，处理期间暂停读取该连接的后续请求
+ * 		1.文件内容使用DefaultFileRegion（sendfile）直接从文件写到socket，不经过JVM堆
+ * 		2.支持单个Range（bytes=start-end / start- / -suffix），多个Range时返回整个文件
+ * 		3.fileId对应的文件不会被修改，ETag由文件长度和修改时间生成，If-None-Match命中返回304
+ * 		4.公开文件Cache-Control: public, max-age=site.http.file.max.age（秒），客户端/CDN可以直接缓存；
+ * 			需要session的文件使用private，只允许客户端自己缓存
+ * 		5.头像、站点logo等热点小文件命中MediaCache时直接从内存返回，不再读磁盘；
+ * 			未命中时本次用sendfile返回，同时在后台线程加载到缓存（事件循环中不读文件）
+ * 		6.图片可以带size=s/m参数获取缩略图，缩略图还没有生成时返回原图
+ * 	其他请求交给后面的HttpServerHandler处理；site.http.file.enabled=false时关闭
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-21 10:26:44
+ */
+public class HttpFileHandler extends ChannelInboundHandlerAdapter {
+	private static final Logger logger = LoggerFactory.getLogger(HttpFileHandler.class);
+	private static final String FILE_URI_PREFIX = "/file/";
+	private static final String SIZE_PARAM = "size";
+	private static final boolean ENABLED = Boolean
+			.parseBoolean(System.getProperty("site.http.file.enabled", "true"));
+	private static final long MAX_AGE = Long.getLong("site.http.file.max.age", 30 * 24 * 3600);
+	private static final int THREADS = Integer.getInteger("site.http.file.threads", 4);
+	private static final int QUEUE_SIZE = Integer.getInteger("site.http.file.queue", 1000);
+	private static final String SESSION_HEADER = "site-session-id";
+	private static final String SESSION_PARAM = "site_session_id";
+	private static final IUserSessionDao sessionDao = new UserSessionDaoService();
+	private static final ThreadPoolExecutor fileExecutor = new ThreadPoolExecutor(THREADS, THREADS, 60,
+			TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new DefaultThreadFactory("http-file", true));
+
+	static {
+		fileExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	// 当前请求由本handler处理，请求体（GET一般只有LastHttpContent）直接丢弃
+	private boolean handling;
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof HttpRequest) {
+			HttpRequest request = (HttpRequest) msg;
+			handling = ENABLED && isFileRequest(request);
+			if (handling) {
+				String clientIp = HttpServerHandler.getClientIp(ctx, request);
+				if (!HttpServerHandler.checkLegalClientIp(clientIp)) {
+					logger.error("http file request illegal request IP={}", clientIp);
+					ctx.close();
+				} else {
+					submit(ctx, request);
+				}
+			}
+		}
+		if (!handling) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+		if (msg instanceof LastHttpContent) {
+			handling = false;
+		}
+		if (msg instanceof HttpContent) {
+			ReferenceCountUtil.release(msg);
+		}
+	}
+
+	/**
+	 * 在http-file线程中处理请求，处理完成前暂停读取，保证同一连接上的响应顺序
+	 */
+	private void submit(final ChannelHandlerContext ctx, final HttpRequest request) {
+		ctx.channel().config().setAutoRead(false);
+		try {
+			fileExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						serveFile(ctx, request);
+					} catch (Exception e) {
+						logger.error("http file request error uri=" + request.uri(), e);
+						sendStatus(ctx, request, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+					} finally {
+						resumeReading(ctx);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.warn("http file queue is full uri={}", request.uri());
+			sendStatus(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE);
+			resumeReading(ctx);
+		}
+	}
+
+	private void resumeReading(final ChannelHandlerContext ctx) {
+		ctx.channel().eventLoop().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				ctx.channel().config().setAutoRead(true);
+			}
+		});
+	}
+
+	private boolean isFileRequest(HttpRequest request) {
+		HttpMethod method = request.method();
+		return (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method))
+				&& request.uri().startsWith(FILE_URI_PREFIX);
+	}
+
+	private void serveFile(ChannelHandlerContext ctx, HttpRequest request) throws Exception {
+		QueryStringDecoder decoder = new QueryStringDecoder(request.uri());
+		String fileId = decoder.path().substring(FILE_URI_PREFIX.length());
+		boolean publicFile = FileServerUtils.isPublicType(FileServerUtils.getFileType(fileId));
+		if (!publicFile && !checkSiteSession(request, decoder)) {
+			sendStatus(ctx, request, HttpResponseStatus.FORBIDDEN);
+			return;
+		}
+		// 请求了缩略图但还没有生成时返回原图，这种响应不能长期缓存
+		boolean cacheable = true;
+		List<String> size = decoder.parameters().get(SIZE_PARAM);
+		if (size != null && !size.isEmpty()) {
+			String variantFileId = ImageThumbnailer.getInstance().resolveFileId(FilePathUtils.getPicPath(), fileId,
+					size.get(0));
+			cacheable = !variantFileId.equals(fileId);
+			fileId = variantFileId;
+		}
+		File file = FileServerUtils.getFile(FilePathUtils.getPicPath(), fileId);
+		if (file == null || !file.isFile()) {
+			sendStatus(ctx, request, HttpResponseStatus.NOT_FOUND);
+			return;
+		}
+
+		long fileLength = file.length();
+		String etag = "\"" + Long.toHexString(fileLength) + "-" + Long.toHexString(file.lastModified()) + "\"";
+		if (etag.equals(request.headers().get(HttpHeaderNames.IF_NONE_MATCH))) {
+			HttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED);
+			setCacheHeaders(response, etag, file.lastModified(), cacheable, publicFile);
+			writeResponse(ctx, request, response, null);
+			return;
+		}
+
+		long start = 0;
+		long end = fileLength - 1;
+		HttpResponseStatus status = HttpResponseStatus.OK;
+		String range = request.headers().get(HttpHeaderNames.RANGE);
+		if (range != null && fileLength > 0) {
+			long[] byteRange = parseRange(range, fileLength);
+			if (byteRange == null) {
+				FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+						HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+				response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + fileLength);
+				response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+				writeResponse(ctx, request, response, null);
+				return;
+			}
+			if (byteRange.length == 2) {
+				start = byteRange[0];
+				end = byteRange[1];
+				status = HttpResponseStatus.PARTIAL_CONTENT;
+			}
+		}
+		long length = end - start + 1;
+
+		HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+		response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_OCTET_STREAM);
+		response.headers().set(HttpHeaderNames.CONTENT_LENGTH, length);
+		response.headers().set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+		if (status == HttpResponseStatus.PARTIAL_CONTENT) {
+			response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
+		}
+		setCacheHeaders(response, etag, file.lastModified(), cacheable, publicFile);
+
+		Object content = null;
+		if (HttpMethod.GET.equals(request.method()) && length > 0) {
+			ByteBuffer cached = MediaCache.getInstance().getIfCached(fileId);
+			if (cached != null && cached.remaining() == fileLength) {
+				cached.position((int) start);
+				cached.limit((int) (start + length));
+				content = Unpooled.wrappedBuffer(cached);
+			} else {
+				MediaCache.getInstance().loadAsync(fileId, file);
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				content = new DefaultFileRegion(raf.getChannel(), start, length);
+			}
+		}
+		writeResponse(ctx, request, response, content);
+	}
+
+	/**
+	 * 解析单个Range，返回{start,end}；多个Range或格式无法识别时返回空数组（返回整个文件）；不能满足时返回null
+	 */
+	private long[] parseRange(String range, long fileLength) {
+		if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+			return new long[0];
+		}
+		String spec = range.substring("bytes=".length()).trim();
+		int index = spec.indexOf('-');
+		if (index < 0) {
+			return new long[0];
+		}
+		try {
+			String startText = spec.substring(0, index).trim();
+			String endText = spec.substring(index + 1).trim();
+			long start;
+			long end;
+			if (startText.isEmpty()) {
+				long suffix = Long.parseLong(endText);
+				if (suffix <= 0) {
+					return null;
+				}
+				start = Math.max(0, fileLength - suffix);
+				end = fileLength - 1;
+			} else {
+				start = Long.parseLong(startText);
+				end = endText.isEmpty() ? fileLength - 1 : Math.min(Long.parseLong(endText), fileLength - 1);
+			}
+			if (start >= fileLength || start > end) {
+				return null;
+			}
+			return new long[] { start, end };
+		} catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+	private boolean checkSiteSession(HttpRequest request, QueryStringDecoder decoder) {
+		String sessionId = request.headers().get(SESSION_HEADER);
+		if (StringUtils.isEmpty(sessionId)) {
+			List<String> sessionParam = decoder.parameters().get(SESSION_PARAM);
+			sessionId = sessionParam != null && !sessionParam.isEmpty() ? sessionParam.get(0) : null;
+		}
+		if (StringUtils.isEmpty(sessionId)) {
+			return false;
+		}
+		try {
+			SimpleAuthBean authBean = sessionDao.getUserSession(sessionId);
+			return authBean != null && StringUtils.isNotEmpty(authBean.getSiteUserId());
+		} catch (Exception e) {
+			logger.error("http file request check session error.", e);
+		}
+		return false;
+	}
+
+	private void setCacheHeaders(HttpResponse response, String etag, long lastModified, boolean cacheable,
+			boolean publicFile) {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+		response.headers().set(HttpHeaderNames.ETAG, etag);
+		response.headers().set(HttpHeaderNames.LAST_MODIFIED, dateFormat.format(new Date(lastModified)));
+		response.headers().set(HttpHeaderNames.CACHE_CONTROL,
+				cacheable ? (publicFile ? "public" : "private") + ", max-age=" + MAX_AGE
+						: HttpHeaderValues.NO_CACHE.toString());
+	}
+
+	private void sendStatus(ChannelHandlerContext ctx, HttpRequest request, HttpResponseStatus status) {
+		FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+		response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+		writeResponse(ctx, request, response, null);
+	}
+
+	private void writeResponse(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response,
+			Object content) {
+		boolean keepAlive = HttpUtil.isKeepAlive(request);
+		if (keepAlive) {
+			response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+		}
+		ChannelFuture future;
+		if (response instanceof FullHttpResponse) {
+			future = ctx.writeAndFlush(response);
+		} else {
+			ctx.write(response);
+			if (content != null) {
+				ctx.write(content);
+			}
+			future = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+		}
+		if (!keepAlive) {
+			future.addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+}
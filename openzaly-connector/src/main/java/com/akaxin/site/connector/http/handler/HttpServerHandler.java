@@ -75,12 +75,7 @@ public class HttpServerHandler extends ChannelInboundHandlerAdapter {
 					return;
 				}
 
-				String clientIp = request.headers().get("X-Forwarded-For");
-				if (clientIp == null) {
-					InetSocketAddress address = (InetSocketAddress) ctx.channel().remoteAddress();
-					clientIp = address.getAddress().getHostAddress();
-				}
-
+				String clientIp = getClientIp(ctx, request);
 				if (!checkLegalClientIp(clientIp)) {
 					logger.error("http request illegal request IP.");
 					ctx.close();
@@ -157,8 +152,17 @@ public class HttpServerHandler extends ChannelInboundHandlerAdapter {
 		return false;
 	}
 
-	// 预留处理请求ip过滤
-	private boolean checkLegalClientIp(String ip) {
+	static String getClientIp(ChannelHandlerContext ctx, HttpRequest request) {
+		String clientIp = request.headers().get("X-Forwarded-For");
+		if (clientIp == null) {
+			InetSocketAddress address = (InetSocketAddress) ctx.channel().remoteAddress();
+			clientIp = address.getAddress().getHostAddress();
+		}
+		return clientIp;
+	}
+
+	// 预留处理请求ip过滤，HttpFileHandler同样使用
+	static boolean checkLegalClientIp(String ip) {
 		// #TODO
 		// logger.info("do nothing to http client ip:{}", ip);
 		return true;
@@ -0,0 +1,272 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.connector.netty;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.channel.ChannelTaskSuspender;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * <pre>
+ * 业务执行阶段，位于NettyServerHandler与SimpleExecutor之间，I/O线程只负责解码，业务代码不会在I/O线程中执行
+ * 		1.同一个channel的任务按到达顺序串行执行（保证im.cts.message、im.sync.*的顺序）
+ * 		2.不同channel的任务在有界的worker线程池中并行执行
+ * 		3.单个channel积压任务超过highWaterMark时关闭autoRead，降到lowWaterMark以下时恢复；
+ * 			autoRead只在channel的I/O线程中切换，关闭后立即复查积压数，避免worker已经清空队列导致channel一直停止读取
+ * 		4.worker线程池队列已满时不在I/O线程执行，暂停该channel的读取，RETRY_DELAY_MS毫秒后重新提交
+ * 		5.任务可以通过ChannelTaskSuspender挂起队列（不占用worker线程等待），恢复时的continuation排在后续任务之前
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-13 15:20:42
+ */
+public class ChannelExecutionStage {
+	private static final Logger logger = LoggerFactory.getLogger(ChannelExecutionStage.class);
+	private static final AttributeKey<ChannelTaskQueue> TASK_QUEUE = AttributeKey.valueOf("channelTaskQueue");
+	// 每次调度最多连续执行的任务数，避免单个channel长期占用worker线程
+	private static final int MAX_TASKS_PER_RUN = 16;
+	// worker线程池已满时重新提交的间隔
+	private static final long RETRY_DELAY_MS = 10;
+
+	private final ThreadPoolExecutor workers;
+	private final int highWaterMark;
+	private final int lowWaterMark;
+
+	public ChannelExecutionStage(int threads, int queueSize, int highWaterMark) {
+		this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new PrefixThreadFactory("bim-business-worker"),
+				new ThreadPoolExecutor.AbortPolicy());
+		this.highWaterMark = highWaterMark;
+		this.lowWaterMark = highWaterMark / 2;
+	}
+
+	/**
+	 * 提交channel上的任务，需要在channel的I/O线程中调用
+	 * 
+	 * @param channel
+	 * @param task
+	 */
+	public void execute(Channel channel, Runnable task) {
+		ChannelTaskQueue taskQueue = getTaskQueue(channel);
+		taskQueue.tasks.offer(task);
+		int pending = taskQueue.pending.incrementAndGet();
+		if (pending >= highWaterMark && !taskQueue.paused) {
+			taskQueue.pauseReading();
+			logger.warn("channel overloaded, pause reading. pending={} client={}", pending, channel);
+			// worker可能在关闭autoRead之前已经把积压降到lowWaterMark以下，此时不会再有恢复的机会
+			taskQueue.resumeReading();
+		}
+		taskQueue.schedule();
+	}
+
+	public int getActiveCount() {
+		return workers.getActiveCount();
+	}
+
+	public int getQueueSize() {
+		return workers.getQueue().size();
+	}
+
+	public void shutdown() {
+		workers.shutdown();
+	}
+
+	private ChannelTaskQueue getTaskQueue(Channel channel) {
+		Attribute<ChannelTaskQueue> attr = channel.attr(TASK_QUEUE);
+		ChannelTaskQueue taskQueue = attr.get();
+		if (taskQueue == null) {
+			taskQueue = new ChannelTaskQueue(channel);
+			ChannelTaskQueue oldQueue = attr.setIfAbsent(taskQueue);
+			if (oldQueue != null) {
+				taskQueue = oldQueue;
+			} else {
+				channel.attr(ChannelTaskSuspender.KEY).set(taskQueue);
+			}
+		}
+		return taskQueue;
+	}
+
+	/**
+	 * 单个channel的串行任务队列，同一时刻最多只有一个worker线程在执行
+	 */
+	private class ChannelTaskQueue implements Runnable, ChannelTaskSuspender {
+		private final Channel channel;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private final AtomicInteger pending = new AtomicInteger();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		// 只在I/O线程中修改
+		private volatile boolean paused;
+		// worker线程池已满，等待重新提交
+		private volatile boolean retrying;
+		// 当前任务挂起了队列，恢复前不执行后续任务
+		private volatile boolean suspended;
+		// 恢复时先执行的任务
+		private volatile Runnable continuation;
+
+		ChannelTaskQueue(Channel channel) {
+			this.channel = channel;
+		}
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				submit();
+			}
+		}
+
+		private void submit() {
+			try {
+				workers.execute(this);
+				if (retrying) {
+					retrying = false;
+					runInEventLoop(new Runnable() {
+
+						@Override
+						public void run() {
+							resumeReading();
+						}
+					});
+				}
+			} catch (RejectedExecutionException e) {
+				if (workers.isShutdown() || !channel.isActive()) {
+					continuation = null;
+					tasks.clear();
+					pending.set(0);
+					scheduled.set(false);
+					return;
+				}
+				if (!retrying) {
+					retrying = true;
+					logger.warn("business workers are busy, pause reading. client={}", channel);
+				}
+				runInEventLoop(new Runnable() {
+
+					@Override
+					public void run() {
+						pauseReading();
+					}
+				});
+				channel.eventLoop().schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						submit();
+					}
+				}, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		/**
+		 * 在I/O线程中调用
+		 */
+		void pauseReading() {
+			if (!paused) {
+				paused = true;
+				channel.config().setAutoRead(false);
+			}
+		}
+
+		/**
+		 * 在I/O线程中调用，积压降到lowWaterMark以下并且没有等待重新提交时恢复读取
+		 */
+		void resumeReading() {
+			int remain = pending.get();
+			if (paused && !retrying && remain <= lowWaterMark) {
+				paused = false;
+				channel.config().setAutoRead(true);
+				logger.info("channel recovered, resume reading. pending={} client={}", remain, channel);
+			}
+		}
+
+		private void runInEventLoop(Runnable task) {
+			if (channel.eventLoop().inEventLoop()) {
+				task.run();
+			} else {
+				channel.eventLoop().execute(task);
+			}
+		}
+
+		@Override
+		public void suspend() {
+			suspended = true;
+		}
+
+		@Override
+		public void resume(Runnable task) {
+			continuation = task;
+			suspended = false;
+			schedule();
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < MAX_TASKS_PER_RUN && !suspended; i++) {
+					Runnable task = continuation;
+					if (task != null) {
+						continuation = null;
+						runTask(task);
+						continue;
+					}
+					task = tasks.poll();
+					if (task == null) {
+						break;
+					}
+					runTask(task);
+					int remain = pending.decrementAndGet();
+					// paused在关闭autoRead之前设置，这里读到false时，I/O线程关闭autoRead后的复查一定能看到本次的递减
+					if (remain <= lowWaterMark && paused) {
+						runInEventLoop(new Runnable() {
+
+							@Override
+							public void run() {
+								resumeReading();
+							}
+						});
+					}
+				}
+			} finally {
+				scheduled.set(false);
+				// resume先设置suspended=false再schedule，与这里的检查至少有一方能重新调度
+				if (!suspended && (continuation != null || !tasks.isEmpty())) {
+					schedule();
+				}
+			}
+		}
+
+		private void runTask(Runnable task) {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				logger.error("execute channel task error. client=" + channel, t);
+			}
+		}
+	}
+
+}
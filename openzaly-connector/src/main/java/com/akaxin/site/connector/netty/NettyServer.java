@@ -23,8 +23,10 @@ import org.slf4j.LoggerFactory;
 import com.akaxin.common.command.Command;
 import com.akaxin.common.executor.AbstracteExecutor;
 import com.akaxin.common.executor.SimpleExecutor;
+import com.akaxin.site.connector.codec.parser.ParserConst;
 import com.akaxin.site.connector.codec.protocol.MessageDecoder;
 import com.akaxin.site.connector.codec.protocol.MessageEncoder;
+import com.akaxin.site.connector.codec.protocol.MessageFrameDecoder;
 import com.akaxin.site.connector.netty.handler.NettyServerHandler;
 
 import io.netty.bootstrap.ServerBootstrap;
@@ -34,6 +36,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -56,6 +59,8 @@ public abstract class NettyServer {
 	private ServerBootstrap bootstrap;
 	private EventLoopGroup parentGroup;
 	private EventLoopGroup childGroup;
+	private String decoderMode = ParserConst.DECODER_REPLAY;
+	private ChannelExecutionStage executionStage;
 
 	public NettyServer() {
 		try {
@@ -85,6 +90,11 @@ public abstract class NettyServer {
 			 */
 			bootstrap.option(ChannelOption.SO_RCVBUF, 256 * 1024);
 			bootstrap.option(ChannelOption.SO_SNDBUF, 256 * 1024);// 256 KB/字节
+			/**
+			 * 出站缓冲超过高水位后channel.isWritable()返回false，消息同步等流式写出据此暂停，低于低水位后恢复
+			 */
+			bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+					new WriteBufferWaterMark(128 * 1024, 256 * 1024));
 			/**
 			 * 在4.x版本中，UnpooledByteBufAllocator是默认的allocator，尽管其存在某些限制。
 			 * 现在PooledByteBufAllocator已经广泛使用一段时间，并且我们有了增强的缓冲区泄漏追踪机制，
@@ -123,6 +133,41 @@ public abstract class NettyServer {
 		}
 	}
 
+	/**
+	 * 设置解码器模式，需要在start之前调用
+	 * 
+	 * @param decoderMode
+	 *            replay:ReplayingDecoder实现 frame:增量解码实现
+	 */
+	public void setDecoderMode(String decoderMode) {
+		if (ParserConst.DECODER_FRAME.equalsIgnoreCase(decoderMode)) {
+			this.decoderMode = ParserConst.DECODER_FRAME;
+		} else {
+			this.decoderMode = ParserConst.DECODER_REPLAY;
+		}
+		logger.info("netty server use decoder mode={}", this.decoderMode);
+	}
+
+	/**
+	 * 设置业务执行阶段，需要在start之前调用；workerThreads小于等于0时业务逻辑在I/O线程中执行
+	 * 
+	 * @param workerThreads
+	 *            业务线程数
+	 * @param queueSize
+	 *            业务线程池队列大小
+	 * @param channelPending
+	 *            单个channel允许积压的请求数，超过后暂停读取
+	 */
+	public void setExecutionStage(int workerThreads, int queueSize, int channelPending) {
+		if (workerThreads > 0) {
+			this.executionStage = new ChannelExecutionStage(workerThreads, queueSize, channelPending);
+		} else {
+			this.executionStage = null;
+		}
+		logger.info("netty server use worker threads={} queueSize={} channelPending={}", workerThreads, queueSize,
+				channelPending);
+	}
+
 	public void start(String address, int port) {
 		try {
 			if (bootstrap != null) {
@@ -148,7 +193,11 @@ public abstract class NettyServer {
 			// SSLEngine sslEngine =
 			// NettySocketSslContext.getInstance().getServerContext().createSSLEngine();
 
-			channel.pipeline().addLast(new MessageDecoder());
+			if (ParserConst.DECODER_FRAME.equals(decoderMode)) {
+				channel.pipeline().addLast(new MessageFrameDecoder());
+			} else {
+				channel.pipeline().addLast(new MessageDecoder());
+			}
 			channel.pipeline().addLast(new MessageEncoder());
 			channel.pipeline().addLast("timeout", new IdleStateHandler(60, 60, 60, TimeUnit.SECONDS));
 			
@@ -156,7 +205,7 @@ public abstract class NettyServer {
 
 			channel.pipeline().addLast("readTimeoutHandler", new ReadTimeoutHandler(20, TimeUnit.SECONDS));
 			channel.pipeline().addLast("writeTimeoutHandler", new WriteTimeoutHandler(20, TimeUnit.SECONDS));
-			channel.pipeline().addLast(new NettyServerHandler(executor));
+			channel.pipeline().addLast(new NettyServerHandler(executor, executionStage));
 		}
 
 	}
@@ -175,6 +224,9 @@ public abstract class NettyServer {
 				// wait for all threads terminated
 				childGroup.terminationFuture().sync();
 			}
+			if (executionStage != null) {
+				executionStage.shutdown();
+			}
 		} catch (Exception es) {
 			logger.error("shutdown netty gracefully error.", es);
 		}
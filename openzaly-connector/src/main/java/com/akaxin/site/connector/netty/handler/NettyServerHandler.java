@@ -33,8 +33,11 @@ import com.akaxin.common.logs.LogUtils;
 import com.akaxin.common.utils.GsonUtils;
 import com.akaxin.proto.core.CoreProto;
 import com.akaxin.site.connector.codec.parser.ParserConst;
+import com.akaxin.site.connector.netty.ChannelExecutionStage;
 import com.akaxin.site.connector.session.SessionManager;
+import com.google.protobuf.CodedInputStream;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 
@@ -47,9 +50,20 @@ import io.netty.channel.SimpleChannelInboundHandler;
 public class NettyServerHandler extends SimpleChannelInboundHandler<RedisCommand> {
 	private static final Logger logger = LoggerFactory.getLogger(NettyServerHandler.class);
 	private AbstracteExecutor<Command> executor;
+	private ChannelExecutionStage executionStage;
 
 	public NettyServerHandler(AbstracteExecutor<Command> executor) {
+		this(executor, null);
+	}
+
+	/**
+	 * @param executor
+	 * @param executionStage
+	 *            为null时业务逻辑直接在I/O线程中执行
+	 */
+	public NettyServerHandler(AbstracteExecutor<Command> executor, ChannelExecutionStage executionStage) {
 		this.executor = executor;
+		this.executionStage = executionStage;
 	}
 
 	@Override
@@ -64,7 +78,7 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<RedisCommand
 
 		ChannelSession channelSession = ctx.channel().attr(ParserConst.CHANNELSESSION).get();
 		if (channelSession.getCtype() == 1 && StringUtils.isNotEmpty(channelSession.getUserId())) {
-			ChannelManager.delChannelSession(channelSession.getDeviceId());
+			ChannelManager.delUserChannelSession(channelSession);
 			String siteUserId = channelSession.getUserId();
 			String deviceId = channelSession.getDeviceId();
 			boolean offResult = SessionManager.getInstance().setUserOffline(siteUserId, deviceId);
@@ -77,10 +91,20 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<RedisCommand
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, RedisCommand redisCmd) throws Exception {
 		ChannelSession channelSession = ctx.channel().attr(ParserConst.CHANNELSESSION).get();
-		String version = redisCmd.getParameterByIndex(0);
-		String action = redisCmd.getParameterByIndex(1);
-		byte[] params = redisCmd.getBytesParamByIndex(2);
-		CoreProto.TransportPackageData packageData = CoreProto.TransportPackageData.parseFrom(params);
+		String version;
+		String action;
+		int paramsLength;
+		CoreProto.TransportPackageData packageData;
+		try {
+			version = redisCmd.getParameterByIndex(0);
+			action = redisCmd.getParameterByIndex(1);
+			ByteBuf params = redisCmd.getByteBufParamByIndex(2);
+			paramsLength = params.readableBytes();
+			packageData = CoreProto.TransportPackageData.parseFrom(CodedInputStream.newInstance(params.nioBuffer()));
+		} finally {
+			// 解析完成后释放解码器输出的缓冲区
+			redisCmd.release();
+		}
 
 		Command command = new Command();
 		command.setSiteUserId(channelSession.getUserId());
@@ -91,7 +115,7 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<RedisCommand
 		command.setChannelSession(channelSession);
 
 		if (!RequestAction.IM_CTS_PING.getName().equalsIgnoreCase(command.getAction())) {
-			LogUtils.printNetLog(logger, "c->s", version, action, "", "", params.length);
+			LogUtils.printNetLog(logger, "c->s", version, action, "", "", paramsLength);
 		}
 
 		if (RequestAction.IM.getName().equals(command.getRety())) {
@@ -119,15 +143,32 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<RedisCommand
 				}
 				return;
 			}
-			this.executor.execute(command.getRety(), command);
+			execute(ctx, command);
 		} else if (RequestAction.API.getName().equalsIgnoreCase(command.getRety())) {
-			this.executor.execute(command.getRety(), command);
+			execute(ctx, command);
 		} else {
 			logger.warn("unknow request command={}", command.toString());
 			return;
 		}
 	}
 
+	/**
+	 * 交给业务执行阶段处理，同一个channel上的请求保持顺序
+	 */
+	private void execute(ChannelHandlerContext ctx, final Command command) {
+		if (executionStage == null) {
+			this.executor.execute(command.getRety(), command);
+			return;
+		}
+		executionStage.execute(ctx.channel(), new Runnable() {
+
+			@Override
+			public void run() {
+				executor.execute(command.getRety(), command);
+			}
+		});
+	}
+
 	/**
 	 * 比较严格的处理方式，channel处理异常，直接关闭链接，客户端此时需要重新连接到服务端
 	 */
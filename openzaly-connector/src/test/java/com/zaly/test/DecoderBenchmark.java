@@ -0,0 +1,92 @@
+package com.zaly.test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import com.akaxin.common.command.RedisCommand;
+import com.akaxin.site.connector.codec.protocol.MessageDecoder;
+import com.akaxin.site.connector.codec.protocol.MessageFrameDecoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+/**
+ * 对比MessageDecoder(ReplayingDecoder)与MessageFrameDecoder的解码耗时与内存分配
+ * 
+ * <pre>
+ * fragmented: 每个包按16字节拆分写入，模拟慢速移动网络
+ * coalesced : 64个包合并为一次写入
+ * </pre>
+ */
+public class DecoderBenchmark {
+	private static final int ROUNDS = 20000;
+	private static final int FRAGMENT_SIZE = 16;
+	private static final int COALESCED_FRAMES = 64;
+
+	public static void main(String[] args) {
+		byte[] frame = buildFrame(1024);
+
+		for (int i = 0; i < 2; i++) {
+			boolean print = i == 1;// 第一轮预热
+			run("replay  fragmented", new MessageDecoder(), frame, false, print);
+			run("frame   fragmented", new MessageFrameDecoder(), frame, false, print);
+			run("replay  coalesced ", new MessageDecoder(), frame, true, print);
+			run("frame   coalesced ", new MessageFrameDecoder(), frame, true, print);
+		}
+	}
+
+	private static void run(String name, ChannelHandler decoder, byte[] frame, boolean coalesced, boolean print) {
+		EmbeddedChannel channel = new EmbeddedChannel(decoder);
+		long frames = 0;
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			if (coalesced) {
+				ByteBuf buf = PooledByteBufAllocator.DEFAULT.buffer(frame.length * COALESCED_FRAMES);
+				for (int i = 0; i < COALESCED_FRAMES; i++) {
+					buf.writeBytes(frame);
+				}
+				channel.writeInbound(buf);
+			} else {
+				for (int offset = 0; offset < frame.length; offset += FRAGMENT_SIZE) {
+					int length = Math.min(FRAGMENT_SIZE, frame.length - offset);
+					ByteBuf buf = PooledByteBufAllocator.DEFAULT.buffer(length);
+					buf.writeBytes(frame, offset, length);
+					channel.writeInbound(buf);
+				}
+			}
+			RedisCommand command;
+			while ((command = channel.readInbound()) != null) {
+				command.getByteBufParamByIndex(2);
+				command.release();
+				frames++;
+			}
+		}
+		long costNanos = System.nanoTime() - startTime;
+		long costBytes = allocatedBytes() - startBytes;
+		channel.finish();
+		if (print) {
+			System.out.println(name + " frames=" + frames + " ns/frame=" + (costNanos / frames) + " bytes/frame="
+					+ (costBytes / frames));
+		}
+	}
+
+	private static byte[] buildFrame(int bodySize) {
+		RedisCommand command = new RedisCommand().add("1.0").add("im.cts.message").add(new byte[bodySize]);
+		ByteBuffer buffer = ByteBuffer.allocate(command.getByteSize());
+		command.encode(buffer);
+		byte[] frame = new byte[buffer.position()];
+		System.arraycopy(buffer.array(), 0, frame, 0, frame.length);
+		return frame;
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,79 @@
+package com.zaly.test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import com.akaxin.common.command.RedisCommand;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * <pre>
+ * 对比RedisCommand的三种编码方式
+ * 		legacy   : ByteBuffer.allocate -> encode -> array() -> out.writeBytes（原MessageEncoder）
+ * 		direct   : encode(ByteBuf)直接写入池化缓冲区
+ * 		composite: encode(allocator, threshold)，大参数包装为CompositeByteBuf
+ * bytes copied为编码阶段复制的字节数，按实现计算
+ * </pre>
+ */
+public class EncoderBenchmark {
+	private static final int WRAP_THRESHOLD = 16 * 1024;
+	private static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
+
+	public static void main(String[] args) {
+		int[] bodySizes = { 256, 64 * 1024, 4 * 1024 * 1024 };
+		for (int i = 0; i < 2; i++) {
+			boolean print = i == 1;// 第一轮预热
+			for (int bodySize : bodySizes) {
+				RedisCommand command = new RedisCommand().add("1.0").add("im.stc.message").add(new byte[bodySize]);
+				int rounds = Math.max(50, 64 * 1024 * 1024 / command.getByteSize());
+				run("legacy    body=" + bodySize, command, rounds, 0, print);
+				run("direct    body=" + bodySize, command, rounds, 1, print);
+				run("composite body=" + bodySize, command, rounds, 2, print);
+			}
+		}
+	}
+
+	private static void run(String name, RedisCommand command, int rounds, int mode, boolean print) {
+		long copied = 0;
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			ByteBuf out;
+			if (mode == 0) {
+				int byteSize = command.getByteSize();
+				ByteBuffer byteBuffer = ByteBuffer.allocate(byteSize);
+				command.encode(byteBuffer);
+				byte[] bytes = byteBuffer.array();
+				out = ALLOCATOR.ioBuffer(bytes.length);
+				out.writeBytes(bytes);
+				copied += byteBuffer.position() + bytes.length;
+			} else if (mode == 1) {
+				out = ALLOCATOR.ioBuffer(command.getByteSize());
+				command.encode(out);
+				copied += out.readableBytes();
+			} else {
+				out = command.encode(ALLOCATOR, WRAP_THRESHOLD);
+				int payload = command.getBytesParamByIndex(2).length;
+				copied += out.readableBytes() - (payload >= WRAP_THRESHOLD ? payload : 0);
+			}
+			out.release();
+		}
+		long costNanos = System.nanoTime() - startTime;
+		long costBytes = allocatedBytes() - startBytes;
+		if (print) {
+			System.out.println(name + " ns/msg=" + (costNanos / rounds) + " heapBytes/msg=" + (costBytes / rounds)
+					+ " bytesCopied/msg=" + (copied / rounds));
+		}
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
@@ -40,9 +40,7 @@ public class ImUserFriendDao {
 
 	public boolean isFriend(String siteUserId, String siteFriendId) {
 		try {
-			int userRel = userFriendDao.queryRelation(siteUserId, siteFriendId);
-			int friendRel = userFriendDao.queryRelation(siteFriendId, siteUserId);
-			return userRel == 1 && friendRel == 1;
+			return userFriendDao.isFriend(siteUserId, siteFriendId);
 		} catch (SQLException e) {
 			logger.error("query friend relation error.", e);
 		}
@@ -17,12 +17,10 @@ package com.akaxin.site.message.dao;
 
 import java.sql.SQLException;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.akaxin.site.storage.api.IGroupDao;
-import com.akaxin.site.storage.bean.GroupMemberBean;
 import com.akaxin.site.storage.bean.GroupProfileBean;
 import com.akaxin.site.storage.service.GroupDaoService;
 
@@ -44,10 +42,7 @@ public class ImUserGroupDao {
 
 	public boolean isGroupMember(String siteUserId, String groupId) {
 		try {
-			GroupMemberBean bean = groupDao.getGroupMember(siteUserId, groupId);
-			if (bean != null && StringUtils.isNotEmpty(bean.getUserId())) {
-				return true;
-			}
+			return groupDao.isGroupMember(siteUserId, groupId);
 		} catch (SQLException e) {
 			logger.error("is group member error.", e);
 		}
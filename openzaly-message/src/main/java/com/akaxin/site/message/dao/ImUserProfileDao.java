@@ -56,6 +56,18 @@ public class ImUserProfileDao {
 		return null;
 	}
 
+	/**
+	 * 用户不存在或查询失败返回-1
+	 */
+	public int getUserStatus(String siteUserId) {
+		try {
+			return userProfileDao.getUserStatus(siteUserId);
+		} catch (SQLException e) {
+			logger.error("get user status error", e);
+		}
+		return -1;
+	}
+
 	public String getUserToken(String siteUserId) {
 		try {
 			return deviceProfileDao.getUserToken(siteUserId);
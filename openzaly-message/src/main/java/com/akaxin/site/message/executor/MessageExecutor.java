@@ -15,11 +15,21 @@
  */
 package com.akaxin.site.message.executor;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
 import com.akaxin.common.chain.AbstractHandlerChain;
 import com.akaxin.common.chain.SimpleHandlerChain;
 import com.akaxin.common.command.Command;
 import com.akaxin.common.executor.AbstracteExecutor;
 import com.akaxin.common.executor.SimpleExecutor;
+import com.akaxin.common.executor.StripedExecutor;
+import com.akaxin.common.executor.StripedExecutor.StripeStats;
+import com.akaxin.common.logs.LogCreater;
+import com.akaxin.common.logs.LogUtils;
 import com.akaxin.site.message.group.handler.GroupDetectionHandler;
 import com.akaxin.site.message.group.handler.GroupMessageImageHandler;
 import com.akaxin.site.message.group.handler.GroupMessageTextHandler;
@@ -41,8 +51,22 @@ import com.akaxin.site.message.user2.handler.UserDetectionHandler;
 import com.akaxin.site.message.user2.handler.UserPsnHandler;
 import com.akaxin.site.message.user2.handler.UserPushHandler;
 
+/**
+ * <pre>
+ * 消息处理执行器
+ * 		1.im.cts.message.u2按发送者siteUserId分段，im.cts.message.group按siteGroupId分段
+ * 		2.同一个key的消息在同一个stripe上串行执行，不同key并行
+ * 		3.每分钟输出一次stripe统计信息
+ * </pre>
+ */
 public class MessageExecutor {
+	private static final Logger statsLogger = LogCreater.createTimeLogger("messageStripe");
+	private static final int STRIPE_COUNT = getStripeCount();
+	private static final int STRIPE_QUEUE_SIZE = Integer.getInteger("site.message.stripe.queue", 1000);
+
 	private static AbstracteExecutor<Command> executor = new SimpleExecutor<Command>();
+	private static StripedExecutor stripedExecutor = new StripedExecutor("im-message", STRIPE_COUNT,
+			STRIPE_QUEUE_SIZE);
 
 	static {
 		AbstractHandlerChain<Command> u2MessageChain = new SimpleHandlerChain<Command>();
@@ -74,10 +98,59 @@ public class MessageExecutor {
 		executor.addChain("im.cts.message.group", groupMessageChain);
 		executor.addChain("im.sync.message", syncMessageChain);
 		executor.addChain("im.sync.finish", new SyncFinishHandler());
+
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "message-stripe-stats");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}).scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				for (StripeStats stats : stripedExecutor.getStats()) {
+					LogUtils.info(statsLogger, "message stripe {}", stats);
+				}
+			}
+
+		}, 60, 60, TimeUnit.SECONDS);
 	}
 
 	public static AbstracteExecutor<Command> getExecutor() {
 		return executor;
 	}
 
+	/**
+	 * 在stripeKey对应的stripe上异步执行消息链，相同stripeKey的消息保持顺序
+	 * 
+	 * @param chainName
+	 * @param stripeKey
+	 *            u2消息使用siteUserId，群消息使用siteGroupId
+	 * @param command
+	 */
+	public static void execute(final String chainName, String stripeKey, final Command command) {
+		stripedExecutor.execute(stripeKey, new Runnable() {
+
+			@Override
+			public void run() {
+				executor.execute(chainName, command);
+			}
+		});
+	}
+
+	public static StripedExecutor getStripedExecutor() {
+		return stripedExecutor;
+	}
+
+	/**
+	 * site.message.stripes未设置或者为0时，使用cpu核数*2
+	 */
+	private static int getStripeCount() {
+		int stripeCount = Integer.getInteger("site.message.stripes", 0);
+		return stripeCount > 0 ? stripeCount : Runtime.getRuntime().availableProcessors() * 2;
+	}
+
 }
\ No newline at end of file
@@ -61,9 +61,12 @@ public class GroupMessageTextHandler extends AbstractGroupHandler<Command> {
 
 				logger.info("Group Message Text bean={}", gmsgBean.toString());
 
-				messageDao.saveGroupMessage(gmsgBean);
-				msgResponse(channelSession.getChannel(), command, siteUserId, groupId, gmsgId);
-
+				// 保存返回时消息所在的事务已经提交（pool模式默认synchronous=full，已fsync），再回执MSG_STATUS
+				boolean saveRes = messageDao.saveGroupMessage(gmsgBean);
+				if (saveRes) {
+					msgResponse(channelSession.getChannel(), command, siteUserId, groupId, gmsgId);
+				}
+				return saveRes;
 			}
 			return true;
 		} catch (Exception e) {
@@ -22,13 +22,14 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.akaxin.common.channel.ChannelManager;
+import com.akaxin.common.channel.ChannelSession;
 import com.akaxin.common.channel.ChannelWriter;
 import com.akaxin.common.command.Command;
 import com.akaxin.common.command.CommandResponse;
 import com.akaxin.common.constant.CommandConst;
 import com.akaxin.common.constant.ErrorCode;
 import com.akaxin.proto.client.ImStcPsnProto;
-import com.akaxin.site.message.dao.ImUserSessionDao;
 import com.akaxin.site.storage.api.IGroupDao;
 import com.akaxin.site.storage.service.GroupDaoService;
 
@@ -44,30 +45,30 @@ public class GroupPsnHandler extends AbstractGroupHandler<Command> {
 
 		try {
 			List<String> groupMembers = groupDao.getGroupMembersId(siteGroupId);
+			// 只给在线的群成员发送psn，在线设备从在线索引获取
 			for (String userId : groupMembers) {
-				List<String> deivceIds = ImUserSessionDao.getInstance().getSessionDevices(userId);
-				for (String deviceId : deivceIds) {
+				for (ChannelSession channelSession : ChannelManager.getUserChannelSessions(userId)) {
+					String deviceId = channelSession.getDeviceId();
 					if (StringUtils.isNotEmpty(deviceId) && !deviceId.equals(siteDeviceId)) {
-						writePSN(deviceId);
-						logger.info("psn to group={} user={} deviceId={}", siteGroupId, siteUserId, deviceId);
+						writePSN(channelSession);
+						logger.info("psn to group={} user={} deviceId={}", siteGroupId, userId, deviceId);
 					}
 				}
-
 			}
 		} catch (SQLException e) {
 			logger.error("send group psn error.", e);
 		}
 
-		return false;
+		return true;
 	}
 
-	private void writePSN(String deviceId) {
+	private void writePSN(ChannelSession channelSession) {
 		CommandResponse commandResponse = new CommandResponse().setVersion(CommandConst.PROTOCOL_VERSION)
 				.setAction(CommandConst.IM_STC_PSN);
 		ImStcPsnProto.ImStcPsnRequest pshRequest = ImStcPsnProto.ImStcPsnRequest.newBuilder().build();
 		commandResponse.setParams(pshRequest.toByteArray());
 		commandResponse.setErrCode(ErrorCode.SUCCESS);
-		ChannelWriter.writeByDeviceId(deviceId, commandResponse);
+		ChannelWriter.write(channelSession.getChannel(), commandResponse);
 	}
 
 }
@@ -15,13 +15,20 @@
  */
 package com.akaxin.site.message.group.handler;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.akaxin.common.channel.ChannelManager;
 import com.akaxin.common.command.Command;
+import com.akaxin.proto.site.ImCtsMessageProto;
+import com.akaxin.site.message.push.PushAggregator;
 import com.akaxin.site.storage.api.IGroupDao;
 import com.akaxin.site.storage.service.GroupDaoService;
 
+/**
+ * 群消息push：登记除发送者外所有不在线的群成员，由PushAggregator合并后批量发送
+ */
 public class GroupPushHandler extends AbstractGroupHandler<Command> {
 	private static final Logger logger = LoggerFactory.getLogger(GroupPushHandler.class);
 	private IGroupDao groupDao = new GroupDaoService();
@@ -29,46 +36,21 @@ public class GroupPushHandler extends AbstractGroupHandler<Command> {
 	public boolean handle(Command command) {
 		logger.info("---------group message push---------");
 		try {
-//			ImCtsMessageProto.ImCtsMessageRequest request = ImCtsMessageProto.ImCtsMessageRequest
-//					.parseFrom(command.getParams());
-//			String siteUserId = command.getSiteUserId();
-//			String siteGroupId = command.getSiteGroupId();
-//
-//			logger.info("command={}", command.toString());
-//
-//			List<String> groupMembers = groupDao.getGroupMembersId(siteGroupId);
-//			for (String memberUserId : groupMembers) {
-//				logger.info("push to siteUserId={}.", memberUserId);
-//				if (StringUtils.isNotBlank(memberUserId) && !memberUserId.equals(siteUserId)) {
-//
-//					ApiPushNotificationProto.ApiPushNotificationRequest.Builder requestBuilder = ApiPushNotificationProto.ApiPushNotificationRequest
-//							.newBuilder();
-//					requestBuilder.setPushType(request.getType());
-//					PushProto.Notification.Builder notification = PushProto.Notification.newBuilder();
-//
-//					notification.setUserId(memberUserId);
-//					notification.setPushBadge(1);
-//					String siteName = SiteHelper.getConfig(ConfigProto.ConfigKey.SITE_NAME);
-//					if (StringUtils.isNotBlank(siteName)) {
-//						notification.setPushTitle(siteName);
-//					}
-//					String address = SiteHelper.getConfig(ConfigProto.ConfigKey.SITE_ADDRESS);
-//					String port = SiteHelper.getConfig(ConfigProto.ConfigKey.SITE_PORT);
-//					notification.setSiteServer(address + ":" + port);
-//
-//					String userToken = ImUserProfileDao.getInstance().getUserToken(memberUserId);
-//					if (StringUtils.isNotBlank(userToken)) {
-//						notification.setUserToken(userToken);
-//						requestBuilder.setNotification(notification.build());
-//						logger.info("Akaxin Push: {}", requestBuilder.toString());
-//
-//						WritePackage.getInstance().asyncWrite(CommandConst.API_PUSH_NOTIFICATION,
-//								requestBuilder.build().toByteArray());
-//					}
-//
-//				}
-//			}
+			ImCtsMessageProto.ImCtsMessageRequest request = ImCtsMessageProto.ImCtsMessageRequest
+					.parseFrom(command.getParams());
+			String siteUserId = command.getSiteUserId();
+			String siteGroupId = command.getSiteGroupId();
 
+			int pushCount = 0;
+			for (String memberUserId : groupDao.getGroupMembersId(siteGroupId)) {
+				if (StringUtils.isNotBlank(memberUserId) && !memberUserId.equals(siteUserId)
+						&& !ChannelManager.isUserOnline(memberUserId)) {
+					PushAggregator.getInstance().addPush(memberUserId, request.getType());
+					pushCount++;
+				}
+			}
+			logger.info("group push siteGroupId={} offline members={}", siteGroupId, pushCount);
+			return true;
 		} catch (Exception e) {
 			logger.error("group push error.", e);
 		}
@@ -0,0 +1,191 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.message.push;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.constant.CommandConst;
+import com.akaxin.proto.core.CoreProto;
+import com.akaxin.proto.core.PushProto;
+import com.akaxin.proto.platform.ApiPushNotificationProto;
+import com.akaxin.site.message.dao.ImUserProfileDao;
+import com.akaxin.site.message.threads.MultiPushThreadExecutor;
+import com.akaxin.site.message.utils.SiteConfigHelper;
+import com.akaxin.site.message.utils.SiteConfigSnapshot;
+
+/**
+ * <pre>
+ * push聚合发送
+ * 		1.消息只登记接收者，每site.push.window毫秒统一发送一次
+ * 		2.同一窗口内发给同一用户的多条消息合并为一条push，badge为合并的消息数
+ * 		3.每site.push.batch.size条push作为一批，在MultiPushThreadExecutor中查询token并批量写给平台
+ * 		4.等待push的用户数超过site.push.max.pending.users时丢弃新的push
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-20 10:42:18
+ */
+public class PushAggregator {
+	private static final Logger logger = LoggerFactory.getLogger(PushAggregator.class);
+	private static final long PUSH_WINDOW = Long.getLong("site.push.window", 500);
+	private static final int PUSH_BATCH_SIZE = Integer.getInteger("site.push.batch.size", 200);
+	private static final int MAX_PENDING_USERS = Integer.getInteger("site.push.max.pending.users", 100000);
+	private static PushAggregator instance = new PushAggregator();
+
+	private final ConcurrentHashMap<String, PendingPush> pendingPushes = new ConcurrentHashMap<String, PendingPush>();
+	private final AtomicLong droppedPushes = new AtomicLong();
+
+	private PushAggregator() {
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "message-push-aggregator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}).scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (Exception e) {
+					logger.error("flush push error.", e);
+				}
+			}
+
+		}, PUSH_WINDOW, PUSH_WINDOW, TimeUnit.MILLISECONDS);
+	}
+
+	public static PushAggregator getInstance() {
+		return instance;
+	}
+
+	private static class PendingPush {
+		private int count;
+		private CoreProto.MsgType pushType;
+	}
+
+	/**
+	 * 登记一条发给siteUserId的push，在下一个窗口合并发送
+	 */
+	public void addPush(String siteUserId, final CoreProto.MsgType pushType) {
+		if (StringUtils.isEmpty(siteUserId)) {
+			return;
+		}
+		if (pendingPushes.size() >= MAX_PENDING_USERS && !pendingPushes.containsKey(siteUserId)) {
+			droppedPushes.incrementAndGet();
+			logger.warn("too many pending push users, drop push to siteUserId={}", siteUserId);
+			return;
+		}
+		// compute与flush中的remove对同一个key互斥，合并过程中不会丢失计数
+		pendingPushes.compute(siteUserId, new BiFunction<String, PendingPush, PendingPush>() {
+
+			@Override
+			public PendingPush apply(String key, PendingPush pending) {
+				if (pending == null) {
+					pending = new PendingPush();
+				}
+				pending.count++;
+				pending.pushType = pushType;
+				return pending;
+			}
+		});
+	}
+
+	public long getDroppedPushes() {
+		return droppedPushes.get();
+	}
+
+	private void flush() {
+		if (pendingPushes.isEmpty()) {
+			return;
+		}
+		List<String> userIds = new ArrayList<String>(PUSH_BATCH_SIZE);
+		List<PendingPush> pushes = new ArrayList<PendingPush>(PUSH_BATCH_SIZE);
+		for (String siteUserId : pendingPushes.keySet()) {
+			PendingPush pending = pendingPushes.remove(siteUserId);
+			if (pending == null) {
+				continue;
+			}
+			userIds.add(siteUserId);
+			pushes.add(pending);
+			if (userIds.size() >= PUSH_BATCH_SIZE) {
+				submitBatch(userIds, pushes);
+				userIds = new ArrayList<String>(PUSH_BATCH_SIZE);
+				pushes = new ArrayList<PendingPush>(PUSH_BATCH_SIZE);
+			}
+		}
+		if (!userIds.isEmpty()) {
+			submitBatch(userIds, pushes);
+		}
+	}
+
+	private void submitBatch(final List<String> userIds, final List<PendingPush> pushes) {
+		MultiPushThreadExecutor.getExecutor().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				sendBatch(userIds, pushes);
+			}
+		});
+	}
+
+	private void sendBatch(List<String> userIds, List<PendingPush> pushes) {
+		SiteConfigSnapshot siteConfig = SiteConfigHelper.getSnapshot();
+		List<byte[]> requests = new ArrayList<byte[]>(userIds.size());
+		for (int i = 0; i < userIds.size(); i++) {
+			String siteUserId = userIds.get(i);
+			PendingPush pending = pushes.get(i);
+
+			String userToken = ImUserProfileDao.getInstance().getUserToken(siteUserId);
+			if (StringUtils.isBlank(userToken)) {
+				logger.warn("Akaxin Push error,siteUserId={} usertoken={}", siteUserId, userToken);
+				continue;
+			}
+			String globalUserId = ImUserProfileDao.getInstance().getGlobalUserId(siteUserId);
+
+			PushProto.Notification.Builder notification = PushProto.Notification.newBuilder();
+			notification.setUserId(globalUserId);
+			notification.setUserToken(userToken);
+			notification.setPushBadge(pending.count);
+			if (StringUtils.isNotBlank(siteConfig.getSiteName())) {
+				notification.setPushTitle(siteConfig.getSiteName());
+			}
+			notification.setSiteServer(siteConfig.getSiteServer());
+
+			ApiPushNotificationProto.ApiPushNotificationRequest request = ApiPushNotificationProto.ApiPushNotificationRequest
+					.newBuilder().setPushType(pending.pushType).setNotification(notification.build()).build();
+			requests.add(request.toByteArray());
+		}
+		if (!requests.isEmpty()) {
+			logger.info("Akaxin Push: batch size={} users={}", requests.size(), userIds.size());
+			WritePackage.getInstance().asyncWrite(CommandConst.API_PUSH_NOTIFICATION, requests);
+		}
+	}
+}
@@ -15,8 +15,8 @@
  */
 package com.akaxin.site.message.push;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -25,16 +25,45 @@ import org.slf4j.LoggerFactory;
 import com.akaxin.common.command.RedisCommand;
 import com.akaxin.common.constant.CommandConst;
 import com.akaxin.common.netty.IRedisCommandResponse;
-import com.akaxin.common.netty.NettyClient2;
+import com.akaxin.common.netty.NettyClientPool;
 import com.akaxin.proto.core.CoreProto;
 import com.google.protobuf.ByteString;
 
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
 
+/**
+ * <pre>
+ * 与平台（push.akaxin.com）通信，复用NettyClientPool中的长连接
+ * 		site.push.address / site.push.port：平台地址
+ * 		site.push.connections：连接数
+ * 		site.push.max.pending：每个连接最多排队+在途的请求数
+ * 		site.push.timeout：请求超时（毫秒）
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-01-27 20:31:12
+ */
 public class WritePackage {
 	private static final Logger logger = LoggerFactory.getLogger(WritePackage.class);
-	private final String AKAXIN_PUSH_ADDRESS = "push.akaxin.com";
-	private final int AKAXIN_PUSH_PORT = 8000;
+	private static final String AKAXIN_PUSH_ADDRESS = System.getProperty("site.push.address", "push.akaxin.com");
+	private static final int AKAXIN_PUSH_PORT = Integer.getInteger("site.push.port", 8000);
+	private static final long PUSH_TIMEOUT = Long.getLong("site.push.timeout", 5000);
+	private static final GenericFutureListener<Future<IRedisCommandResponse>> RESPONSE_LOGGER = new GenericFutureListener<Future<IRedisCommandResponse>>() {
+
+		@Override
+		public void operationComplete(Future<IRedisCommandResponse> future) throws Exception {
+			if (future.isSuccess()) {
+				logger.info("write push to platform finish response={}", future.getNow());
+			} else {
+				logger.error("async send package to platform error", future.cause());
+			}
+		}
+	};
+
+	private final NettyClientPool platformClient = new NettyClientPool("platformClient", AKAXIN_PUSH_ADDRESS,
+			AKAXIN_PUSH_PORT, Integer.getInteger("site.push.connections", 2),
+			Integer.getInteger("site.push.max.pending", 1024), PUSH_TIMEOUT);
 
 	private WritePackage() {
 	}
@@ -49,17 +78,8 @@ public class WritePackage {
 
 	public byte[] syncWrite(String action, byte[] byteData) {
 		try {
-			CoreProto.TransportPackageData.Builder packageDataBuilder = CoreProto.TransportPackageData.newBuilder();
-			Map<Integer, String> header = new HashMap<Integer, String>();
-			header.put(CoreProto.HeaderKey.SITE_SERVER_VERSION_VALUE, CommandConst.SITE_VERSION);
-			packageDataBuilder.putAllHeader(header);
-			packageDataBuilder.setData(ByteString.copyFrom(byteData));
-			NettyClient2 nettyClient = new NettyClient2();
-			nettyClient.connect(AKAXIN_PUSH_ADDRESS, AKAXIN_PUSH_PORT);
-			Future<IRedisCommandResponse> future = nettyClient.sendRedisCommand(new RedisCommand()
-					.add(CommandConst.PROTOCOL_VERSION).add(action).add(packageDataBuilder.build().toByteArray()));
-			IRedisCommandResponse response = future.get(5, TimeUnit.SECONDS);
-			nettyClient.disconnect();
+			Future<IRedisCommandResponse> future = platformClient.send(buildCommand(action, byteData));
+			IRedisCommandResponse response = future.get(PUSH_TIMEOUT, TimeUnit.MILLISECONDS);
 			if (response != null && response.isSuccess()) {
 				return getPackageBytes(response.getRedisCommand());
 			}
@@ -70,23 +90,39 @@ public class WritePackage {
 		return null;
 	}
 
-	public void asyncWrite(String action, byte[] byteData) {
-		try {
-			CoreProto.TransportPackageData.Builder packageDataBuilder = CoreProto.TransportPackageData.newBuilder();
-			Map<Integer, String> header = new HashMap<Integer, String>();
-			header.put(CoreProto.HeaderKey.SITE_SERVER_VERSION_VALUE, CommandConst.SITE_VERSION);
-			packageDataBuilder.putAllHeader(header);
-			packageDataBuilder.setData(ByteString.copyFrom(byteData));
-			NettyClient2 nettyClient = new NettyClient2();
-			nettyClient.connect(AKAXIN_PUSH_ADDRESS, AKAXIN_PUSH_PORT);
-			Future<IRedisCommandResponse> future = nettyClient.sendRedisCommand(new RedisCommand()
-					.add(CommandConst.PROTOCOL_VERSION).add(action).add(packageDataBuilder.build().toByteArray()));
-			IRedisCommandResponse response = future.get(5, TimeUnit.SECONDS);
-			logger.info("write push to platform finish response={}", response);
-			nettyClient.disconnect();
-		} catch (Exception e) {
-			logger.error("async send package to platform error", e);
+	/**
+	 * 发送后立即返回，结果在连接的eventLoop中回调记录
+	 */
+	public Future<IRedisCommandResponse> asyncWrite(String action, byte[] byteData) {
+		Future<IRedisCommandResponse> future = platformClient.send(buildCommand(action, byteData));
+		future.addListener(RESPONSE_LOGGER);
+		return future;
+	}
+
+	/**
+	 * 批量异步发送，同一批请求写入同一个连接后统一flush
+	 */
+	public List<Future<IRedisCommandResponse>> asyncWrite(String action, List<byte[]> byteDatas) {
+		List<RedisCommand> commands = new ArrayList<RedisCommand>(byteDatas.size());
+		for (byte[] byteData : byteDatas) {
+			commands.add(buildCommand(action, byteData));
 		}
+		List<Future<IRedisCommandResponse>> futures = platformClient.send(commands);
+		for (Future<IRedisCommandResponse> future : futures) {
+			future.addListener(RESPONSE_LOGGER);
+		}
+		return futures;
+	}
+
+	public NettyClientPool getPlatformClient() {
+		return platformClient;
+	}
+
+	private RedisCommand buildCommand(String action, byte[] byteData) {
+		CoreProto.TransportPackageData packageData = CoreProto.TransportPackageData.newBuilder()
+				.putHeader(CoreProto.HeaderKey.SITE_SERVER_VERSION_VALUE, CommandConst.SITE_VERSION)
+				.setData(ByteString.copyFrom(byteData)).build();
+		return new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(action).add(packageData.toByteArray());
 	}
 
 	private byte[] getPackageBytes(RedisCommand redisCommand) {
@@ -15,6 +15,7 @@
  */
 package com.akaxin.site.message.service;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,7 +47,7 @@ public class MessageDispatcher {
 				case CoreProto.MsgType.MAP_VALUE:
 				case CoreProto.MsgType.SECRET_MAP_VALUE:
 				case CoreProto.MsgType.U2_NOTICE_VALUE:
-					MessageExecutor.getExecutor().execute("im.cts.message.u2", command);
+					MessageExecutor.execute("im.cts.message.u2", command.getSiteUserId(), command);
 					break;
 				case CoreProto.MsgType.GROUP_TEXT_VALUE:
 				case CoreProto.MsgType.GROUP_SECRET_TEXT_VALUE:
@@ -57,7 +58,7 @@ public class MessageDispatcher {
 				case CoreProto.MsgType.GROUP_MAP_VALUE:
 				case CoreProto.MsgType.GROUP_SECRET_MAP_VALUE:
 				case CoreProto.MsgType.GROUP_NOTICE_VALUE:
-					MessageExecutor.getExecutor().execute("im.cts.message.group", command);
+					MessageExecutor.execute("im.cts.message.group", getStripeGroupId(command, request), command);
 					break;
 				default:
 					break;
@@ -72,4 +73,38 @@ public class MessageDispatcher {
 		}
 		return true;
 	}
+
+	/**
+	 * 群消息按群分段，同一个群的文本、图片、语音（包括密聊）和群通知在同一个分段中按顺序执行；
+	 * 当前协议中GroupMap/GroupSecretMap没有字段（也没有对应的处理器），与缺少群ID的请求一样退化为按发送者分段
+	 */
+	private static String getStripeGroupId(Command command, ImCtsMessageProto.ImCtsMessageRequest request) {
+		String siteGroupId = null;
+		switch (request.getType().getNumber()) {
+		case CoreProto.MsgType.GROUP_TEXT_VALUE:
+			siteGroupId = request.getGroupText().getSiteGroupId();
+			break;
+		case CoreProto.MsgType.GROUP_IMAGE_VALUE:
+			siteGroupId = request.getGroupImage().getSiteGroupId();
+			break;
+		case CoreProto.MsgType.GROUP_SECRET_TEXT_VALUE:
+			siteGroupId = request.getGroupSecretText().getSiteGroupId();
+			break;
+		case CoreProto.MsgType.GROUP_SECRET_IMAGE_VALUE:
+			siteGroupId = request.getGroupSecretImage().getSiteGroupId();
+			break;
+		case CoreProto.MsgType.GROUP_VOICE_VALUE:
+			siteGroupId = request.getGroupVoice().getSiteGroupId();
+			break;
+		case CoreProto.MsgType.GROUP_SECRET_VOICE_VALUE:
+			siteGroupId = request.getGroupSecretVoice().getSiteGroupId();
+			break;
+		case CoreProto.MsgType.GROUP_NOTICE_VALUE:
+			siteGroupId = request.getGroupMsgNotice().getSiteGroupId();
+			break;
+		default:
+			break;
+		}
+		return StringUtils.isEmpty(siteGroupId) ? command.getSiteUserId() : siteGroupId;
+	}
 }
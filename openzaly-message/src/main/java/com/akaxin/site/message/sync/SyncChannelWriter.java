@@ -0,0 +1,106 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.message.sync;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.command.RedisCommand;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+
+/**
+ * <pre>
+ * 同步消息的写出与统计（一个同步类型u2/group对应一个writer）
+ * 		1.写出不等待，出站缓冲超过高水位后由SyncTask暂停查库，等待可写后再继续，不占用业务线程
+ * 		2.记录本次同步写出的包数、字节数、暂停次数和时间，finish时汇总到SyncStats
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-17 16:40:12
+ */
+public class SyncChannelWriter {
+	private static final Logger logger = LoggerFactory.getLogger(SyncChannelWriter.class);
+
+	private final Channel channel;
+	private final String syncType;
+	private final long startTime = System.nanoTime();
+	private ChannelFuture lastFuture;
+	private long bytes;
+	private int packets;
+	private int pauses;
+	private long pausedNanos;
+	private long pauseStart;
+	private boolean aborted;
+
+	public SyncChannelWriter(Channel channel, String syncType) {
+		this.channel = channel;
+		this.syncType = syncType;
+	}
+
+	/**
+	 * 写出一个消息包
+	 * 
+	 * @return false表示连接已关闭，调用方应停止同步
+	 */
+	public boolean write(RedisCommand command) {
+		if (!channel.isActive()) {
+			return false;
+		}
+		bytes += command.getByteSize();
+		packets++;
+		lastFuture = channel.writeAndFlush(command);
+		return true;
+	}
+
+	ChannelFuture getLastFuture() {
+		return lastFuture;
+	}
+
+	void pause() {
+		pauses++;
+		pauseStart = System.nanoTime();
+	}
+
+	void resume() {
+		if (pauseStart > 0) {
+			pausedNanos += System.nanoTime() - pauseStart;
+			pauseStart = 0;
+		}
+	}
+
+	void abort() {
+		aborted = true;
+	}
+
+	/**
+	 * 同步结束，汇总统计
+	 */
+	public void finish(int messageCount) {
+		long costNanos = System.nanoTime() - startTime;
+		SyncStats.getInstance().record(syncType, costNanos, pausedNanos, bytes, packets, messageCount, pauses, aborted);
+		logger.info("sync {} channel={} messages={} packets={} bytes={} cost={}ms paused={}ms aborted={}", syncType,
+				channel, messageCount, packets, bytes, TimeUnit.NANOSECONDS.toMillis(costNanos),
+				TimeUnit.NANOSECONDS.toMillis(pausedNanos), aborted);
+	}
+
+	public boolean isAborted() {
+		return aborted;
+	}
+}
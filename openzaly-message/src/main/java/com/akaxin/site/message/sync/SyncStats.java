@@ -0,0 +1,133 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.message.sync;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.akaxin.common.logs.LogCreater;
+import com.akaxin.common.logs.LogUtils;
+
+/**
+ * <pre>
+ * 消息同步统计，按同步类型（u2/group）汇总
+ * 		每分钟输出一次：同步次数、平均/最大耗时、平均/最大字节数、写阻塞次数与时间、放弃次数，输出后清零
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-17 16:58:31
+ */
+public class SyncStats {
+	private static final Logger statsLogger = LogCreater.createTimeLogger("messageSync");
+	private static SyncStats instance = new SyncStats();
+
+	private final Map<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	private SyncStats() {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "message-sync-stats");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+					String snapshot = entry.getValue().snapshotAndReset();
+					if (snapshot != null) {
+						LogUtils.info(statsLogger, "sync {} {}", entry.getKey(), snapshot);
+					}
+				}
+			}
+
+		}, 60, 60, TimeUnit.SECONDS);
+	}
+
+	public static SyncStats getInstance() {
+		return instance;
+	}
+
+	public void record(String syncType, long costNanos, long pausedNanos, long bytes, int packets, int messages,
+			int pauses, boolean aborted) {
+		Counter counter = counters.get(syncType);
+		if (counter == null) {
+			counters.putIfAbsent(syncType, new Counter());
+			counter = counters.get(syncType);
+		}
+		counter.add(costNanos, pausedNanos, bytes, packets, messages, pauses, aborted);
+	}
+
+	private static class Counter {
+		private long sessions;
+		private long totalCostNanos;
+		private long maxCostNanos;
+		private long totalBytes;
+		private long maxBytes;
+		private long packets;
+		private long messages;
+		private long pauses;
+		private long pausedNanos;
+		private long aborted;
+
+		synchronized void add(long costNanos, long pausedNanos, long bytes, int packets, int messages, int pauses,
+				boolean aborted) {
+			this.sessions++;
+			this.totalCostNanos += costNanos;
+			this.maxCostNanos = Math.max(this.maxCostNanos, costNanos);
+			this.totalBytes += bytes;
+			this.maxBytes = Math.max(this.maxBytes, bytes);
+			this.packets += packets;
+			this.messages += messages;
+			this.pauses += pauses;
+			this.pausedNanos += pausedNanos;
+			if (aborted) {
+				this.aborted++;
+			}
+		}
+
+		synchronized String snapshotAndReset() {
+			if (sessions == 0) {
+				return null;
+			}
+			String snapshot = "sessions=" + sessions + " avgCost=" + TimeUnit.NANOSECONDS.toMillis(totalCostNanos / sessions)
+					+ "ms maxCost=" + TimeUnit.NANOSECONDS.toMillis(maxCostNanos) + "ms avgBytes=" + totalBytes / sessions
+					+ " maxBytes=" + maxBytes + " packets=" + packets + " messages=" + messages + " pauses=" + pauses
+					+ " paused=" + TimeUnit.NANOSECONDS.toMillis(pausedNanos) + "ms aborted=" + aborted;
+			sessions = 0;
+			totalCostNanos = 0;
+			maxCostNanos = 0;
+			totalBytes = 0;
+			maxBytes = 0;
+			packets = 0;
+			messages = 0;
+			pauses = 0;
+			pausedNanos = 0;
+			aborted = 0;
+			return snapshot;
+		}
+	}
+}
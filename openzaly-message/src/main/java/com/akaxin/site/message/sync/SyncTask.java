@@ -0,0 +1,234 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.message.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.channel.ChannelTaskSuspender;
+import com.akaxin.common.command.Command;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+
+/**
+ * <pre>
+ * 一次im.sync.message的流式同步，按顺序执行各同步类型（u2、group），全部完成后回调onComplete（发送MSG_FINISH）
+ * 		1.每次查询下一页前检查channel.isWritable()，可写时才继续查库写出
+ * 		2.不可写时不阻塞线程：挂起该channel的串行任务队列，在最后一个写出包的future上注册监听，写完后再检查可写状态
+ * 			（仍不可写时在事件循环中定时检查），可写后剩余的同步作为continuation回到同一个串行队列继续执行，
+ * 			挂起期间该channel的后续请求（如下一次im.sync）不会执行，保证消息不重复、不乱序，指针按顺序更新
+ * 		3.暂停超过site.sync.write.timeout毫秒仍不可写或者连接关闭时放弃本次同步，不再发送MSG_FINISH
+ * 		4.没有业务执行阶段（业务逻辑在I/O线程中执行）时无法等待，直接写出不做流控
+ * 	同一个请求中的各个同步handler通过command的SYNC_TASK字段共享同一个SyncTask
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-17 16:40:12
+ */
+public class SyncTask implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(SyncTask.class);
+	private static final String SYNC_TASK = "syncTask";
+	private static final long SYNC_WRITE_TIMEOUT = Long.getLong("site.sync.write.timeout", 30000);
+	private static final long WRITABLE_CHECK_INTERVAL = 10;
+
+	/**
+	 * 一种同步类型的分页数据源
+	 */
+	public interface PageSource {
+		/**
+		 * 查询并写出下一页
+		 * 
+		 * @return false表示没有更多数据
+		 */
+		boolean writeNextPage(SyncChannelWriter writer) throws Exception;
+
+		int getMessageCount();
+	}
+
+	private final Channel channel;
+	private ChannelTaskSuspender suspender;
+	private final List<String> syncTypes = new ArrayList<String>();
+	private final List<PageSource> sources = new ArrayList<PageSource>();
+	private final AtomicBoolean suspended = new AtomicBoolean();
+	private Runnable onComplete;
+	private int index;
+	private SyncChannelWriter writer;
+	private volatile long resumeDeadline;
+	private volatile int suspendGeneration;
+
+	private SyncTask(Channel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * 取出（不存在时创建）command对应的同步任务
+	 */
+	public static SyncTask of(Command command) {
+		SyncTask task = command.getField(SYNC_TASK, SyncTask.class);
+		if (task == null) {
+			task = new SyncTask(command.getChannelSession().getChannel());
+			command.setField(SYNC_TASK, task);
+		}
+		return task;
+	}
+
+	public SyncTask add(String syncType, PageSource source) {
+		syncTypes.add(syncType);
+		sources.add(source);
+		return this;
+	}
+
+	/**
+	 * 在当前线程开始同步，遇到channel不可写时挂起，由后续的写完成事件恢复
+	 * 
+	 * @param onComplete
+	 *            全部同步完成后执行，放弃同步时不执行
+	 */
+	public void start(Runnable onComplete) {
+		this.onComplete = onComplete;
+		run();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (index < sources.size()) {
+				if (!channel.isActive()) {
+					abort("channel inactive");
+					return;
+				}
+				PageSource source = sources.get(index);
+				if (writer == null) {
+					writer = new SyncChannelWriter(channel, syncTypes.get(index));
+				}
+				if (!channel.isWritable()) {
+					// 没有业务执行阶段时无法挂起，直接写出
+					ChannelTaskSuspender channelSuspender = channel.attr(ChannelTaskSuspender.KEY).get();
+					if (channelSuspender != null) {
+						suspend(channelSuspender);
+						return;
+					}
+				}
+				if (!source.writeNextPage(writer)) {
+					writer.finish(source.getMessageCount());
+					writer = null;
+					index++;
+				}
+			}
+		} catch (Exception e) {
+			logger.error("sync message error. channel=" + channel, e);
+			abort("sync error");
+			return;
+		}
+		if (onComplete != null) {
+			onComplete.run();
+		}
+	}
+
+	private void suspend(ChannelTaskSuspender channelSuspender) {
+		suspender = channelSuspender;
+		suspender.suspend();
+		writer.pause();
+		resumeDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SYNC_WRITE_TIMEOUT);
+		final int generation = ++suspendGeneration;
+		suspended.set(true);
+		// 最后一个包写完时立即检查；对端不读取时写不会完成，由定时检查负责超时
+		ChannelFuture lastFuture = writer.getLastFuture();
+		if (lastFuture != null && !lastFuture.isDone()) {
+			lastFuture.addListener(new GenericFutureListener<Future<? super Void>>() {
+
+				@Override
+				public void operationComplete(Future<? super Void> future) throws Exception {
+					if (channel.isWritable()) {
+						resume();
+					}
+				}
+			});
+		}
+		scheduleCheck(generation);
+	}
+
+	/**
+	 * 在事件循环中执行，每次挂起只有一条定时检查链
+	 */
+	private void checkWritable(int generation) {
+		if (!suspended.get() || generation != suspendGeneration) {
+			return;
+		}
+		if (!channel.isActive()) {
+			if (suspended.compareAndSet(true, false)) {
+				abortInQueue("channel inactive");
+			}
+		} else if (channel.isWritable()) {
+			resume();
+		} else if (System.nanoTime() > resumeDeadline) {
+			if (suspended.compareAndSet(true, false)) {
+				abortInQueue("not writable after " + SYNC_WRITE_TIMEOUT + " ms");
+			}
+		} else {
+			scheduleCheck(generation);
+		}
+	}
+
+	private void scheduleCheck(final int generation) {
+		channel.eventLoop().schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				checkWritable(generation);
+			}
+		}, WRITABLE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	private void resume() {
+		if (!suspended.compareAndSet(true, false)) {
+			return;
+		}
+		writer.resume();
+		suspender.resume(this);
+	}
+
+	/**
+	 * 统计中可能触发日志输出，不在事件循环中执行，放回串行队列中执行后恢复后续请求
+	 */
+	private void abortInQueue(final String reason) {
+		suspender.resume(new Runnable() {
+
+			@Override
+			public void run() {
+				abort(reason);
+			}
+		});
+	}
+
+	private void abort(String reason) {
+		logger.warn("abort sync channel={} reason={}", channel, reason);
+		if (writer != null) {
+			writer.resume();
+			writer.abort();
+			writer.finish(sources.get(index).getMessageCount());
+			writer = null;
+		}
+	}
+}
@@ -30,10 +30,10 @@ import com.akaxin.proto.client.ImStcMessageProto;
 import com.akaxin.proto.core.CoreProto;
 import com.akaxin.proto.core.CoreProto.MsgType;
 import com.akaxin.proto.site.ImSyncMessageProto;
-import com.akaxin.site.storage.api.IGroupDao;
+import com.akaxin.site.message.sync.SyncChannelWriter;
+import com.akaxin.site.message.sync.SyncTask;
 import com.akaxin.site.storage.api.IMessageDao;
 import com.akaxin.site.storage.bean.GroupMessageBean;
-import com.akaxin.site.storage.service.GroupDaoService;
 import com.akaxin.site.storage.service.MessageDaoService;
 import com.google.protobuf.ByteString;
 
@@ -42,52 +42,66 @@ import io.netty.channel.Channel;
 public class SyncGroupMessageHandler extends AbstractSyncHandler<Command> {
 	private static final Logger logger = LoggerFactory.getLogger(SyncGroupMessageHandler.class);
 	private static final int SYNC_MAX_MESSAGE_COUNT = 100;
-	private IGroupDao userGroupDao = new GroupDaoService();
 	private IMessageDao syncDao = new MessageDaoService();
 
 	public boolean handle(Command command) {
-		int syncCount = 0;
-		ChannelSession channelSession = command.getChannelSession();
+		final ChannelSession channelSession = command.getChannelSession();
+		final String siteUserId = command.getSiteUserId();
+		final String deviceId = command.getDeviceId();
+		SyncTask syncTask = SyncTask.of(command);
 		try {
 			ImSyncMessageProto.ImSyncMessageRequest syncRequest = ImSyncMessageProto.ImSyncMessageRequest
 					.parseFrom(command.getParams());
-			String siteUserId = command.getSiteUserId();
-			String deviceId = command.getDeviceId();
-			Map<String, Long> groupPointerMap = syncRequest.getGroupsPointerMap();
+			final Map<String, Long> groupPointerMap = syncRequest.getGroupsPointerMap();
 			logger.info("[Start sync group] siteUserId={} deviceId={} request={}", siteUserId, deviceId,
 					syncRequest.toString());
 
-			// 查找个人有多少群
-			List<String> userGroups = userGroupDao.getUserGroupsId(siteUserId);
-			if (userGroups != null) {
-				for (String groupId : userGroups) {
-					long gpointer = 0;
-					if (groupPointerMap != null && groupPointerMap.get(groupId) != null) {
-						gpointer = groupPointerMap.get(groupId);
-					}
-					logger.info("[Syncing group={}] siteUserId={} deviceId={} gpointer={}", groupId, siteUserId,
-							deviceId, gpointer);
-					List<GroupMessageBean> groupMessageList = syncDao.queryGroupMessage(groupId, siteUserId, deviceId,
-							gpointer);
-					if (groupMessageList != null && groupMessageList.size() > 0) {
+			// 一次查询取出所有有新消息的群的消息，按id翻页，查询次数与用户所在群数量无关
+			syncTask.add("group", new SyncTask.PageSource() {
+				private long afterId = 0;
+				private int syncCount = 0;
+
+				@Override
+				public boolean writeNextPage(SyncChannelWriter writer) throws Exception {
+					List<GroupMessageBean> groupMessageList = syncDao.queryUpdatedGroupMessage(siteUserId, deviceId,
+							groupPointerMap, afterId, SYNC_MAX_MESSAGE_COUNT);
+					if (groupMessageList != null && !groupMessageList.isEmpty()
+							&& groupMessageToClient(writer, siteUserId, groupMessageList)) {
 						syncCount += groupMessageList.size();
-						groupMessageToClient(channelSession.getChannel(), siteUserId, groupMessageList);
+						logger.info("[Syncing group] siteUserId={} deviceId={} afterId={} syncSize={}", siteUserId,
+								deviceId, afterId, groupMessageList.size());
+						if (groupMessageList.size() == SYNC_MAX_MESSAGE_COUNT) {
+							afterId = groupMessageList.get(groupMessageList.size() - 1).getId();
+							return true;
+						}
 					}
-					logger.info("[Syncing group={}] syncSize={}", groupId, groupMessageList.size());
+					logger.info("[End sync group] siteUserId={} deviceId={} syncCount={}", siteUserId, deviceId,
+							syncCount);
+					return false;
 				}
-			}
-			logger.info("[End sync group] siteUserId={} deviceId={} syncCount={}", siteUserId, deviceId, syncCount);
-
-			msgFinishToClient(channelSession.getChannel(), siteUserId, deviceId);
 
+				@Override
+				public int getMessageCount() {
+					return syncCount;
+				}
+			});
 		} catch (Exception e) {
 			logger.error("sync group message error.", e);
 		}
 
+		// u2和group都同步完成后才发送MSG_FINISH，同步被放弃时不发送
+		syncTask.start(new Runnable() {
+
+			@Override
+			public void run() {
+				msgFinishToClient(channelSession.getChannel(), siteUserId, deviceId);
+			}
+		});
 		return true;
 	}
 
-	private void groupMessageToClient(Channel channel, String userId, List<GroupMessageBean> groupMessageList) {
+	private boolean groupMessageToClient(SyncChannelWriter writer, String userId,
+			List<GroupMessageBean> groupMessageList) {
 		ImStcMessageProto.ImStcMessageRequest.Builder requestBuilder = ImStcMessageProto.ImStcMessageRequest
 				.newBuilder();
 		for (GroupMessageBean gmsgBean : groupMessageList) {
@@ -156,9 +170,8 @@ public class SyncGroupMessageHandler extends AbstractSyncHandler<Command> {
 		CoreProto.TransportPackageData datas = CoreProto.TransportPackageData.newBuilder().putAllHeader(header)
 				.setData(ByteString.copyFrom(request.toByteArray())).build();
 
-		channel.writeAndFlush(new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(CommandConst.IM_MSG_TOCLIENT)
+		return writer.write(new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(CommandConst.IM_MSG_TOCLIENT)
 				.add(datas.toByteArray()));
-
 	}
 
 	private void msgFinishToClient(Channel channel, String siteUserId, String deviceId) {
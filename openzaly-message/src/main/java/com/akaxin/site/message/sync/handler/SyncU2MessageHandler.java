@@ -23,7 +23,6 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.akaxin.common.channel.ChannelSession;
 import com.akaxin.common.command.Command;
 import com.akaxin.common.command.RedisCommand;
 import com.akaxin.common.constant.CommandConst;
@@ -31,13 +30,13 @@ import com.akaxin.proto.client.ImStcMessageProto;
 import com.akaxin.proto.core.CoreProto;
 import com.akaxin.proto.core.CoreProto.MsgType;
 import com.akaxin.proto.site.ImSyncMessageProto;
+import com.akaxin.site.message.sync.SyncChannelWriter;
+import com.akaxin.site.message.sync.SyncTask;
 import com.akaxin.site.storage.api.IMessageDao;
 import com.akaxin.site.storage.bean.U2MessageBean;
 import com.akaxin.site.storage.service.MessageDaoService;
 import com.google.protobuf.ByteString;
 
-import io.netty.channel.Channel;
-
 /**
  * 用户同步个人消息处理类
  * 
@@ -50,34 +49,44 @@ public class SyncU2MessageHandler extends AbstractSyncHandler<Command> {
 	private static final int SYNC_MAX_MESSAGE_COUNT = 100;
 
 	public boolean handle(Command command) {
-		ChannelSession channelSession = command.getChannelSession();
 		try {
 			ImSyncMessageProto.ImSyncMessageRequest syncRequest = ImSyncMessageProto.ImSyncMessageRequest
 					.parseFrom(command.getParams());
-			String siteUserId = command.getSiteUserId();
-			String deviceId = command.getDeviceId();
+			final String siteUserId = command.getSiteUserId();
+			final String deviceId = command.getDeviceId();
 			logger.info("[Start sync u2]siteUserId={} deviceId={} sync U2 Message.", siteUserId, deviceId);
 
 			long clientu2Pointer = syncRequest.getU2Pointer();
 			long u2Pointer = syncDao.queryU2Pointer(siteUserId, deviceId);
-			long startPointer = clientu2Pointer > u2Pointer ? clientu2Pointer : u2Pointer;
-			int syncCount = 0;
-
-			while (true) {
-				List<U2MessageBean> u2MessageList = syncDao.queryU2Message(siteUserId, deviceId, startPointer,
-						SYNC_MAX_MESSAGE_COUNT);
-				// 有二人消息才会发送给客户端
-				if (u2MessageList != null && u2MessageList.size() > 0) {
-					startPointer = u2MessageToClient(channelSession.getChannel(), u2MessageList);
-				}
-				// 判断跳出循环的条件
-				if (u2MessageList == null || u2MessageList.size() < SYNC_MAX_MESSAGE_COUNT) {
-					break;
+			final long startPointer = clientu2Pointer > u2Pointer ? clientu2Pointer : u2Pointer;
+			// 分页写出由SyncTask驱动，channel不可写时暂停查库，不占用业务线程
+			SyncTask.of(command).add("u2", new SyncTask.PageSource() {
+				private long pointer = startPointer;
+				private int syncCount = 0;
+
+				@Override
+				public boolean writeNextPage(SyncChannelWriter writer) throws Exception {
+					List<U2MessageBean> u2MessageList = syncDao.queryU2Message(siteUserId, deviceId, pointer,
+							SYNC_MAX_MESSAGE_COUNT);
+					// 有二人消息才会发送给客户端
+					if (u2MessageList != null && u2MessageList.size() > 0) {
+						pointer = u2MessageToClient(writer, u2MessageList);
+						syncCount += u2MessageList.size();
+					}
+					// 判断跳出循环的条件
+					if (u2MessageList == null || u2MessageList.size() < SYNC_MAX_MESSAGE_COUNT) {
+						logger.info("[End sync u2]siteUserId={} deviceId={} sync U2 Message from pointer={} count={}.",
+								siteUserId, deviceId, startPointer, syncCount);
+						return false;
+					}
+					return true;
 				}
-			}
 
-			logger.info("[End sync u2]siteUserId={} deviceId={} sync U2 Message from pointer={} count={}.", siteUserId,
-					deviceId, startPointer, syncCount);
+				@Override
+				public int getMessageCount() {
+					return syncCount;
+				}
+			});
 		} catch (Exception e) {
 			logger.error("sync u2 message error", e);
 		}
@@ -85,7 +94,7 @@ public class SyncU2MessageHandler extends AbstractSyncHandler<Command> {
 		return true;
 	}
 
-	private long u2MessageToClient(Channel channel, List<U2MessageBean> u2MessageList) {
+	private long u2MessageToClient(SyncChannelWriter writer, List<U2MessageBean> u2MessageList) {
 		long maxPointer = 0;
 		ImStcMessageProto.ImStcMessageRequest.Builder requestBuilder = ImStcMessageProto.ImStcMessageRequest
 				.newBuilder();
@@ -195,7 +204,7 @@ public class SyncU2MessageHandler extends AbstractSyncHandler<Command> {
 		CoreProto.TransportPackageData data = CoreProto.TransportPackageData.newBuilder().putAllHeader(header)
 				.setData(ByteString.copyFrom(request.toByteArray())).build();
 
-		channel.writeAndFlush(new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(CommandConst.IM_MSG_TOCLIENT)
+		writer.write(new RedisCommand().add(CommandConst.PROTOCOL_VERSION).add(CommandConst.IM_MSG_TOCLIENT)
 				.add(data.toByteArray()));
 		return maxPointer;
 	}
@@ -0,0 +1,191 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.message.threads;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.akaxin.common.logs.LogCreater;
+import com.akaxin.common.logs.LogUtils;
+
+/**
+ * <pre>
+ * 有界、带统计的线程池，供openzaly-message中的异步处理使用
+ * 		1.队列有界，队列满时线程数才会增长到maximumPoolSize
+ * 		2.线程数与队列都满时按溢出策略处理：
+ * 			drop-oldest：丢弃队列中最早的任务，放入新任务
+ * 			drop-newest：丢弃新任务
+ * 		3.每分钟输出一次统计到messageExecutor日志：队列长度、活跃线程、完成数、丢弃数、平均/最大排队与执行耗时
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-20 15:08:36
+ */
+public class MonitoredThreadExecutor extends ThreadPoolExecutor {
+	private static final Logger statsLogger = LogCreater.createTimeLogger("messageExecutor");
+	public static final String POLICY_DROP_OLDEST = "drop-oldest";
+	public static final String POLICY_DROP_NEWEST = "drop-newest";
+	private static final List<MonitoredThreadExecutor> executors = new CopyOnWriteArrayList<MonitoredThreadExecutor>();
+
+	static {
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "message-executor-stats");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}).scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				for (MonitoredThreadExecutor executor : executors) {
+					LogUtils.info(statsLogger, "executor {}", executor.snapshotAndResetStats());
+				}
+			}
+
+		}, 60, 60, TimeUnit.SECONDS);
+	}
+
+	private final String name;
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong finished = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicLong totalRunNanos = new AtomicLong();
+	private final AtomicLong maxRunNanos = new AtomicLong();
+
+	public MonitoredThreadExecutor(final String name, int corePoolSize, int maximumPoolSize, int queueCapacity,
+			String overflowPolicy) {
+		super(corePoolSize, maximumPoolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.name = name;
+		this.setRejectedExecutionHandler(new OverflowHandler(POLICY_DROP_OLDEST.equals(overflowPolicy)));
+		executors.add(this);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		super.execute(new TimedTask(command));
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		if (r instanceof TimedTask) {
+			TimedTask task = (TimedTask) r;
+			task.startNanos = System.nanoTime();
+			long waitNanos = task.startNanos - task.submitNanos;
+			totalWaitNanos.addAndGet(waitNanos);
+			updateMax(maxWaitNanos, waitNanos);
+		}
+		super.beforeExecute(t, r);
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		if (r instanceof TimedTask) {
+			long runNanos = System.nanoTime() - ((TimedTask) r).startNanos;
+			totalRunNanos.addAndGet(runNanos);
+			updateMax(maxRunNanos, runNanos);
+			finished.incrementAndGet();
+		}
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public int getQueueSize() {
+		return getQueue().size();
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	private String snapshotAndResetStats() {
+		long count = finished.getAndSet(0);
+		long waitNanos = totalWaitNanos.getAndSet(0);
+		long runNanos = totalRunNanos.getAndSet(0);
+		return name + " queue=" + getQueue().size() + " active=" + getActiveCount() + " poolSize=" + getPoolSize()
+				+ " finished=" + count + " rejected=" + rejected.getAndSet(0) + " avgWait="
+				+ (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos / count)) + "ms maxWait="
+				+ TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.getAndSet(0)) + "ms avgRun="
+				+ (count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(runNanos / count)) + "ms maxRun="
+				+ TimeUnit.NANOSECONDS.toMillis(maxRunNanos.getAndSet(0)) + "ms";
+	}
+
+	private static class TimedTask implements Runnable {
+		private final Runnable task;
+		private final long submitNanos = System.nanoTime();
+		private long startNanos;
+
+		TimedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+	}
+
+	private class OverflowHandler implements RejectedExecutionHandler {
+		private final boolean dropOldest;
+
+		OverflowHandler(boolean dropOldest) {
+			this.dropOldest = dropOldest;
+		}
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			rejected.incrementAndGet();
+			if (executor.isShutdown()) {
+				return;
+			}
+			if (dropOldest) {
+				executor.getQueue().poll();
+				if (!executor.getQueue().offer(r)) {
+					rejected.incrementAndGet();
+				}
+			}
+		}
+	}
+}
@@ -16,28 +16,24 @@
 package com.akaxin.site.message.threads;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
- * 多线程push发送处理器
+ * <pre>
+ * 多线程push发送处理器，有界队列，队列满时按溢出策略丢弃
+ * 		site.push.threads.core：核心线程数
+ * 		site.push.threads.max：最大线程数（队列满后才会增长）
+ * 		site.push.queue.size：队列长度
+ * 		site.push.overflow.policy：drop-oldest（默认）/ drop-newest
+ * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-27 20:34:25
  */
 public class MultiPushThreadExecutor {
-	/**
-	 * <pre>
-	 * int corePoolSize = 5
-	 * int maximumPoolSize=10 
-	 * long keepAliveTime=10 
-	 * TimeUnit unit=S
-	 * BlockingQueue<Runnable> workQueue
-	 * </pre>
-	 */
-	private static Executor threadPoolExecutor = new ThreadPoolExecutor(5, 10, 10, TimeUnit.SECONDS,
-			new LinkedBlockingQueue<Runnable>());
+	private static MonitoredThreadExecutor threadPoolExecutor = new MonitoredThreadExecutor("message-push",
+			Integer.getInteger("site.push.threads.core", 5), Integer.getInteger("site.push.threads.max", 10),
+			Integer.getInteger("site.push.queue.size", 10000),
+			System.getProperty("site.push.overflow.policy", MonitoredThreadExecutor.POLICY_DROP_OLDEST));
 
 	private MultiPushThreadExecutor() {
 	}
@@ -66,9 +66,11 @@ public class U2MessageTextHandler extends AbstractUserHandler<Command> {
 				u2Bean.setContent(msgText);
 				u2Bean.setMsgTime(System.currentTimeMillis());
 
+				// 保存返回时消息所在的事务已经提交（pool模式默认synchronous=full，已fsync），再回执MSG_STATUS
 				boolean saveRes = messageDao.saveU2Message(u2Bean);
-
-				msgResponse(channelSession.getChannel(), command, siteUserId, siteFriendId, msgId);
+				if (saveRes) {
+					msgResponse(channelSession.getChannel(), command, siteUserId, siteFriendId, msgId);
+				}
 				// 消息保存成功，继续执行PHN，消息保存失败退出
 				return saveRes;
 			}
@@ -15,7 +15,6 @@
  */
 package com.akaxin.site.message.user2.handler;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,7 +30,6 @@ import com.akaxin.proto.core.UserProto;
 import com.akaxin.proto.site.ImCtsMessageProto;
 import com.akaxin.site.message.dao.ImUserFriendDao;
 import com.akaxin.site.message.dao.ImUserProfileDao;
-import com.akaxin.site.storage.bean.SimpleUserBean;
 
 import io.netty.channel.Channel;
 
@@ -146,12 +144,8 @@ public class UserDetectionHandler extends AbstractUserHandler<Command> {
 	 */
 	private boolean checkUser(String siteUserId, String siteFriendId) {
 		try {
-			SimpleUserBean bean = ImUserProfileDao.getInstance().getSimpleUserProfile(siteFriendId);
-			if (bean != null && StringUtils.isNotEmpty(bean.getUserId())) {
-				if (bean.getUserStatus() != UserProto.UserStatus.NORMAL_VALUE) {
-					return false;
-				}
-			} else {
+			int friendStatus = ImUserProfileDao.getInstance().getUserStatus(siteFriendId);
+			if (friendStatus != UserProto.UserStatus.NORMAL_VALUE) {
 				return false;
 			}
 			if (!ImUserFriendDao.getInstance().isFriend(siteUserId, siteFriendId)) {
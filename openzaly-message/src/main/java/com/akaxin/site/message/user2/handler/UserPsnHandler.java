@@ -15,18 +15,21 @@
  */
 package com.akaxin.site.message.user2.handler;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.akaxin.common.channel.ChannelManager;
+import com.akaxin.common.channel.ChannelSession;
 import com.akaxin.common.channel.ChannelWriter;
 import com.akaxin.common.command.Command;
 import com.akaxin.common.command.CommandResponse;
 import com.akaxin.common.constant.CommandConst;
 import com.akaxin.common.constant.ErrorCode;
 import com.akaxin.proto.client.ImStcPsnProto;
-import com.akaxin.site.message.dao.ImUserSessionDao;
 
 public class UserPsnHandler extends AbstractUserHandler<Command> {
 	private static final Logger logger = LoggerFactory.getLogger(UserPsnHandler.class);
@@ -36,28 +39,29 @@ public class UserPsnHandler extends AbstractUserHandler<Command> {
 			String site_friend_id = command.getSiteFriendId();
 			logger.info("psn to user command={}", command.toString());
 
-			// 查找对方的设备信息，发送psh
-			List<String> deivceIds = ImUserSessionDao.getInstance().getSessionDevices(site_friend_id);
-			command.setField("deviceIdList", deivceIds);
-			for (String deviceId : deivceIds) {
-				if (deviceId != null) {
-					writePsn(deviceId);
-					logger.info("U2 message PSH to siteUserId={}, deviceId", site_friend_id, deviceId);
-				}
+			// 从在线索引查找对方在线的设备，发送psn，不在线直接跳过
+			Set<ChannelSession> channelSessions = ChannelManager.getUserChannelSessions(site_friend_id);
+			List<String> deivceIds = new ArrayList<String>(channelSessions.size());
+			for (ChannelSession channelSession : channelSessions) {
+				deivceIds.add(channelSession.getDeviceId());
+				writePsn(channelSession);
+				logger.info("U2 message PSH to siteUserId={}, deviceId={}", site_friend_id,
+						channelSession.getDeviceId());
 			}
+			command.setField("deviceIdList", deivceIds);
 		} catch (Exception e) {
 			logger.error("send u2 psn error", e);
 		}
 		return true;
 	}
 
-	private void writePsn(String deviceId) {
+	private void writePsn(ChannelSession channelSession) {
 		CommandResponse commandResponse = new CommandResponse().setVersion(CommandConst.PROTOCOL_VERSION)
 				.setAction(CommandConst.IM_STC_PSN);
 		ImStcPsnProto.ImStcPsnRequest pshRequest = ImStcPsnProto.ImStcPsnRequest.newBuilder().build();
 		commandResponse.setParams(pshRequest.toByteArray());
 		commandResponse.setErrCode(ErrorCode.SUCCESS);
-		ChannelWriter.writeByDeviceId(deviceId, commandResponse);
+		ChannelWriter.write(channelSession.getChannel(), commandResponse);
 	}
 
 }
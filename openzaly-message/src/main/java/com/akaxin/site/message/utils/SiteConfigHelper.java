@@ -15,7 +15,9 @@
  */
 package com.akaxin.site.message.utils;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,43 +26,60 @@ import com.akaxin.proto.core.ConfigProto;
 import com.akaxin.site.message.dao.SiteConfigDao;
 
 /**
- * 管理站点配置相关信息
+ * <pre>
+ * 站点配置注册表，IM与API共用同一份配置
+ * 		1.配置保存为不可变快照，更新时原子替换
+ * 		2.通过SiteConfigDao写入配置后立即刷新，定时任务仅作为兜底
+ * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-14 21:18:49
  */
 public class SiteConfigHelper {
 	private static final Logger logger = LoggerFactory.getLogger(SiteConfigHelper.class);
+	private static final SiteConfigSnapshot EMPTY_SNAPSHOT = new SiteConfigSnapshot(
+			Collections.<Integer, String>emptyMap());
 
-	private static volatile Map<Integer, String> configMap;
+	private static final AtomicReference<SiteConfigSnapshot> snapshot = new AtomicReference<SiteConfigSnapshot>();
 
 	private SiteConfigHelper() {
 	}
 
-	public static Map<Integer, String> getConfigMap() {
-		if (configMap == null) {
-			configMap = SiteConfigDao.getInstance().getSiteConfig();
+	public static SiteConfigSnapshot getSnapshot() {
+		SiteConfigSnapshot current = snapshot.get();
+		if (current == null) {
+			updateConfig();
+			current = snapshot.get();
 		}
-		return configMap;
+		return current == null ? EMPTY_SNAPSHOT : current;
+	}
+
+	public static Map<Integer, String> getConfigMap() {
+		return getSnapshot().getConfigMap();
 	}
 
-	public static Map<Integer, String> updateConfig() {
+	/**
+	 * 从数据库重新加载配置，读取失败时保留原有快照
+	 */
+	public static synchronized Map<Integer, String> updateConfig() {
 		try {
-			configMap = SiteConfigDao.getInstance().getSiteConfig();
-			logger.info("update site config : {}", configMap);
+			Map<Integer, String> configMap = SiteConfigDao.getInstance().getSiteConfig();
+			if (configMap != null) {
+				SiteConfigSnapshot old = snapshot.get();
+				if (old == null || !old.getConfigMap().equals(configMap)) {
+					snapshot.set(new SiteConfigSnapshot(configMap));
+					logger.info("update site config : {}", configMap);
+				}
+			}
 		} catch (Exception e) {
 			logger.error("update site config error.", e);
 		}
-		return configMap;
+		SiteConfigSnapshot current = snapshot.get();
+		return current == null ? null : current.getConfigMap();
 	}
 
 	public static String getConfig(ConfigProto.ConfigKey configKey) {
-		try {
-			return getConfigMap().get(configKey.getNumber());
-		} catch (Exception e) {
-			logger.error("get config value error", e);
-		}
-		return null;
+		return getSnapshot().getConfig(configKey.getNumber());
 	}
 
-}
\ No newline at end of file
+}
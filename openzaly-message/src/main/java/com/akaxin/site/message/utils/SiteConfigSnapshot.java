@@ -0,0 +1,123 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.message.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.akaxin.proto.core.ConfigProto;
+
+/**
+ * <pre>
+ * 站点配置的不可变快照
+ * 		1.配置更新时整体替换，读取方无需加锁
+ * 		2.常用配置项在创建快照时解析为对应类型，避免每次读取时重复解析
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-19 11:06:32
+ */
+public final class SiteConfigSnapshot {
+	private final Map<Integer, String> configMap;
+	private final String siteName;
+	private final String siteServer;
+	private final String siteAdmin;
+	private final String picPath;
+	private final boolean siteOpen;
+	private final ConfigProto.RegisterWay registerWay;
+	private final int groupMembersCount;
+	private final ConfigProto.U2EncryptionStatus u2EncryptionStatus;
+
+	public SiteConfigSnapshot(Map<Integer, String> map) {
+		this.configMap = Collections.unmodifiableMap(new HashMap<Integer, String>(map));
+		this.siteName = configMap.get(ConfigProto.ConfigKey.SITE_NAME_VALUE);
+		this.siteServer = configMap.get(ConfigProto.ConfigKey.SITE_ADDRESS_VALUE) + ":"
+				+ configMap.get(ConfigProto.ConfigKey.SITE_PORT_VALUE);
+		this.siteAdmin = configMap.get(ConfigProto.ConfigKey.SITE_ADMIN_VALUE);
+		this.picPath = configMap.get(ConfigProto.ConfigKey.PIC_PATH_VALUE);
+
+		String status = configMap.get(ConfigProto.ConfigKey.SITE_STATUS_VALUE);
+		this.siteOpen = StringUtils.isNumeric(status)
+				&& ConfigProto.SiteStatus.OPEN_VALUE == Integer.valueOf(status);
+
+		ConfigProto.RegisterWay regway = null;
+		String regwayNum = configMap.get(ConfigProto.ConfigKey.REGISTER_WAY_VALUE);
+		if (StringUtils.isNumeric(regwayNum)) {
+			regway = ConfigProto.RegisterWay.forNumber(Integer.valueOf(regwayNum));
+		}
+		this.registerWay = regway == null ? ConfigProto.RegisterWay.ANONYMOUS : regway;
+
+		String memberCount = configMap.get(ConfigProto.ConfigKey.GROUP_MEMBERS_COUNT_VALUE);
+		this.groupMembersCount = StringUtils.isNumeric(memberCount) ? Integer.valueOf(memberCount) : -1;
+
+		ConfigProto.U2EncryptionStatus u2Status = null;
+		String u2StatusNum = configMap.get(ConfigProto.ConfigKey.U2_ENCRYPTION_STATUS_VALUE);
+		if (StringUtils.isNumeric(u2StatusNum)) {
+			u2Status = ConfigProto.U2EncryptionStatus.forNumber(Integer.valueOf(u2StatusNum));
+		}
+		this.u2EncryptionStatus = u2Status == null ? ConfigProto.U2EncryptionStatus.U2_CLOSE : u2Status;
+	}
+
+	public Map<Integer, String> getConfigMap() {
+		return configMap;
+	}
+
+	public String getConfig(int key) {
+		return configMap.get(key);
+	}
+
+	public String getSiteName() {
+		return siteName;
+	}
+
+	/**
+	 * 站点地址，格式为address:port
+	 */
+	public String getSiteServer() {
+		return siteServer;
+	}
+
+	public String getSiteAdmin() {
+		return siteAdmin;
+	}
+
+	public String getPicPath() {
+		return picPath;
+	}
+
+	public boolean isSiteOpen() {
+		return siteOpen;
+	}
+
+	public ConfigProto.RegisterWay getRegisterWay() {
+		return registerWay;
+	}
+
+	/**
+	 * 未配置时返回-1
+	 */
+	public int getGroupMembersCount() {
+		return groupMembersCount;
+	}
+
+	public ConfigProto.U2EncryptionStatus getU2EncryptionStatus() {
+		return u2EncryptionStatus;
+	}
+
+}
@@ -0,0 +1,50 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.api;
+
+import java.sql.SQLException;
+
+/**
+ * 内容寻址存储的文件引用计数
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-21 15:12:37
+ */
+public interface IFileRefDao {
+
+	/**
+	 * 增加一次引用，记录不存在时新建（记录上传时的文件类型），返回增加后的引用数
+	 */
+	public int addFileRef(String fileId, long fileSize, int fileType) throws SQLException;
+
+	/**
+	 * 减少一次引用，减到0时删除记录；返回剩余的引用数，记录不存在返回-1
+	 */
+	public int releaseFileRef(String fileId) throws SQLException;
+
+	/**
+	 * 当前引用数，记录不存在返回0
+	 */
+	public int getFileRef(String fileId) throws SQLException;
+
+	/**
+	 * 上传时记录的文件类型，记录不存在返回0
+	 */
+	public int getFileType(String fileId) throws SQLException;
+
+	public boolean updateFileType(String fileId, int fileType) throws SQLException;
+
+}
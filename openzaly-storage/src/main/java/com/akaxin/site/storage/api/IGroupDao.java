@@ -36,6 +36,8 @@ public interface IGroupDao {
 
 	public GroupMemberBean getGroupMember(String siteUserId, String groupId) throws SQLException;
 
+	public boolean isGroupMember(String siteUserId, String groupId) throws SQLException;
+
 	public List<GroupMemberBean> getGroupMemberList(String groupId, int pageNum, int pageSize) throws SQLException;
 
 	public boolean deleteGroupMember(String groupId, List<String> userIds);
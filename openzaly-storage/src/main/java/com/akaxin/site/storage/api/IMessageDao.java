@@ -2,6 +2,7 @@ package com.akaxin.site.storage.api;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 import com.akaxin.site.storage.bean.GroupMessageBean;
 import com.akaxin.site.storage.bean.U2MessageBean;
@@ -30,6 +31,12 @@ public interface IMessageDao {
 	public List<GroupMessageBean> queryGroupMessage(String groupId, String userId, String deviceId, long start)
 			throws SQLException;
 
+	/**
+	 * 一次查询返回所有有新消息的群中id大于afterId的消息，按id排序，最多limit条
+	 */
+	public List<GroupMessageBean> queryUpdatedGroupMessage(String userId, String deviceId,
+			Map<String, Long> groupPointers, long afterId, int limit) throws SQLException;
+
 	public boolean updateGroupPointer(String gid, String userId, String deviceId, long finish) throws SQLException;
 
 	public long queryMaxGroupPointer(String groupId) throws SQLException;
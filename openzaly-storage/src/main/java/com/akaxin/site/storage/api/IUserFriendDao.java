@@ -15,6 +15,11 @@ public interface IUserFriendDao {
 
 	boolean updateRelation(String siteUserId, String siteFriendId, int relation) throws SQLException;
 
+	/**
+	 * 二者互相关注（relation=1）才为好友
+	 */
+	boolean isFriend(String siteUserId, String siteFriendId) throws SQLException;
+
 	public List<SimpleUserBean> getUserFriends(String userId) throws SQLException;
 
 }
@@ -1,7 +1,9 @@
 package com.akaxin.site.storage.api;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.akaxin.site.storage.bean.SimpleUserBean;
 import com.akaxin.site.storage.bean.SimpleUserRelationBean;
@@ -17,6 +19,11 @@ public interface IUserProfileDao {
 
 	public SimpleUserBean getSimpleProfileById(String userId) throws SQLException;
 
+	/**
+	 * 批量查询用户简要资料，返回siteUserId到资料的映射，不存在的用户不在结果中
+	 */
+	public Map<String, SimpleUserBean> getSimpleProfiles(Collection<String> userIds) throws SQLException;
+
 	public SimpleUserBean getSimpleProfileByPubk(String userId) throws SQLException;
 
 	public List<SimpleUserBean> getSimpleProfileByName(String userName) throws SQLException;
@@ -31,6 +38,11 @@ public interface IUserProfileDao {
 
 	public int updateUserStatus(String siteUserId, int status) throws SQLException;
 
+	/**
+	 * 查询用户状态，用户不存在返回-1
+	 */
+	public int getUserStatus(String siteUserId) throws SQLException;
+
 	public List<SimpleUserRelationBean> getUserRelationPageList(String siteUserId, int pageNum, int pageSize)
 			throws SQLException;
 
@@ -0,0 +1,109 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.akaxin.common.logs.LogCreater;
+import com.akaxin.common.logs.LogUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * <pre>
+ * 存储层缓存注册表
+ * 		1.统一创建有界缓存（按数量或权重限制，LRU淘汰，可选写入后过期，记录命中/未命中/淘汰次数）
+ * 		2.每分钟输出一次各缓存的统计信息到storageCache日志
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-18 10:12:46
+ */
+public class CacheRegistry {
+	private static final Logger statsLogger = LogCreater.createTimeLogger("storageCache");
+	private static final Map<String, Cache<?, ?>> caches = new ConcurrentHashMap<String, Cache<?, ?>>();
+
+	static {
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "storage-cache-stats");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}).scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				for (Map.Entry<String, Cache<?, ?>> entry : caches.entrySet()) {
+					LogUtils.info(statsLogger, "cache {}", getStats(entry.getKey()));
+				}
+			}
+
+		}, 60, 60, TimeUnit.SECONDS);
+	}
+
+	private CacheRegistry() {
+	}
+
+	/**
+	 * 创建并注册一个最多maximumSize个key的缓存
+	 */
+	public static <K, V> Cache<K, V> newCache(String name, long maximumSize) {
+		Cache<K, V> cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+		caches.put(name, cache);
+		return cache;
+	}
+
+	/**
+	 * 创建并注册一个最多maximumSize个key，写入expireSeconds秒后过期的缓存
+	 */
+	public static <K, V> Cache<K, V> newCache(String name, long maximumSize, long expireSeconds) {
+		Cache<K, V> cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(expireSeconds, TimeUnit.SECONDS).recordStats().build();
+		caches.put(name, cache);
+		return cache;
+	}
+
+	/**
+	 * 创建并注册一个按权重（如字节数）限制大小的缓存，总权重不超过maximumWeight
+	 */
+	public static <K, V> Cache<K, V> newWeightedCache(String name, long maximumWeight, Weigher<K, V> weigher) {
+		Cache<K, V> cache = CacheBuilder.newBuilder().maximumWeight(maximumWeight).weigher(weigher).recordStats()
+				.build();
+		caches.put(name, cache);
+		return cache;
+	}
+
+	public static String getStats(String name) {
+		Cache<?, ?> cache = caches.get(name);
+		if (cache == null) {
+			return name + " not found";
+		}
+		CacheStats stats = cache.stats();
+		return name + " size=" + cache.size() + " hit=" + stats.hitCount() + " miss=" + stats.missCount()
+				+ " hitRate=" + String.format("%.4f", stats.hitRate()) + " eviction=" + stats.evictionCount();
+	}
+}
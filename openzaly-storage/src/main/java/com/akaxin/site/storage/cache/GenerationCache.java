@@ -0,0 +1,108 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.cache;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.cache.Cache;
+
+/**
+ * <pre>
+ * 防止回填旧值的缓存（读库回填与写库失效并发时）
+ * 		问题：读线程未命中 → 查库得到旧值 → 写线程提交并失效 → 读线程put旧值，旧值会一直留在缓存中
+ * 		（guava在加载过程中invalidate不会取消加载，cache.get(key, loader)同样有这个问题）
+ * 		做法：key按hash分段，每段一个版本号
+ * 			1.写库提交后先增加版本号再失效
+ * 			2.读库前记下版本号，put之后再检查一次，版本号变了说明期间有写提交，把刚put的值失效
+ * 		底层缓存仍应设置写入后过期，作为兜底
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-18 10:12:46
+ */
+public class GenerationCache<K, V> {
+	private static final int STRIPES = 256;
+
+	public interface Loader<V> {
+		/**
+		 * 查库，返回null时不缓存
+		 */
+		V load() throws SQLException;
+	}
+
+	private final Cache<K, V> cache;
+	private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+	public GenerationCache(Cache<K, V> cache) {
+		this.cache = cache;
+	}
+
+	public V get(K key, Loader<V> loader) throws SQLException {
+		V value = cache.getIfPresent(key);
+		if (value != null) {
+			return value;
+		}
+		long generation = generation(key);
+		value = loader.load();
+		if (value != null) {
+			put(key, value, generation);
+		}
+		return value;
+	}
+
+	public V getIfPresent(K key) {
+		return cache.getIfPresent(key);
+	}
+
+	public Map<K, V> getAllPresent(Iterable<? extends K> keys) {
+		return cache.getAllPresent(keys);
+	}
+
+	/**
+	 * 批量查库前记下每个key的版本号，查到后通过put(key, value, generation)回填
+	 */
+	public long generation(K key) {
+		return generations.get(stripe(key));
+	}
+
+	public void put(K key, V value, long generation) {
+		cache.put(key, value);
+		if (generations.get(stripe(key)) != generation) {
+			cache.invalidate(key);
+		}
+	}
+
+	/**
+	 * 写库提交后调用
+	 */
+	public void invalidate(K key) {
+		generations.incrementAndGet(stripe(key));
+		cache.invalidate(key);
+	}
+
+	public void invalidateAll(Iterable<? extends K> keys) {
+		for (K key : keys) {
+			invalidate(key);
+		}
+	}
+
+	private int stripe(K key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (STRIPES - 1);
+	}
+}
@@ -18,29 +18,56 @@ package com.akaxin.site.storage.service;
 import java.sql.SQLException;
 import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.akaxin.site.storage.api.IUserDeviceDao;
 import com.akaxin.site.storage.bean.UserDeviceBean;
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.akaxin.site.storage.cache.GenerationCache;
 import com.akaxin.site.storage.sqlite.SQLiteUserDeviceDao;
 
 /**
+ * <pre>
+ * 用户设备存储服务
+ * 		userToken（用户最近活跃设备的token，push时使用）使用有界缓存，设备新增、更新以及活跃时间变化时失效
+ * 		回填通过GenerationCache，避免换设备登录时把旧设备的token放回缓存
+ * 		缓存大小：site.cache.user.size（用户数量），写入后site.cache.user.ttl秒过期
+ * </pre>
+ * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2017-12-14 18:03:37
  */
 public class DeviceDaoService implements IUserDeviceDao {
+	private static final int USER_CACHE_SIZE = Integer.getInteger("site.cache.user.size", 50000);
+	private static final long USER_CACHE_TTL = Long.getLong("site.cache.user.ttl", 300);
+	private static final GenerationCache<String, String> userTokenCache = new GenerationCache<String, String>(
+			CacheRegistry.<String, String>newCache("userToken", USER_CACHE_SIZE, USER_CACHE_TTL));
 
 	@Override
 	public boolean saveUserDevice(UserDeviceBean bean) throws SQLException {
-		return SQLiteUserDeviceDao.getInstance().save(bean);
+		try {
+			return SQLiteUserDeviceDao.getInstance().save(bean);
+		} finally {
+			userTokenCache.invalidate(bean.getSiteUserId());
+		}
 	}
 
 	@Override
 	public boolean updateUserDevice(UserDeviceBean bean) throws SQLException {
-		return SQLiteUserDeviceDao.getInstance().update(bean);
+		try {
+			return SQLiteUserDeviceDao.getInstance().update(bean);
+		} finally {
+			userTokenCache.invalidate(bean.getSiteUserId());
+		}
 	}
 
 	@Override
 	public boolean updateActiveTime(String siteUserId, String deviceId) throws SQLException {
-		return SQLiteUserDeviceDao.getInstance().updateActiveTime(siteUserId, deviceId);
+		try {
+			return SQLiteUserDeviceDao.getInstance().updateActiveTime(siteUserId, deviceId);
+		} finally {
+			userTokenCache.invalidate(siteUserId);
+		}
 	}
 
 	@Override
@@ -72,8 +99,16 @@ public class DeviceDaoService implements IUserDeviceDao {
 	}
 
 	@Override
-	public String getUserToken(String siteUserId) throws SQLException {
-		return SQLiteUserDeviceDao.getInstance().queryUserToken(siteUserId);
+	public String getUserToken(final String siteUserId) throws SQLException {
+		return userTokenCache.get(siteUserId, new GenerationCache.Loader<String>() {
+
+			@Override
+			public String load() throws SQLException {
+				String userToken = SQLiteUserDeviceDao.getInstance().queryUserToken(siteUserId);
+				return StringUtils.isNotEmpty(userToken) ? userToken : null;
+			}
+
+		});
 	}
 
 }
\ No newline at end of file
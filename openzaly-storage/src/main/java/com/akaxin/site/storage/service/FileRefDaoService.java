@@ -0,0 +1,54 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.service;
+
+import java.sql.SQLException;
+
+import com.akaxin.site.storage.api.IFileRefDao;
+import com.akaxin.site.storage.sqlite.SQLiteFileRefDao;
+
+/**
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-21 15:14:02
+ */
+public class FileRefDaoService implements IFileRefDao {
+
+	@Override
+	public int addFileRef(String fileId, long fileSize, int fileType) throws SQLException {
+		return SQLiteFileRefDao.getInstance().addFileRef(fileId, fileSize, fileType);
+	}
+
+	@Override
+	public int releaseFileRef(String fileId) throws SQLException {
+		return SQLiteFileRefDao.getInstance().releaseFileRef(fileId);
+	}
+
+	@Override
+	public int getFileRef(String fileId) throws SQLException {
+		return SQLiteFileRefDao.getInstance().queryFileRef(fileId);
+	}
+
+	@Override
+	public int getFileType(String fileId) throws SQLException {
+		return SQLiteFileRefDao.getInstance().queryFileType(fileId);
+	}
+
+	@Override
+	public boolean updateFileType(String fileId, int fileType) throws SQLException {
+		return SQLiteFileRefDao.getInstance().updateFileType(fileId, fileType);
+	}
+
+}
@@ -19,19 +19,39 @@ import java.sql.SQLException;
 import java.util.List;
 
 import com.akaxin.site.storage.api.IGroupDao;
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.akaxin.site.storage.cache.GenerationCache;
 import com.akaxin.site.storage.bean.GroupMemberBean;
 import com.akaxin.site.storage.bean.GroupProfileBean;
 import com.akaxin.site.storage.bean.SimpleGroupBean;
 import com.akaxin.site.storage.bean.SimpleUserBean;
 import com.akaxin.site.storage.sqlite.SQLiteGroupProfileDao;
 import com.akaxin.site.storage.sqlite.SQLiteUserGroupDao;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 /**
+ * <pre>
+ * 群相关存储服务
+ * 		群成员id、用户所在群id、群资料使用有界缓存，成员变更/群资料变更提交后失效
+ * 		通过GenerationCache回填，避免并发查库把变更前的成员集合写回缓存（影响群消息鉴权）
+ * 		缓存大小：site.cache.group.size（群数量）、site.cache.user.groups.size（用户数量），写入后site.cache.group.ttl秒过期
+ * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:11:41
  */
 public class GroupDaoService implements IGroupDao {
+	private static final int GROUP_CACHE_SIZE = Integer.getInteger("site.cache.group.size", 10000);
+	private static final int USER_GROUPS_CACHE_SIZE = Integer.getInteger("site.cache.user.groups.size", 50000);
+	private static final long GROUP_CACHE_TTL = Long.getLong("site.cache.group.ttl", 300);
+	private static final GenerationCache<String, ImmutableSet<String>> groupMembersCache = new GenerationCache<String, ImmutableSet<String>>(
+			CacheRegistry.<String, ImmutableSet<String>>newCache("groupMembers", GROUP_CACHE_SIZE, GROUP_CACHE_TTL));
+	private static final GenerationCache<String, ImmutableList<String>> userGroupsCache = new GenerationCache<String, ImmutableList<String>>(
+			CacheRegistry.<String, ImmutableList<String>>newCache("userGroups", USER_GROUPS_CACHE_SIZE,
+					GROUP_CACHE_TTL));
+	private static final GenerationCache<String, GroupProfileBean> groupProfileCache = new GenerationCache<String, GroupProfileBean>(
+			CacheRegistry.<String, GroupProfileBean>newCache("groupProfile", GROUP_CACHE_SIZE, GROUP_CACHE_TTL));
 
 	@Override
 	public List<SimpleGroupBean> getGroupList(int pageNum, int pageSize) throws SQLException {
@@ -50,7 +70,22 @@ public class GroupDaoService implements IGroupDao {
 
 	@Override
 	public List<String> getGroupMembersId(String groupId) throws SQLException {
-		return SQLiteUserGroupDao.getInstance().queryGroupMembersId(groupId);
+		return getGroupMembers(groupId).asList();
+	}
+
+	@Override
+	public boolean isGroupMember(String siteUserId, String groupId) throws SQLException {
+		return getGroupMembers(groupId).contains(siteUserId);
+	}
+
+	private ImmutableSet<String> getGroupMembers(final String groupId) throws SQLException {
+		return groupMembersCache.get(groupId, new GenerationCache.Loader<ImmutableSet<String>>() {
+
+			@Override
+			public ImmutableSet<String> load() throws SQLException {
+				return ImmutableSet.copyOf(SQLiteUserGroupDao.getInstance().queryGroupMembersId(groupId));
+			}
+		});
 	}
 
 	@Override
@@ -77,27 +112,53 @@ public class GroupDaoService implements IGroupDao {
 
 	@Override
 	public boolean addGroupMember(String siteUserId, String groupId, int status) throws SQLException {
-		return SQLiteUserGroupDao.getInstance().addGroupMember(siteUserId, groupId, status);
+		try {
+			return SQLiteUserGroupDao.getInstance().addGroupMember(siteUserId, groupId, status);
+		} finally {
+			groupMembersCache.invalidate(groupId);
+			userGroupsCache.invalidate(siteUserId);
+		}
 	}
 
 	@Override
 	public boolean deleteGroupProfile(String groupId) throws SQLException {
-		return SQLiteGroupProfileDao.getInstance().deleteGroupProfile(groupId);
+		try {
+			return SQLiteGroupProfileDao.getInstance().deleteGroupProfile(groupId);
+		} finally {
+			groupProfileCache.invalidate(groupId);
+		}
 	}
 
 	@Override
 	public int updateGroupProfile(GroupProfileBean bean) throws SQLException {
-		return SQLiteGroupProfileDao.getInstance().updateGroupProfile(bean);
+		try {
+			return SQLiteGroupProfileDao.getInstance().updateGroupProfile(bean);
+		} finally {
+			groupProfileCache.invalidate(bean.getGroupId());
+		}
 	}
 
 	@Override
 	public int updateGroupOwner(String siteUserId, String groupId) throws SQLException {
-		return SQLiteGroupProfileDao.getInstance().updateGroupOwer(siteUserId, groupId);
+		try {
+			return SQLiteGroupProfileDao.getInstance().updateGroupOwer(siteUserId, groupId);
+		} finally {
+			groupProfileCache.invalidate(groupId);
+		}
 	}
 
+	/**
+	 * 返回的bean为缓存对象，调用方不要修改
+	 */
 	@Override
-	public GroupProfileBean queryGroupProfile(String groupId) throws SQLException {
-		return SQLiteGroupProfileDao.getInstance().queryGroupProfile(groupId);
+	public GroupProfileBean queryGroupProfile(final String groupId) throws SQLException {
+		return groupProfileCache.get(groupId, new GenerationCache.Loader<GroupProfileBean>() {
+
+			@Override
+			public GroupProfileBean load() throws SQLException {
+				return SQLiteGroupProfileDao.getInstance().queryGroupProfile(groupId);
+			}
+		});
 	}
 
 	@Override
@@ -111,13 +172,24 @@ public class GroupDaoService implements IGroupDao {
 	}
 
 	@Override
-	public List<String> getUserGroupsId(String userId) throws SQLException {
-		return SQLiteUserGroupDao.getInstance().queryUserGroupsId(userId);
+	public List<String> getUserGroupsId(final String userId) throws SQLException {
+		return userGroupsCache.get(userId, new GenerationCache.Loader<ImmutableList<String>>() {
+
+			@Override
+			public ImmutableList<String> load() throws SQLException {
+				return ImmutableList.copyOf(SQLiteUserGroupDao.getInstance().queryUserGroupsId(userId));
+			}
+		});
 	}
 
 	@Override
 	public boolean deleteGroupMember(String groupId, List<String> userIds) {
-		return SQLiteUserGroupDao.getInstance().deleteGroupMember(groupId, userIds);
+		try {
+			return SQLiteUserGroupDao.getInstance().deleteGroupMember(groupId, userIds);
+		} finally {
+			groupMembersCache.invalidate(groupId);
+			userGroupsCache.invalidateAll(userIds);
+		}
 	}
 
 }
@@ -17,61 +17,103 @@ package com.akaxin.site.storage.service;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 import com.akaxin.site.storage.api.IMessageDao;
 import com.akaxin.site.storage.bean.GroupMessageBean;
 import com.akaxin.site.storage.bean.U2MessageBean;
 import com.akaxin.site.storage.sqlite.SQLiteGroupMessageDao;
+import com.akaxin.site.storage.sqlite.SQLiteMessageBatchWriter;
+import com.akaxin.site.storage.sqlite.SQLiteMessagePointerBuffer;
 import com.akaxin.site.storage.sqlite.SQLiteU2MessageDao;
 
 /**
+ * pool模式下消息写入走组提交，调用返回时消息所在批次已经提交
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:11:33
  */
 public class MessageDaoService implements IMessageDao {
+	private SQLiteMessagePointerBuffer pointerBuffer = SQLiteMessagePointerBuffer.getInstance();
 
 	@Override
 	public boolean saveU2Message(U2MessageBean u2Bean) throws SQLException {
+		if (SQLiteMessageBatchWriter.getInstance().isEnabled()) {
+			return SQLiteMessageBatchWriter.getInstance().saveU2Message(u2Bean);
+		}
 		return SQLiteU2MessageDao.getInstance().saveU2Message(u2Bean);
 	}
 
 	@Override
 	public boolean updateU2Pointer(String id, String deviceId, long finish) throws SQLException {
+		if (pointerBuffer.isEnabled()) {
+			pointerBuffer.updateU2Pointer(id, deviceId, finish);
+			return true;
+		}
 		return SQLiteU2MessageDao.getInstance().updateU2MessagePointer(id, deviceId, finish);
 	}
 
 	@Override
 	public List<U2MessageBean> queryU2Message(String id, String deviceId, long start, long limit) throws SQLException {
+		if (pointerBuffer.isEnabled()) {
+			start = Math.max(start, pointerBuffer.getU2Pointer(id, deviceId));
+		}
 		return SQLiteU2MessageDao.getInstance().getU2Message(id, deviceId, start, limit);
 	}
 
 	@Override
 	public long queryU2Pointer(String userId, String deviceId) throws SQLException {
+		if (pointerBuffer.isEnabled()) {
+			long pointer = pointerBuffer.getU2Pointer(userId, deviceId);
+			return pointer == 0 ? pointerBuffer.getMaxU2Pointer(userId) : pointer;
+		}
 		return SQLiteU2MessageDao.getInstance().queryU2MessagePointer(userId, deviceId);
 	}
 
 	@Override
 	public long queryMaxU2Pointer(String userId) throws SQLException {
+		if (pointerBuffer.isEnabled()) {
+			return pointerBuffer.getMaxU2Pointer(userId);
+		}
 		return SQLiteU2MessageDao.getInstance().queryMaxU2MessagePointer(userId);
 	}
 
 	@Override
 	public boolean saveGroupMessage(GroupMessageBean gmsgBean) throws SQLException {
+		if (SQLiteMessageBatchWriter.getInstance().isEnabled()) {
+			return SQLiteMessageBatchWriter.getInstance().saveGroupMessage(gmsgBean);
+		}
 		return SQLiteGroupMessageDao.getInstance().saveGroupMessage(gmsgBean);
 	}
 
 	@Override
 	public boolean updateGroupPointer(String gid, String userId, String deviceId, long finish) throws SQLException {
+		if (pointerBuffer.isEnabled()) {
+			pointerBuffer.updateGroupPointer(gid, userId, deviceId, finish);
+			return true;
+		}
 		return SQLiteGroupMessageDao.getInstance().updateGroupMessagePointer(gid, userId, deviceId, finish);
 	}
 
 	@Override
 	public List<GroupMessageBean> queryGroupMessage(String groupId, String userId, String deviceId, long start)
 			throws SQLException {
+		if (pointerBuffer.isEnabled()) {
+			start = Math.max(start, pointerBuffer.getGroupPointer(groupId, userId, deviceId));
+		}
 		return SQLiteGroupMessageDao.getInstance().queryGroupMessage(groupId, userId, deviceId, start);
 	}
 
+	@Override
+	public List<GroupMessageBean> queryUpdatedGroupMessage(String userId, String deviceId,
+			Map<String, Long> groupPointers, long afterId, int limit) throws SQLException {
+		if (pointerBuffer.isEnabled()) {
+			groupPointers = pointerBuffer.mergeGroupPointers(userId, deviceId, groupPointers);
+		}
+		return SQLiteGroupMessageDao.getInstance().queryUpdatedGroupMessage(userId, deviceId, groupPointers, afterId,
+				limit);
+	}
+
 	@Override
 	public long queryMaxGroupPointer(String groupId) throws SQLException {
 		return SQLiteGroupMessageDao.getInstance().queryMaxGroupPointer(groupId);
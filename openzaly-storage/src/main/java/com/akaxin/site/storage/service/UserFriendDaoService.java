@@ -20,19 +20,41 @@ import java.util.List;
 
 import com.akaxin.site.storage.api.IUserFriendDao;
 import com.akaxin.site.storage.bean.SimpleUserBean;
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.akaxin.site.storage.cache.GenerationCache;
 import com.akaxin.site.storage.sqlite.SQLiteUserFriendDao;
 import com.akaxin.site.storage.sqlite.SQLiteUserProfileDao;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /**
+ * <pre>
+ * 用户好友关系存储服务
+ * 		每个用户关注的用户id集合使用有界缓存，id字符串经过intern在各集合间共享
+ * 		关系新增/更新/删除提交后失效该用户的集合
+ * 		通过GenerationCache回填，避免并发查库把变更前的集合写回缓存（影响二人消息的好友校验）
+ * 		缓存大小：site.cache.user.friends.size（用户数量），写入后site.cache.user.friends.ttl秒过期
+ * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:11:10
  */
 public class UserFriendDaoService implements IUserFriendDao {
+	private static final int USER_FRIENDS_CACHE_SIZE = Integer.getInteger("site.cache.user.friends.size", 50000);
+	private static final long USER_FRIENDS_CACHE_TTL = Long.getLong("site.cache.user.friends.ttl", 300);
+	private static final GenerationCache<String, ImmutableSet<String>> friendIdsCache = new GenerationCache<String, ImmutableSet<String>>(
+			CacheRegistry.<String, ImmutableSet<String>>newCache("userFriendIds", USER_FRIENDS_CACHE_SIZE,
+					USER_FRIENDS_CACHE_TTL));
+	private static final Interner<String> userIdInterner = Interners.newWeakInterner();
 
 	@Override
 	public boolean saveRelation(String siteUserId, String siteFriendId, int relation) throws SQLException {
-		return SQLiteUserFriendDao.getInstance().saveRelation(siteUserId, siteFriendId, relation);
+		try {
+			return SQLiteUserFriendDao.getInstance().saveRelation(siteUserId, siteFriendId, relation);
+		} finally {
+			friendIdsCache.invalidate(siteUserId);
+		}
 	}
 
 	@Override
@@ -42,14 +64,41 @@ public class UserFriendDaoService implements IUserFriendDao {
 
 	@Override
 	public boolean updateRelation(String siteUserId, String siteFriendId, int relation) throws SQLException {
-		return SQLiteUserFriendDao.getInstance().updateRelation(siteUserId, siteFriendId, relation);
+		try {
+			return SQLiteUserFriendDao.getInstance().updateRelation(siteUserId, siteFriendId, relation);
+		} finally {
+			friendIdsCache.invalidate(siteUserId);
+		}
 	}
 
 	@Override
 	public boolean deleteRelation(String siteUserId, String siteFriendId) throws SQLException {
-		return SQLiteUserFriendDao.getInstance().deleteRelation(siteUserId, siteFriendId);
+		try {
+			return SQLiteUserFriendDao.getInstance().deleteRelation(siteUserId, siteFriendId);
+		} finally {
+			friendIdsCache.invalidate(siteUserId);
+		}
 	}
-	
+
+	@Override
+	public boolean isFriend(String siteUserId, String siteFriendId) throws SQLException {
+		return getFriendIds(siteUserId).contains(siteFriendId) && getFriendIds(siteFriendId).contains(siteUserId);
+	}
+
+	private ImmutableSet<String> getFriendIds(final String siteUserId) throws SQLException {
+		return friendIdsCache.get(userIdInterner.intern(siteUserId), new GenerationCache.Loader<ImmutableSet<String>>() {
+
+			@Override
+			public ImmutableSet<String> load() throws SQLException {
+				ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+				for (String friendId : SQLiteUserFriendDao.getInstance().queryFriendIds(siteUserId)) {
+					builder.add(userIdInterner.intern(friendId));
+				}
+				return builder.build();
+			}
+		});
+	}
+
 	@Override
 	public List<SimpleUserBean> getUserFriends(String userId) throws SQLException {
 		return SQLiteUserProfileDao.getInstance().queryUserFriends(userId);
@@ -16,20 +16,46 @@
 package com.akaxin.site.storage.service;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
 
 import com.akaxin.site.storage.api.IUserProfileDao;
 import com.akaxin.site.storage.bean.SimpleUserBean;
 import com.akaxin.site.storage.bean.SimpleUserRelationBean;
 import com.akaxin.site.storage.bean.UserProfileBean;
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.akaxin.site.storage.cache.GenerationCache;
 import com.akaxin.site.storage.sqlite.SQLiteUserProfileDao;
+import com.google.common.cache.Cache;
 
 /**
+ * <pre>
+ * 用户资料存储服务
+ * 		用户简要资料（含用户状态）使用有界的读穿透缓存，资料或状态更新时失效；不存在的用户不缓存
+ * 		回填通过GenerationCache，避免与更新并发时把旧资料放回缓存；缓存中的对象不直接返回，返回副本
+ * 		批量查询时未命中的用户合并成IN查询，每次最多PROFILE_BATCH_SIZE个
+ * 		globalUserId注册后不会变化，单独缓存
+ * 		缓存大小：site.cache.user.size（用户数量），写入后site.cache.user.ttl秒过期
+ * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:11:03
  */
 public class UserProfileDaoService implements IUserProfileDao {
+	private static final int USER_CACHE_SIZE = Integer.getInteger("site.cache.user.size", 50000);
+	private static final long USER_CACHE_TTL = Long.getLong("site.cache.user.ttl", 300);
+	private static final int PROFILE_BATCH_SIZE = 500;
+	private static final GenerationCache<String, SimpleUserBean> profileCache = new GenerationCache<String, SimpleUserBean>(
+			CacheRegistry.<String, SimpleUserBean>newCache("userProfile", USER_CACHE_SIZE, USER_CACHE_TTL));
+	private static final Cache<String, String> globalUserIdCache = CacheRegistry.newCache("userGlobalId",
+			USER_CACHE_SIZE, USER_CACHE_TTL);
 
 	@Override
 	public boolean saveUserProfile(UserProfileBean bean) throws SQLException {
@@ -43,12 +69,54 @@ public class UserProfileDaoService implements IUserProfileDao {
 
 	@Override
 	public String getGlobalUserId(String siteUserId) throws SQLException {
-		return SQLiteUserProfileDao.getInstance().queryGlobalUserId(siteUserId);
+		String globalUserId = globalUserIdCache.getIfPresent(siteUserId);
+		if (globalUserId == null) {
+			globalUserId = SQLiteUserProfileDao.getInstance().queryGlobalUserId(siteUserId);
+			if (StringUtils.isNotEmpty(globalUserId)) {
+				globalUserIdCache.put(siteUserId, globalUserId);
+			}
+		}
+		return globalUserId;
+	}
+
+	@Override
+	public SimpleUserBean getSimpleProfileById(final String userId) throws SQLException {
+		SimpleUserBean bean = profileCache.get(userId, new GenerationCache.Loader<SimpleUserBean>() {
+
+			@Override
+			public SimpleUserBean load() throws SQLException {
+				SimpleUserBean bean = SQLiteUserProfileDao.getInstance().querySimpleProfileById(userId);
+				return StringUtils.isNotEmpty(bean.getUserId()) ? bean : null;
+			}
+
+		});
+		return bean == null ? new SimpleUserBean() : copyOf(bean);
 	}
-	
+
 	@Override
-	public SimpleUserBean getSimpleProfileById(String userId) throws SQLException {
-		return SQLiteUserProfileDao.getInstance().querySimpleProfileById(userId);
+	public Map<String, SimpleUserBean> getSimpleProfiles(Collection<String> userIds) throws SQLException {
+		Map<String, SimpleUserBean> profiles = new HashMap<String, SimpleUserBean>();
+		for (SimpleUserBean bean : profileCache.getAllPresent(userIds).values()) {
+			profiles.put(bean.getUserId(), copyOf(bean));
+		}
+		Set<String> missIdSet = new LinkedHashSet<String>(userIds);
+		missIdSet.removeAll(profiles.keySet());
+		List<String> missIds = new ArrayList<String>(missIdSet);
+		for (int from = 0; from < missIds.size(); from += PROFILE_BATCH_SIZE) {
+			List<String> batchIds = missIds.subList(from, Math.min(from + PROFILE_BATCH_SIZE, missIds.size()));
+			Map<String, Long> generations = new HashMap<String, Long>();
+			for (String userId : batchIds) {
+				generations.put(userId, profileCache.generation(userId));
+			}
+			for (SimpleUserBean bean : SQLiteUserProfileDao.getInstance().querySimpleProfilesById(batchIds)) {
+				Long generation = generations.get(bean.getUserId());
+				if (generation != null) {
+					profileCache.put(bean.getUserId(), bean, generation);
+				}
+				profiles.put(bean.getUserId(), copyOf(bean));
+			}
+		}
+		return profiles;
 	}
 
 	@Override
@@ -78,12 +146,38 @@ public class UserProfileDaoService implements IUserProfileDao {
 
 	@Override
 	public int updateUserProfile(UserProfileBean userBean) throws SQLException {
-		return SQLiteUserProfileDao.getInstance().updateUserProfile(userBean);
+		try {
+			return SQLiteUserProfileDao.getInstance().updateUserProfile(userBean);
+		} finally {
+			profileCache.invalidate(userBean.getSiteUserId());
+		}
 	}
 
 	@Override
 	public int updateUserStatus(String siteUserId, int status) throws SQLException {
-		return SQLiteUserProfileDao.getInstance().updateUserStatus(siteUserId, status);
+		try {
+			return SQLiteUserProfileDao.getInstance().updateUserStatus(siteUserId, status);
+		} finally {
+			profileCache.invalidate(siteUserId);
+		}
+	}
+
+	@Override
+	public int getUserStatus(String siteUserId) throws SQLException {
+		SimpleUserBean bean = getSimpleProfileById(siteUserId);
+		if (bean == null || StringUtils.isEmpty(bean.getUserId())) {
+			return -1;
+		}
+		return bean.getUserStatus();
+	}
+
+	private static SimpleUserBean copyOf(SimpleUserBean bean) {
+		SimpleUserBean copy = new SimpleUserBean();
+		copy.setUserId(bean.getUserId());
+		copy.setUserName(bean.getUserName());
+		copy.setUserPhoto(bean.getUserPhoto());
+		copy.setUserStatus(bean.getUserStatus());
+		return copy;
 	}
 
 	@Override
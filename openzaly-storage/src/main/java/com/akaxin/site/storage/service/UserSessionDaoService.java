@@ -18,26 +18,73 @@ package com.akaxin.site.storage.service;
 import java.sql.SQLException;
 import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.akaxin.site.storage.api.IUserSessionDao;
 import com.akaxin.site.storage.bean.SimpleAuthBean;
 import com.akaxin.site.storage.bean.UserSessionBean;
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.akaxin.site.storage.cache.GenerationCache;
 import com.akaxin.site.storage.sqlite.SQLiteUserSessionDao;
 
 /**
+ * <pre>
+ * 用户session存储服务
+ * 		1.sessionId到认证信息的缓存，写入site.cache.session.ttl秒后过期
+ * 		2.不存在的sessionId缓存site.cache.session.negative.ttl秒，抵御无效session请求，0表示不缓存
+ * 		3.登陆（保存session）与删除session时，失效该用户设备对应的旧sessionId
+ * 		4.两个缓存都通过GenerationCache回填，失效时增加版本号，避免查库与删除并发时把已删除的session放回缓存
+ * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
  * @since 2018-01-31 12:08:41
  */
 public class UserSessionDaoService implements IUserSessionDao {
+	private static final int SESSION_CACHE_SIZE = Integer.getInteger("site.cache.session.size", 50000);
+	private static final long SESSION_TTL = Long.getLong("site.cache.session.ttl", 300);
+	private static final long NEGATIVE_SESSION_TTL = Long.getLong("site.cache.session.negative.ttl", 10);
+	private static final GenerationCache<String, SimpleAuthBean> sessionCache = new GenerationCache<String, SimpleAuthBean>(
+			CacheRegistry.<String, SimpleAuthBean>newCache("userSession", SESSION_CACHE_SIZE, SESSION_TTL));
+	private static final GenerationCache<String, Boolean> invalidSessionCache = new GenerationCache<String, Boolean>(
+			CacheRegistry.<String, Boolean>newCache("invalidUserSession", SESSION_CACHE_SIZE, NEGATIVE_SESSION_TTL));
 
 	@Override
 	public boolean saveUserSession(UserSessionBean bean) throws SQLException {
-		return SQLiteUserSessionDao.getInstance().saveIfAbsent(bean);
+		String oldSessionId = SQLiteUserSessionDao.getInstance().querySessionId(bean.getSiteUserId(),
+				bean.getDeviceId());
+		try {
+			return SQLiteUserSessionDao.getInstance().saveIfAbsent(bean);
+		} finally {
+			invalidateSession(oldSessionId);
+			invalidateSession(bean.getSessionId());
+		}
 	}
 
 	@Override
-	public SimpleAuthBean getUserSession(String sessionId) throws SQLException {
-		return SQLiteUserSessionDao.getInstance().queryAuthSession(sessionId);
+	public SimpleAuthBean getUserSession(final String sessionId) throws SQLException {
+		if (StringUtils.isEmpty(sessionId)) {
+			return new SimpleAuthBean();
+		}
+		if (invalidSessionCache.getIfPresent(sessionId) != null) {
+			return new SimpleAuthBean();
+		}
+		long negativeGeneration = invalidSessionCache.generation(sessionId);
+		SimpleAuthBean authBean = sessionCache.get(sessionId, new GenerationCache.Loader<SimpleAuthBean>() {
+
+			@Override
+			public SimpleAuthBean load() throws SQLException {
+				SimpleAuthBean authBean = SQLiteUserSessionDao.getInstance().queryAuthSession(sessionId);
+				return StringUtils.isNotEmpty(authBean.getSiteUserId()) ? authBean : null;
+			}
+
+		});
+		if (authBean != null) {
+			return authBean;
+		}
+		if (NEGATIVE_SESSION_TTL > 0) {
+			invalidSessionCache.put(sessionId, Boolean.TRUE, negativeGeneration);
+		}
+		return new SimpleAuthBean();
 	}
 
 	@Override
@@ -57,7 +104,19 @@ public class UserSessionDaoService implements IUserSessionDao {
 
 	@Override
 	public boolean deleteUserSession(String siteUserId, String deviceId) throws SQLException {
-		return SQLiteUserSessionDao.getInstance().deleteSession(siteUserId, deviceId);
+		String sessionId = SQLiteUserSessionDao.getInstance().querySessionId(siteUserId, deviceId);
+		try {
+			return SQLiteUserSessionDao.getInstance().deleteSession(siteUserId, deviceId);
+		} finally {
+			invalidateSession(sessionId);
+		}
+	}
+
+	private void invalidateSession(String sessionId) {
+		if (sessionId != null) {
+			sessionCache.invalidate(sessionId);
+			invalidSessionCache.invalidate(sessionId);
+		}
 	}
 
 }
@@ -0,0 +1,154 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.logs.LogUtils;
+import com.akaxin.site.storage.sqlite.manager.SQLiteJDBCManager;
+import com.akaxin.site.storage.sqlite.sql.SQLConst;
+
+/**
+ * 文件引用计数表(db_table:site_file_ref)相关操作
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-21 15:16:45
+ */
+public class SQLiteFileRefDao {
+	private static final Logger logger = LoggerFactory.getLogger(SQLiteFileRefDao.class);
+	private static final int SQLITE_CONSTRAINT = 19;
+	private final String FILE_REF_TABLE = SQLConst.SITE_FILE_REF;
+
+	public static SQLiteFileRefDao getInstance() {
+		return SingletonHolder.instance;
+	}
+
+	static class SingletonHolder {
+		private static SQLiteFileRefDao instance = new SQLiteFileRefDao();
+	}
+
+	public int addFileRef(String fileId, long fileSize, int fileType) throws SQLException {
+		if (updateFileRef(fileId, 1) == 0) {
+			try {
+				long startTime = System.currentTimeMillis();
+				String sql = "INSERT INTO " + FILE_REF_TABLE
+						+ "(file_id,ref_count,file_size,file_type,create_time) VALUES(?,1,?,?,?);";
+				PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+				preStatement.setString(1, fileId);
+				preStatement.setLong(2, fileSize);
+				preStatement.setInt(3, fileType);
+				preStatement.setLong(4, System.currentTimeMillis());
+				int result = preStatement.executeUpdate();
+				long endTime = System.currentTimeMillis();
+				LogUtils.printDBLog(logger, endTime - startTime, result, sql + fileId + "," + fileSize + "," + fileType);
+			} catch (SQLException e) {
+				if (!isConstraintViolation(e)) {
+					throw e;
+				}
+				// 并发插入时file_id唯一约束冲突，记录已经存在，改为更新
+				logger.warn("insert file ref conflict, retry update fileId=" + fileId, e);
+				if (updateFileRef(fileId, 1) == 0) {
+					throw new SQLException("add file ref failed fileId=" + fileId, e);
+				}
+			}
+		}
+		return queryFileRef(fileId);
+	}
+
+	public int releaseFileRef(String fileId) throws SQLException {
+		if (updateFileRef(fileId, -1) == 0) {
+			return -1;
+		}
+		int refCount = queryFileRef(fileId);
+		if (refCount <= 0) {
+			long startTime = System.currentTimeMillis();
+			String sql = "DELETE FROM " + FILE_REF_TABLE + " WHERE file_id=? AND ref_count<=0;";
+			PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+			preStatement.setString(1, fileId);
+			int result = preStatement.executeUpdate();
+			long endTime = System.currentTimeMillis();
+			LogUtils.printDBLog(logger, endTime - startTime, result, sql + fileId);
+		}
+		return refCount;
+	}
+
+	public int queryFileRef(String fileId) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		int refCount = 0;
+		String sql = "SELECT ref_count FROM " + FILE_REF_TABLE + " WHERE file_id=?;";
+		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		preStatement.setString(1, fileId);
+		ResultSet rs = preStatement.executeQuery();
+		if (rs.next()) {
+			refCount = rs.getInt(1);
+		}
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, refCount, sql + fileId);
+		return refCount;
+	}
+
+	/**
+	 * SQLITE_CONSTRAINT(19)，扩展错误码的低8位同样是19
+	 */
+	private boolean isConstraintViolation(SQLException e) {
+		return (e.getErrorCode() & 0xff) == SQLITE_CONSTRAINT;
+	}
+
+	public int queryFileType(String fileId) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		int fileType = 0;
+		String sql = "SELECT file_type FROM " + FILE_REF_TABLE + " WHERE file_id=?;";
+		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		preStatement.setString(1, fileId);
+		ResultSet rs = preStatement.executeQuery();
+		if (rs.next()) {
+			fileType = rs.getInt(1);
+		}
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, fileType, sql + fileId);
+		return fileType;
+	}
+
+	public boolean updateFileType(String fileId, int fileType) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		String sql = "UPDATE " + FILE_REF_TABLE + " SET file_type=? WHERE file_id=?;";
+		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		preStatement.setInt(1, fileType);
+		preStatement.setString(2, fileId);
+		int result = preStatement.executeUpdate();
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, result, sql + fileId + "," + fileType);
+		return result == 1;
+	}
+
+	private int updateFileRef(String fileId, int delta) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		String sql = "UPDATE " + FILE_REF_TABLE + " SET ref_count=ref_count+? WHERE file_id=? AND ref_count+?>=0;";
+		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		preStatement.setInt(1, delta);
+		preStatement.setString(2, fileId);
+		preStatement.setInt(3, delta);
+		int result = preStatement.executeUpdate();
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, result, sql + fileId + "," + delta);
+		return result;
+	}
+}
@@ -0,0 +1,128 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.logs.LogUtils;
+import com.akaxin.site.storage.sqlite.manager.SQLiteJDBCManager;
+import com.akaxin.site.storage.sqlite.sql.SQLConst;
+
+/**
+ * <pre>
+ * 群消息写扩散（site.group.storage=inbox）
+ * 		1.写群消息时，把群最新消息id写入每个群成员的inbox行（一条INSERT OR REPLACE ... SELECT完成扩散），与消息写入在同一个事务中
+ * 			single模式：所有线程共用一个连接，不能在连接上开启事务，使用AFTER INSERT触发器扩散，与INSERT语句一起原子提交
+ * 			pool模式：在写线程中与消息写入放在一个事务中执行（SQLiteGroupMessageDao、SQLiteMessageBatchWriter），不使用触发器
+ * 		2.同步时（SQLiteGroupMessageDao.queryUpdatedGroupMessage）关联inbox，先过滤掉没有新消息的群
+ * 		3.inbox为空时（新建的表或者从join模式切换过来）根据已有群消息重建，-Dsite.group.inbox.rebuild=true时强制重建；
+ * 			join模式启动时清空inbox并删除触发器，因为join模式下不做写扩散，inbox中的数据已经过期，下次切换到inbox模式时会重新构建
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-17 11:05:42
+ */
+public class SQLiteGroupInboxDao {
+	private static final Logger logger = LoggerFactory.getLogger(SQLiteGroupInboxDao.class);
+	private static final String INBOX_TABLE = SQLConst.SITE_USER_GROUP_INBOX;
+	static final String FAN_OUT_SQL = "INSERT OR REPLACE INTO " + INBOX_TABLE
+			+ "(site_user_id,site_group_id,last_msg_id) SELECT site_user_id,site_group_id,(SELECT MAX(id) FROM "
+			+ SQLConst.SITE_GROUP_MESSAGE + " WHERE site_group_id=?) FROM " + SQLConst.SITE_USER_GROUP
+			+ " WHERE site_group_id=?;";
+	private static final String REBUILD_SQL = "INSERT OR REPLACE INTO " + INBOX_TABLE
+			+ "(site_user_id,site_group_id,last_msg_id) SELECT a.site_user_id,a.site_group_id,MAX(b.id) FROM "
+			+ SQLConst.SITE_USER_GROUP + " AS a INNER JOIN " + SQLConst.SITE_GROUP_MESSAGE
+			+ " AS b ON a.site_group_id=b.site_group_id GROUP BY a.site_user_id,a.site_group_id;";
+	private static final String FAN_OUT_TRIGGER = "site_group_message_fan_out";
+	private static final String CREATE_FAN_OUT_TRIGGER_SQL = "CREATE TRIGGER IF NOT EXISTS " + FAN_OUT_TRIGGER
+			+ " AFTER INSERT ON " + SQLConst.SITE_GROUP_MESSAGE + " BEGIN INSERT OR REPLACE INTO " + INBOX_TABLE
+			+ "(site_user_id,site_group_id,last_msg_id) SELECT site_user_id,site_group_id,NEW.id FROM "
+			+ SQLConst.SITE_USER_GROUP + " WHERE site_group_id=NEW.site_group_id; END;";
+	private static final String DROP_FAN_OUT_TRIGGER_SQL = "DROP TRIGGER IF EXISTS " + FAN_OUT_TRIGGER + ";";
+	private static SQLiteGroupInboxDao instance = new SQLiteGroupInboxDao();
+
+	public static SQLiteGroupInboxDao getInstance() {
+		return instance;
+	}
+
+	public static boolean isEnabled() {
+		return SQLiteJDBCManager.isGroupInboxMode();
+	}
+
+	/**
+	 * single模式下由触发器完成扩散
+	 */
+	public void createFanOutTrigger() throws SQLException {
+		long startTime = System.currentTimeMillis();
+		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(CREATE_FAN_OUT_TRIGGER_SQL);
+		int result = pStatement.executeUpdate();
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, result, CREATE_FAN_OUT_TRIGGER_SQL);
+	}
+
+	public void dropFanOutTrigger() throws SQLException {
+		long startTime = System.currentTimeMillis();
+		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(DROP_FAN_OUT_TRIGGER_SQL);
+		int result = pStatement.executeUpdate();
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, result, DROP_FAN_OUT_TRIGGER_SQL);
+	}
+
+	static void bindFanOut(PreparedStatement pStatement, String siteGroupId) throws SQLException {
+		pStatement.setString(1, siteGroupId);
+		pStatement.setString(2, siteGroupId);
+	}
+
+	public boolean isEmpty() throws SQLException {
+		long startTime = System.currentTimeMillis();
+		String sql = "SELECT 1 FROM " + INBOX_TABLE + " LIMIT 1;";
+		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		ResultSet rs = pStatement.executeQuery();
+		boolean empty = !rs.next();
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, empty, sql);
+		return empty;
+	}
+
+	public int clear() throws SQLException {
+		long startTime = System.currentTimeMillis();
+		String sql = "DELETE FROM " + INBOX_TABLE + ";";
+		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		int result = pStatement.executeUpdate();
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, result, sql);
+		return result;
+	}
+
+	public int rebuild() throws SQLException {
+		long startTime = System.currentTimeMillis();
+		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(REBUILD_SQL);
+		int result = pStatement.executeUpdate();
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, result, REBUILD_SQL);
+		return result;
+	}
+}
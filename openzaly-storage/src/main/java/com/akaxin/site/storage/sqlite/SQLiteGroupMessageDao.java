@@ -15,17 +15,21 @@
  */
 package com.akaxin.site.storage.sqlite;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.akaxin.common.logs.LogUtils;
 import com.akaxin.site.storage.bean.GroupMessageBean;
+import com.akaxin.site.storage.sqlite.manager.SQLiteConnectionPool;
 import com.akaxin.site.storage.sqlite.manager.SQLiteJDBCManager;
 import com.akaxin.site.storage.sqlite.sql.SQLConst;
 
@@ -39,6 +43,13 @@ public class SQLiteGroupMessageDao {
 	private static final Logger logger = LoggerFactory.getLogger(SQLiteGroupMessageDao.class);
 	private final String GROUP_MESSAGE_TABLE = SQLConst.SITE_GROUP_MESSAGE;
 	private final String GROUP_POINTER_TABLE = SQLConst.SITE_GROUP_MESSAGE_POINTER;
+	static final String INSERT_GROUP_MESSAGE_SQL = "INSERT INTO " + SQLConst.SITE_GROUP_MESSAGE
+			+ "(site_group_id,msg_id,send_user_id,send_device_id,msg_type,content,msg_time) VALUES(?,?,?,?,?,?,?);";
+	static final String INSERT_GROUP_POINTER_SQL = "INSERT INTO " + SQLConst.SITE_GROUP_MESSAGE_POINTER
+			+ "(site_group_id,site_user_id,device_id,pointer) VALUES(?,?,?,?);";
+	static final String UPDATE_GROUP_POINTER_SQL = "UPDATE " + SQLConst.SITE_GROUP_MESSAGE_POINTER
+			+ " SET pointer=? WHERE site_user_id=? AND site_group_id=? AND device_id=?;";
+	private static final int MAX_CLIENT_POINTERS = 400;
 	private static SQLiteGroupMessageDao instance = new SQLiteGroupMessageDao();
 
 	public static SQLiteGroupMessageDao getInstance() {
@@ -47,9 +58,57 @@ public class SQLiteGroupMessageDao {
 
 	public boolean saveGroupMessage(GroupMessageBean gmsgBean) throws SQLException {
 		long startTime = System.currentTimeMillis();
-		String insertSql = "INSERT INTO " + GROUP_MESSAGE_TABLE
-				+ "(site_group_id,msg_id,send_user_id,send_device_id,msg_type,content,msg_time) VALUES(?,?,?,?,?,?,?);";
-		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(insertSql);
+		int insertResult;
+		SQLiteConnectionPool pool = SQLiteJDBCManager.getConnectionPool();
+		if (pool != null && SQLiteGroupInboxDao.isEnabled()) {
+			insertResult = saveAndFanOut(pool, gmsgBean);
+		} else {
+			// single模式下inbox由触发器在同一条INSERT语句中扩散
+			PreparedStatement preStatement = SQLiteJDBCManager.getConnection()
+					.prepareStatement(INSERT_GROUP_MESSAGE_SQL);
+			bindGroupMessage(preStatement, gmsgBean);
+			insertResult = preStatement.executeUpdate();
+		}
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, insertResult, INSERT_GROUP_MESSAGE_SQL);
+
+		return insertResult == 1;
+
+	}
+
+	/**
+	 * pool模式，在写线程中把消息写入与inbox扩散放在一个事务中
+	 */
+	private int saveAndFanOut(final SQLiteConnectionPool pool, final GroupMessageBean gmsgBean) throws SQLException {
+		return pool.submitWrite(new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				Connection conn = pool.getWriterConnection();
+				conn.setAutoCommit(false);
+				try {
+					PreparedStatement preStatement = pool.prepareWriterStatement(INSERT_GROUP_MESSAGE_SQL);
+					bindGroupMessage(preStatement, gmsgBean);
+					int insertResult = preStatement.executeUpdate();
+					if (insertResult == 1) {
+						PreparedStatement fanOutStatement = pool.prepareWriterStatement(SQLiteGroupInboxDao.FAN_OUT_SQL);
+						SQLiteGroupInboxDao.bindFanOut(fanOutStatement, gmsgBean.getSiteGroupId());
+						fanOutStatement.executeUpdate();
+					}
+					conn.commit();
+					return insertResult;
+				} catch (SQLException e) {
+					conn.rollback();
+					throw e;
+				} finally {
+					conn.setAutoCommit(true);
+				}
+			}
+		});
+	}
+
+	static void bindGroupMessage(PreparedStatement preStatement, GroupMessageBean gmsgBean) throws SQLException {
 		preStatement.setString(1, gmsgBean.getSiteGroupId());
 		preStatement.setString(2, gmsgBean.getMsgId());
 		preStatement.setString(3, gmsgBean.getSendUserId());
@@ -57,14 +116,6 @@ public class SQLiteGroupMessageDao {
 		preStatement.setLong(5, gmsgBean.getMsgType());
 		preStatement.setString(6, gmsgBean.getContent());
 		preStatement.setLong(7, gmsgBean.getMsgTime());
-
-		int insertResult = preStatement.executeUpdate();
-
-		long endTime = System.currentTimeMillis();
-		LogUtils.printDBLog(logger, endTime - startTime, insertResult, insertSql);
-
-		return insertResult == 1;
-
 	}
 
 	/**
@@ -118,6 +169,98 @@ public class SQLiteGroupMessageDao {
 		return gmsgList;
 	}
 
+	/**
+	 * <pre>
+	 * 一次查询取出用户所有有新消息的群的消息（按id排序，最多limit条）
+	 * 		1.每个群的起始指针：max(客户端指针, 当前设备指针)，为0时使用该用户其他设备的最大指针，与queryGroupMessage一致
+	 * 		2.只有id大于起始指针的群会命中site_group_message索引，没有新消息的群不产生数据
+	 * 		3.inbox模式下通过site_user_group_inbox先过滤掉没有新消息的群
+	 * 		4.结果按id全局排序，翻页时传入上一页最后一条的id（afterId）即可，无需更新各群指针
+	 * 	客户端指针以VALUES绑定参数传入，超过MAX_CLIENT_POINTERS的部分只使用服务端指针（SQLite单条语句参数上限999）
+	 * </pre>
+	 */
+	public List<GroupMessageBean> queryUpdatedGroupMessage(String userId, String deviceId,
+			Map<String, Long> groupPointers, long afterId, int limit) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		List<GroupMessageBean> gmsgList = new ArrayList<GroupMessageBean>();
+		boolean inbox = SQLiteGroupInboxDao.isEnabled();
+
+		List<Map.Entry<String, Long>> clientPointers = new ArrayList<Map.Entry<String, Long>>();
+		if (groupPointers != null) {
+			for (Map.Entry<String, Long> entry : groupPointers.entrySet()) {
+				if (clientPointers.size() >= MAX_CLIENT_POINTERS) {
+					break;
+				}
+				if (entry.getValue() != null && entry.getValue() > 0) {
+					clientPointers.add(entry);
+				}
+			}
+		}
+
+		StringBuilder sqlBuilder = new StringBuilder("WITH ");
+		if (!clientPointers.isEmpty()) {
+			sqlBuilder.append("client_pointer(site_group_id,pointer) AS (VALUES ");
+			for (int i = 0; i < clientPointers.size(); i++) {
+				sqlBuilder.append(i == 0 ? "(?,?)" : ",(?,?)");
+			}
+			sqlBuilder.append("),");
+		}
+		sqlBuilder.append("group_start(site_group_id,device_pointer,user_pointer,client_pointer,last_msg_id) AS (")
+				.append("SELECT u.site_group_id,IFNULL((SELECT pointer FROM ").append(GROUP_POINTER_TABLE)
+				.append(" WHERE site_user_id=u.site_user_id AND site_group_id=u.site_group_id AND device_id=?),0),")
+				.append("IFNULL((SELECT MAX(pointer) FROM ").append(GROUP_POINTER_TABLE)
+				.append(" WHERE site_user_id=u.site_user_id AND site_group_id=u.site_group_id),0),")
+				.append(clientPointers.isEmpty() ? "0,"
+						: "IFNULL((SELECT pointer FROM client_pointer WHERE site_group_id=u.site_group_id),0),")
+				.append(inbox ? "i.last_msg_id" : String.valueOf(Long.MAX_VALUE)).append(" FROM ")
+				.append(SQLConst.SITE_USER_GROUP).append(" AS u INNER JOIN ").append(SQLConst.SITE_GROUP_PROFILE)
+				.append(" AS p ON u.site_group_id=p.site_group_id");
+		if (inbox) {
+			sqlBuilder.append(" INNER JOIN ").append(SQLConst.SITE_USER_GROUP_INBOX)
+					.append(" AS i ON i.site_user_id=u.site_user_id AND i.site_group_id=u.site_group_id");
+		}
+		sqlBuilder.append(" WHERE u.site_user_id=? AND p.group_status=1),")
+				.append("group_pointer(site_group_id,pointer,last_msg_id) AS (SELECT site_group_id,")
+				.append("CASE WHEN MAX(device_pointer,client_pointer)>0 THEN MAX(device_pointer,client_pointer) ELSE user_pointer END,")
+				.append("last_msg_id FROM group_start) ")
+				.append("SELECT a.id,a.site_group_id,a.msg_id,a.send_user_id,a.send_device_id,a.msg_type,a.content,a.msg_time FROM group_pointer AS g INNER JOIN ")
+				.append(GROUP_MESSAGE_TABLE)
+				.append(" AS a ON a.site_group_id=g.site_group_id AND a.id>g.pointer WHERE g.last_msg_id>g.pointer AND a.id>? AND a.send_device_id IS NOT ? ORDER BY a.id LIMIT ?;");
+		String querySql = sqlBuilder.toString();
+
+		PreparedStatement statement = SQLiteJDBCManager.getConnection().prepareStatement(querySql);
+		int index = 1;
+		for (Map.Entry<String, Long> entry : clientPointers) {
+			statement.setString(index++, entry.getKey());
+			statement.setLong(index++, entry.getValue());
+		}
+		statement.setString(index++, deviceId);
+		statement.setString(index++, userId);
+		statement.setLong(index++, afterId);
+		statement.setString(index++, deviceId);
+		statement.setInt(index++, limit);
+
+		ResultSet rs = statement.executeQuery();
+		while (rs.next()) {
+			GroupMessageBean gmsgBean = new GroupMessageBean();
+			gmsgBean.setId(rs.getInt(1));
+			gmsgBean.setSiteGroupId(rs.getString(2));
+			gmsgBean.setMsgId(rs.getString(3));
+			gmsgBean.setSendUserId(rs.getString(4));
+			gmsgBean.setSendDeviceId(rs.getString(5));
+			gmsgBean.setMsgType(rs.getInt(6));
+			gmsgBean.setContent(rs.getString(7));
+			gmsgBean.setMsgTime(rs.getLong(8));
+			gmsgList.add(gmsgBean);
+		}
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, "gListSize=" + String.valueOf(gmsgList.size()),
+				querySql + ",userid=" + userId + ",deviceId=" + deviceId + ",clientPointers=" + clientPointers.size());
+
+		return gmsgList;
+	}
+
 	public boolean updateGroupMessagePointer(String groupId, String siteUserId, String deviceId, long finishPointer)
 			throws SQLException {
 		int result = updateGroupPointer(groupId, siteUserId, deviceId, finishPointer);
@@ -133,8 +276,7 @@ public class SQLiteGroupMessageDao {
 
 	public boolean saveGroupPointer(String groupId, String userId, String deviceId, long finish) throws SQLException {
 		int result = 0;
-		String updateSql = "INSERT INTO " + GROUP_POINTER_TABLE
-				+ "(site_group_id,site_user_id,device_id,pointer) VALUES(?,?,?,?);";
+		String updateSql = INSERT_GROUP_POINTER_SQL;
 		long startTime = System.currentTimeMillis();
 		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(updateSql);
 		pStatement.setString(1, groupId);
@@ -152,8 +294,7 @@ public class SQLiteGroupMessageDao {
 
 	private int updateGroupPointer(String groupId, String userId, String deviceId, long finish) throws SQLException {
 		int result = 0;
-		String updateSql = "UPDATE " + GROUP_POINTER_TABLE
-				+ " SET pointer=? WHERE site_user_id=? AND site_group_id=? AND device_id=?;";
+		String updateSql = UPDATE_GROUP_POINTER_SQL;
 		long startTime = System.currentTimeMillis();
 
 		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(updateSql);
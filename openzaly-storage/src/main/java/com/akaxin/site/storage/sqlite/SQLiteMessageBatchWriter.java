@@ -0,0 +1,294 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.logs.LogUtils;
+import com.akaxin.site.storage.bean.GroupMessageBean;
+import com.akaxin.site.storage.bean.U2MessageBean;
+import com.akaxin.site.storage.sqlite.manager.SQLiteConnectionPool;
+import com.akaxin.site.storage.sqlite.manager.SQLiteJDBCManager;
+
+/**
+ * <pre>
+ * 二人/群消息的组提交（group commit）
+ * 		1.调用线程把消息放入队列后阻塞，直到消息所在批次的事务提交完成
+ * 		2.批量线程一次取出队列中已有的消息（最多site.message.batch.size条），在写线程中用一个事务批量写入
+ * 		3.默认不额外等待：上一批次提交期间到达的消息自然组成下一批次（发送者阻塞等待提交，额外等待只会增加延迟）
+ * 		   site.message.batch.delay>0时，上一批次多于一条的情况下最多再等待该毫秒数凑批
+ * 		4.inbox模式下同一事务内对批次中的群做一次写扩散
+ * 		5.批量写入失败时回滚，并逐条重试，避免一条异常数据影响同批次的其他消息
+ * 	仅在site.db.mode=pool时启用，单连接模式下仍然逐条写入
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-16 18:22:05
+ */
+public class SQLiteMessageBatchWriter {
+	private static final Logger logger = LoggerFactory.getLogger(SQLiteMessageBatchWriter.class);
+	private static final int BATCH_SIZE = Integer.getInteger("site.message.batch.size", 128);
+	private static final long BATCH_DELAY_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(Long.getLong("site.message.batch.delay", 0));
+	private static final int QUEUE_SIZE = Integer.getInteger("site.message.batch.queue", 10000);
+	private static SQLiteMessageBatchWriter instance = new SQLiteMessageBatchWriter();
+
+	private final BlockingQueue<PendingWrite> writeQueue = new ArrayBlockingQueue<PendingWrite>(QUEUE_SIZE);
+	private volatile Thread batchThread;
+
+	public static SQLiteMessageBatchWriter getInstance() {
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return BATCH_SIZE > 1 && SQLiteJDBCManager.getConnectionPool() != null;
+	}
+
+	public boolean saveU2Message(U2MessageBean u2Bean) throws SQLException {
+		return submit(new PendingWrite(u2Bean, null));
+	}
+
+	public boolean saveGroupMessage(GroupMessageBean gmsgBean) throws SQLException {
+		return submit(new PendingWrite(null, gmsgBean));
+	}
+
+	private boolean submit(PendingWrite write) throws SQLException {
+		startIfNecessary();
+		try {
+			writeQueue.put(write);
+			return write.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("wait message batch commit interrupted", e);
+		}
+	}
+
+	private void startIfNecessary() {
+		if (batchThread != null) {
+			return;
+		}
+		synchronized (this) {
+			if (batchThread == null) {
+				Thread thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						batchLoop();
+					}
+				}, "sqlite-message-batch");
+				thread.setDaemon(true);
+				thread.start();
+				batchThread = thread;
+			}
+		}
+	}
+
+	private void batchLoop() {
+		List<PendingWrite> batch = new ArrayList<PendingWrite>(BATCH_SIZE);
+		int lastBatchSize = 0;
+		while (true) {
+			try {
+				batch.add(writeQueue.take());
+				writeQueue.drainTo(batch, BATCH_SIZE - batch.size());
+				if (lastBatchSize > 1 && BATCH_DELAY_NANOS > 0) {
+					long deadline = System.nanoTime() + BATCH_DELAY_NANOS;
+					while (batch.size() < BATCH_SIZE) {
+						long remaining = deadline - System.nanoTime();
+						PendingWrite next = remaining > 0 ? writeQueue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+						if (next == null) {
+							break;
+						}
+						batch.add(next);
+						writeQueue.drainTo(batch, BATCH_SIZE - batch.size());
+					}
+				}
+				lastBatchSize = batch.size();
+				flush(batch);
+			} catch (InterruptedException e) {
+				logger.warn("message batch thread interrupted");
+				failAll(batch, new SQLException("message batch thread interrupted", e));
+				return;
+			} catch (Throwable t) {
+				logger.error("message batch flush error", t);
+				failAll(batch, t instanceof SQLException ? (SQLException) t : new SQLException(t));
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void flush(final List<PendingWrite> batch) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		final SQLiteConnectionPool pool = SQLiteJDBCManager.getConnectionPool();
+		pool.submitWrite(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				if (!commitBatch(pool, batch)) {
+					commitOneByOne(pool, batch);
+				}
+				return null;
+			}
+		});
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, batch.size(), "group commit messages");
+	}
+
+	/**
+	 * 在写线程中执行，一个事务提交整个批次
+	 */
+	private boolean commitBatch(SQLiteConnectionPool pool, List<PendingWrite> batch) throws SQLException {
+		Connection conn = pool.getWriterConnection();
+		PreparedStatement u2Statement = null;
+		PreparedStatement groupStatement = null;
+		conn.setAutoCommit(false);
+		try {
+			for (PendingWrite write : batch) {
+				if (write.u2Bean != null) {
+					if (u2Statement == null) {
+						u2Statement = pool.prepareWriterStatement(SQLiteU2MessageDao.INSERT_U2_MESSAGE_SQL);
+					}
+					SQLiteU2MessageDao.bindU2Message(u2Statement, write.u2Bean);
+					u2Statement.addBatch();
+				} else {
+					if (groupStatement == null) {
+						groupStatement = pool.prepareWriterStatement(SQLiteGroupMessageDao.INSERT_GROUP_MESSAGE_SQL);
+					}
+					SQLiteGroupMessageDao.bindGroupMessage(groupStatement, write.groupBean);
+					groupStatement.addBatch();
+				}
+			}
+			int[] u2Results = u2Statement == null ? new int[0] : u2Statement.executeBatch();
+			int[] groupResults = groupStatement == null ? new int[0] : groupStatement.executeBatch();
+			if (groupStatement != null && SQLiteGroupInboxDao.isEnabled()) {
+				fanOutGroups(pool, batch);
+			}
+			conn.commit();
+
+			int u2Index = 0;
+			int groupIndex = 0;
+			for (PendingWrite write : batch) {
+				int result = write.u2Bean != null ? u2Results[u2Index++] : groupResults[groupIndex++];
+				write.complete(result > 0 || result == Statement.SUCCESS_NO_INFO, null);
+			}
+			return true;
+		} catch (SQLException e) {
+			logger.error("group commit " + batch.size() + " messages error, retry one by one", e);
+			if (u2Statement != null) {
+				u2Statement.clearBatch();
+			}
+			if (groupStatement != null) {
+				groupStatement.clearBatch();
+			}
+			conn.rollback();
+			return false;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	private void commitOneByOne(SQLiteConnectionPool pool, List<PendingWrite> batch) {
+		for (PendingWrite write : batch) {
+			try {
+				PreparedStatement statement;
+				if (write.u2Bean != null) {
+					statement = pool.prepareWriterStatement(SQLiteU2MessageDao.INSERT_U2_MESSAGE_SQL);
+					SQLiteU2MessageDao.bindU2Message(statement, write.u2Bean);
+				} else {
+					statement = pool.prepareWriterStatement(SQLiteGroupMessageDao.INSERT_GROUP_MESSAGE_SQL);
+					SQLiteGroupMessageDao.bindGroupMessage(statement, write.groupBean);
+				}
+				boolean result = statement.executeUpdate() == 1;
+				if (result && write.groupBean != null && SQLiteGroupInboxDao.isEnabled()) {
+					PreparedStatement fanOutStatement = pool.prepareWriterStatement(SQLiteGroupInboxDao.FAN_OUT_SQL);
+					SQLiteGroupInboxDao.bindFanOut(fanOutStatement, write.groupBean.getSiteGroupId());
+					fanOutStatement.executeUpdate();
+				}
+				write.complete(result, null);
+			} catch (SQLException e) {
+				write.complete(false, e);
+			}
+		}
+	}
+
+	/**
+	 * 同一批次中的群只扩散一次
+	 */
+	private void fanOutGroups(SQLiteConnectionPool pool, List<PendingWrite> batch) throws SQLException {
+		Set<String> groupIds = new HashSet<String>();
+		for (PendingWrite write : batch) {
+			if (write.groupBean != null) {
+				groupIds.add(write.groupBean.getSiteGroupId());
+			}
+		}
+		PreparedStatement fanOutStatement = pool.prepareWriterStatement(SQLiteGroupInboxDao.FAN_OUT_SQL);
+		for (String groupId : groupIds) {
+			SQLiteGroupInboxDao.bindFanOut(fanOutStatement, groupId);
+			fanOutStatement.executeUpdate();
+		}
+	}
+
+	private void failAll(List<PendingWrite> batch, SQLException error) {
+		for (PendingWrite write : batch) {
+			write.complete(false, error);
+		}
+	}
+
+	private static class PendingWrite {
+		private final U2MessageBean u2Bean;
+		private final GroupMessageBean groupBean;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile boolean result;
+		private volatile SQLException error;
+
+		PendingWrite(U2MessageBean u2Bean, GroupMessageBean groupBean) {
+			this.u2Bean = u2Bean;
+			this.groupBean = groupBean;
+		}
+
+		void complete(boolean result, SQLException error) {
+			if (latch.getCount() == 0) {
+				return;
+			}
+			this.result = result;
+			this.error = error;
+			latch.countDown();
+		}
+
+		boolean await() throws InterruptedException, SQLException {
+			latch.await();
+			if (error != null) {
+				throw error;
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.akaxin.common.logs.LogUtils;
+import com.akaxin.site.storage.cache.CacheRegistry;
+import com.akaxin.site.storage.sqlite.manager.SQLiteConnectionPool;
+import com.akaxin.site.storage.sqlite.manager.SQLiteJDBCManager;
+import com.google.common.cache.Cache;
+
+/**
+ * <pre>
+ * 二人/群消息同步指针的写合并
+ * 		1.SyncFinish更新的指针先写入内存（dirty），同一设备/群在一个周期内的多次更新只保留最后一次
+ * 		2.刷新线程每site.pointer.flush.interval毫秒在写线程中用一个事务批量写入：先批量UPDATE，影响行数为0的再批量INSERT
+ * 		3.读指针时优先使用内存中的值，其次是最近读过的指针缓存（u2Pointer/u2MaxPointer），最后才查库
+ * 		4.写入失败时保留dirty数据，下个周期重试；进程退出时刷新一次
+ * 	指针只由客户端确认后的SyncFinish推进，宕机时最多丢失一个周期的更新，指针只会落后、不会超前，客户端会重新收到少量已同步的消息
+ * 	仅在site.db.mode=pool时启用，单连接模式下仍然直接写库
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-20 11:36:48
+ */
+public class SQLiteMessagePointerBuffer {
+	private static final Logger logger = LoggerFactory.getLogger(SQLiteMessagePointerBuffer.class);
+	private static final long FLUSH_INTERVAL = Long.getLong("site.pointer.flush.interval", 1000);
+	private static final int POINTER_CACHE_SIZE = Integer.getInteger("site.cache.pointer.size", 50000);
+	private static SQLiteMessagePointerBuffer instance = new SQLiteMessagePointerBuffer();
+
+	// userId+deviceId -> 未落库的二人消息指针
+	private final ConcurrentHashMap<String, PointerUpdate> dirtyU2Pointers = new ConcurrentHashMap<String, PointerUpdate>();
+	// userId -> 未落库的二人消息指针中的最大值
+	private final ConcurrentHashMap<String, Long> dirtyMaxU2Pointers = new ConcurrentHashMap<String, Long>();
+	// userId+deviceId -> 未落库的群消息指针，只在外层compute中修改
+	private final ConcurrentHashMap<String, DeviceGroupPointers> dirtyGroupPointers = new ConcurrentHashMap<String, DeviceGroupPointers>();
+	private final Cache<String, Long> u2PointerCache = CacheRegistry.newCache("u2Pointer", POINTER_CACHE_SIZE);
+	private final Cache<String, Long> u2MaxPointerCache = CacheRegistry.newCache("u2MaxPointer", POINTER_CACHE_SIZE);
+	private volatile Thread flushThread;
+
+	public static SQLiteMessagePointerBuffer getInstance() {
+		return instance;
+	}
+
+	public boolean isEnabled() {
+		return FLUSH_INTERVAL > 0 && SQLiteJDBCManager.getConnectionPool() != null;
+	}
+
+	public void updateU2Pointer(String userId, String deviceId, long pointer) {
+		startIfNecessary();
+		String key = deviceKey(userId, deviceId);
+		dirtyU2Pointers.put(key, new PointerUpdate(userId, deviceId, null, pointer));
+		u2PointerCache.put(key, pointer);
+		dirtyMaxU2Pointers.merge(userId, pointer, new BiFunction<Long, Long, Long>() {
+
+			@Override
+			public Long apply(Long oldPointer, Long newPointer) {
+				return Math.max(oldPointer, newPointer);
+			}
+		});
+	}
+
+	/**
+	 * 当前设备的二人消息指针，不存在时返回0
+	 */
+	public long getU2Pointer(String userId, String deviceId) throws SQLException {
+		String key = deviceKey(userId, deviceId);
+		PointerUpdate update = dirtyU2Pointers.get(key);
+		if (update != null) {
+			return update.pointer;
+		}
+		Long pointer = u2PointerCache.getIfPresent(key);
+		if (pointer != null) {
+			return pointer;
+		}
+		long dbPointer = SQLiteU2MessageDao.getInstance().queryU2DevicePointer(userId, deviceId);
+		// 查库期间可能有新的更新写入缓存，不能覆盖
+		pointer = u2PointerCache.asMap().putIfAbsent(key, dbPointer);
+		return pointer != null ? pointer : dbPointer;
+	}
+
+	/**
+	 * 用户所有设备中最大的二人消息指针
+	 */
+	public long getMaxU2Pointer(String userId) throws SQLException {
+		Long pointer = u2MaxPointerCache.getIfPresent(userId);
+		if (pointer == null) {
+			long dbPointer = SQLiteU2MessageDao.getInstance().queryMaxU2MessagePointer(userId);
+			pointer = u2MaxPointerCache.asMap().putIfAbsent(userId, dbPointer);
+			if (pointer == null) {
+				pointer = dbPointer;
+			}
+		}
+		Long dirtyPointer = dirtyMaxU2Pointers.get(userId);
+		return dirtyPointer != null && dirtyPointer > pointer ? dirtyPointer : pointer;
+	}
+
+	public void updateGroupPointer(final String groupId, final String userId, final String deviceId,
+			final long pointer) {
+		startIfNecessary();
+		dirtyGroupPointers.compute(deviceKey(userId, deviceId),
+				new BiFunction<String, DeviceGroupPointers, DeviceGroupPointers>() {
+
+					@Override
+					public DeviceGroupPointers apply(String key, DeviceGroupPointers pointers) {
+						if (pointers == null) {
+							pointers = new DeviceGroupPointers(userId, deviceId);
+						}
+						pointers.groupPointers.put(groupId, pointer);
+						return pointers;
+					}
+				});
+	}
+
+	/**
+	 * 未落库的群消息指针，不存在时返回0
+	 */
+	public long getGroupPointer(String groupId, String userId, String deviceId) {
+		DeviceGroupPointers pointers = dirtyGroupPointers.get(deviceKey(userId, deviceId));
+		if (pointers == null) {
+			return 0;
+		}
+		Long pointer = pointers.groupPointers.get(groupId);
+		return pointer == null ? 0 : pointer;
+	}
+
+	/**
+	 * 把未落库的群消息指针合并进客户端上报的指针（取较大值），没有未落库指针时原样返回
+	 */
+	public Map<String, Long> mergeGroupPointers(String userId, String deviceId, Map<String, Long> clientPointers) {
+		DeviceGroupPointers pointers = dirtyGroupPointers.get(deviceKey(userId, deviceId));
+		if (pointers == null) {
+			return clientPointers;
+		}
+		Map<String, Long> merged = clientPointers == null ? new HashMap<String, Long>()
+				: new HashMap<String, Long>(clientPointers);
+		for (Map.Entry<String, Long> entry : pointers.groupPointers.entrySet()) {
+			Long clientPointer = merged.get(entry.getKey());
+			if (clientPointer == null || clientPointer < entry.getValue()) {
+				merged.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return merged;
+	}
+
+	private void startIfNecessary() {
+		if (flushThread != null) {
+			return;
+		}
+		synchronized (this) {
+			if (flushThread == null) {
+				Thread thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						flushLoop();
+					}
+				}, "sqlite-pointer-flush");
+				thread.setDaemon(true);
+				thread.start();
+				Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						flush();
+					}
+				}, "sqlite-pointer-shutdown"));
+				flushThread = thread;
+			}
+		}
+	}
+
+	private void flushLoop() {
+		while (true) {
+			try {
+				Thread.sleep(FLUSH_INTERVAL);
+			} catch (InterruptedException e) {
+				logger.warn("pointer flush thread interrupted");
+				flush();
+				return;
+			}
+			flush();
+		}
+	}
+
+	synchronized void flush() {
+		final List<PointerUpdate> u2Updates = new ArrayList<PointerUpdate>(dirtyU2Pointers.values());
+		final List<PointerUpdate> groupUpdates = new ArrayList<PointerUpdate>();
+		for (DeviceGroupPointers pointers : dirtyGroupPointers.values()) {
+			for (Map.Entry<String, Long> entry : pointers.groupPointers.entrySet()) {
+				groupUpdates.add(new PointerUpdate(pointers.userId, pointers.deviceId, entry.getKey(), entry.getValue()));
+			}
+		}
+		if (u2Updates.isEmpty() && groupUpdates.isEmpty()) {
+			return;
+		}
+
+		long startTime = System.currentTimeMillis();
+		try {
+			final SQLiteConnectionPool pool = SQLiteJDBCManager.getConnectionPool();
+			pool.submitWrite(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					commitPointers(pool, u2Updates, groupUpdates);
+					return null;
+				}
+			});
+		} catch (Throwable t) {
+			logger.error("flush " + u2Updates.size() + " u2 pointers and " + groupUpdates.size()
+					+ " group pointers error, retry next round", t);
+			return;
+		}
+
+		for (final PointerUpdate update : u2Updates) {
+			dirtyU2Pointers.remove(deviceKey(update.userId, update.deviceId), update);
+			dirtyMaxU2Pointers.remove(update.userId, update.pointer);
+			u2MaxPointerCache.asMap().computeIfPresent(update.userId, new BiFunction<String, Long, Long>() {
+
+				@Override
+				public Long apply(String userId, Long pointer) {
+					return Math.max(pointer, update.pointer);
+				}
+			});
+		}
+		for (final PointerUpdate update : groupUpdates) {
+			dirtyGroupPointers.computeIfPresent(deviceKey(update.userId, update.deviceId),
+					new BiFunction<String, DeviceGroupPointers, DeviceGroupPointers>() {
+
+						@Override
+						public DeviceGroupPointers apply(String key, DeviceGroupPointers pointers) {
+							pointers.groupPointers.remove(update.groupId, update.pointer);
+							return pointers.groupPointers.isEmpty() ? null : pointers;
+						}
+					});
+		}
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, u2Updates.size() + groupUpdates.size(),
+				"flush message pointers u2=" + u2Updates.size() + ",group=" + groupUpdates.size());
+	}
+
+	/**
+	 * 在写线程中执行，一个事务写入所有指针
+	 */
+	private void commitPointers(SQLiteConnectionPool pool, List<PointerUpdate> u2Updates,
+			List<PointerUpdate> groupUpdates) throws SQLException {
+		Connection conn = pool.getWriterConnection();
+		conn.setAutoCommit(false);
+		try {
+			upsertPointers(pool, SQLiteU2MessageDao.UPDATE_U2_POINTER_SQL, SQLiteU2MessageDao.INSERT_U2_POINTER_SQL,
+					u2Updates);
+			upsertPointers(pool, SQLiteGroupMessageDao.UPDATE_GROUP_POINTER_SQL,
+					SQLiteGroupMessageDao.INSERT_GROUP_POINTER_SQL, groupUpdates);
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * 先批量UPDATE，影响行数为0的再批量INSERT（指针表没有唯一索引，SQLite 3.8也不支持UPSERT）
+	 */
+	private void upsertPointers(SQLiteConnectionPool pool, String updateSql, String insertSql,
+			List<PointerUpdate> updates) throws SQLException {
+		if (updates.isEmpty()) {
+			return;
+		}
+		PreparedStatement updateStatement = pool.prepareWriterStatement(updateSql);
+		PreparedStatement insertStatement = null;
+		try {
+			for (PointerUpdate update : updates) {
+				bindUpdate(updateStatement, update);
+				updateStatement.addBatch();
+			}
+			int[] results = updateStatement.executeBatch();
+			for (int i = 0; i < results.length; i++) {
+				if (results[i] == 0) {
+					if (insertStatement == null) {
+						insertStatement = pool.prepareWriterStatement(insertSql);
+					}
+					bindInsert(insertStatement, updates.get(i));
+					insertStatement.addBatch();
+				}
+			}
+			if (insertStatement != null) {
+				insertStatement.executeBatch();
+			}
+		} catch (SQLException e) {
+			updateStatement.clearBatch();
+			if (insertStatement != null) {
+				insertStatement.clearBatch();
+			}
+			throw e;
+		}
+	}
+
+	private void bindUpdate(PreparedStatement statement, PointerUpdate update) throws SQLException {
+		statement.setLong(1, update.pointer);
+		statement.setString(2, update.userId);
+		if (update.groupId == null) {
+			statement.setString(3, update.deviceId);
+		} else {
+			statement.setString(3, update.groupId);
+			statement.setString(4, update.deviceId);
+		}
+	}
+
+	private void bindInsert(PreparedStatement statement, PointerUpdate update) throws SQLException {
+		if (update.groupId == null) {
+			statement.setString(1, update.userId);
+			statement.setLong(2, update.pointer);
+			statement.setString(3, update.deviceId);
+		} else {
+			statement.setString(1, update.groupId);
+			statement.setString(2, update.userId);
+			statement.setString(3, update.deviceId);
+			statement.setLong(4, update.pointer);
+		}
+	}
+
+	private static String deviceKey(String userId, String deviceId) {
+		return userId + "\t" + deviceId;
+	}
+
+	private static class PointerUpdate {
+		private final String userId;
+		private final String deviceId;
+		private final String groupId;
+		private final long pointer;
+
+		PointerUpdate(String userId, String deviceId, String groupId, long pointer) {
+			this.userId = userId;
+			this.deviceId = deviceId;
+			this.groupId = groupId;
+			this.pointer = pointer;
+		}
+	}
+
+	private static class DeviceGroupPointers {
+		private final String userId;
+		private final String deviceId;
+		private final ConcurrentHashMap<String, Long> groupPointers = new ConcurrentHashMap<String, Long>();
+
+		DeviceGroupPointers(String userId, String deviceId) {
+			this.userId = userId;
+			this.deviceId = deviceId;
+		}
+	}
+}
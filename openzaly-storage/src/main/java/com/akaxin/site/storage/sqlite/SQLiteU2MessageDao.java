@@ -39,6 +39,12 @@ public class SQLiteU2MessageDao {
 	private static final Logger logger = LoggerFactory.getLogger(SQLiteU2MessageDao.class);
 	private static final String USER2_MESSAGE_TABLE = SQLConst.SITE_USER_MESSAGE;
 	private static final String USER2_MESSAGE_POINATER_TABLE = SQLConst.SITE_MESSAGE_POINTER;
+	static final String INSERT_U2_MESSAGE_SQL = "INSERT INTO " + USER2_MESSAGE_TABLE
+			+ "(site_user_id,msg_id,send_user_id,msg_type,content,device_id,ts_key,msg_time) VALUES(?,?,?,?,?,?,?,?);";
+	static final String INSERT_U2_POINTER_SQL = "INSERT INTO " + USER2_MESSAGE_POINATER_TABLE
+			+ "(site_user_id,pointer,device_id) VALUES(?,?,?)";
+	static final String UPDATE_U2_POINTER_SQL = "UPDATE " + USER2_MESSAGE_POINATER_TABLE
+			+ " SET pointer=? WHERE site_user_id=? AND device_id=?;";
 	private static SQLiteU2MessageDao instance = new SQLiteU2MessageDao();
 
 	public static SQLiteU2MessageDao getInstance() {
@@ -48,17 +54,8 @@ public class SQLiteU2MessageDao {
 	public boolean saveU2Message(U2MessageBean u2Bean) throws SQLException {
 		long startTime = System.currentTimeMillis();
 		boolean result = false;
-		String insertSql = "INSERT INTO " + USER2_MESSAGE_TABLE
-				+ "(site_user_id,msg_id,send_user_id,msg_type,content,device_id,ts_key,msg_time) VALUES(?,?,?,?,?,?,?,?);";
-		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(insertSql);
-		preStatement.setString(1, u2Bean.getSiteUserId());
-		preStatement.setString(2, u2Bean.getMsgId());
-		preStatement.setString(3, u2Bean.getSendUserId());
-		preStatement.setLong(4, u2Bean.getMsgType());
-		preStatement.setString(5, u2Bean.getContent());
-		preStatement.setString(6, u2Bean.getDeviceId());
-		preStatement.setString(7, u2Bean.getTsKey());
-		preStatement.setLong(8, u2Bean.getMsgTime());
+		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(INSERT_U2_MESSAGE_SQL);
+		bindU2Message(preStatement, u2Bean);
 		int insertResult = preStatement.executeUpdate();
 
 		if (insertResult == 1) {
@@ -66,11 +63,22 @@ public class SQLiteU2MessageDao {
 		}
 
 		long endTime = System.currentTimeMillis();
-		LogUtils.printDBLog(logger, endTime - startTime, result, insertSql + u2Bean.toString());
+		LogUtils.printDBLog(logger, endTime - startTime, result, INSERT_U2_MESSAGE_SQL + u2Bean.toString());
 
 		return true;
 	}
 
+	static void bindU2Message(PreparedStatement preStatement, U2MessageBean u2Bean) throws SQLException {
+		preStatement.setString(1, u2Bean.getSiteUserId());
+		preStatement.setString(2, u2Bean.getMsgId());
+		preStatement.setString(3, u2Bean.getSendUserId());
+		preStatement.setLong(4, u2Bean.getMsgType());
+		preStatement.setString(5, u2Bean.getContent());
+		preStatement.setString(6, u2Bean.getDeviceId());
+		preStatement.setString(7, u2Bean.getTsKey());
+		preStatement.setLong(8, u2Bean.getMsgTime());
+	}
+
 	public List<U2MessageBean> getU2Message(String userId, String deviceId, long start, long limit)
 			throws SQLException {
 		long startTime = System.currentTimeMillis();
@@ -110,6 +118,14 @@ public class SQLiteU2MessageDao {
 	}
 
 	public long queryU2MessagePointer(String userId, String deviceId) throws SQLException {
+		long pointer = queryU2DevicePointer(userId, deviceId);
+		return pointer == 0 ? queryMaxU2MessagePointer(userId) : pointer;
+	}
+
+	/**
+	 * 只查询当前设备的指针，不存在时返回0
+	 */
+	public long queryU2DevicePointer(String userId, String deviceId) throws SQLException {
 		long startTime = System.currentTimeMillis();
 		long pointer = 0;
 		String sql = "SELECT pointer FROM " + USER2_MESSAGE_POINATER_TABLE + " WHERE site_user_id=? AND device_id=?;";
@@ -124,7 +140,7 @@ public class SQLiteU2MessageDao {
 		long endTime = System.currentTimeMillis();
 		LogUtils.printDBLog(logger, endTime - startTime, "po=" + pointer,
 				sql + ",userId=" + userId + ",device_id=" + deviceId);
-		return pointer == 0 ? queryMaxU2MessagePointer(userId) : pointer;
+		return pointer;
 	}
 
 	public long queryMaxU2MessagePointer(String userId) throws SQLException {
@@ -153,8 +169,7 @@ public class SQLiteU2MessageDao {
 	}
 
 	public boolean addU2Pointer(String userId, String deviceId, long finish) throws SQLException {
-		String insertSql = "INSERT INTO " + USER2_MESSAGE_POINATER_TABLE
-				+ "(site_user_id,pointer,device_id) VALUES(?,?,?)";
+		String insertSql = INSERT_U2_POINTER_SQL;
 		int result = 0;
 		long startTime = System.currentTimeMillis();
 		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(insertSql);
@@ -170,8 +185,7 @@ public class SQLiteU2MessageDao {
 	}
 
 	public boolean updateU2Pointer(String userId, String deviceId, long finish) throws SQLException {
-		String updateSql = "UPDATE " + USER2_MESSAGE_POINATER_TABLE
-				+ " SET pointer=? WHERE site_user_id=? AND device_id=?;";
+		String updateSql = UPDATE_U2_POINTER_SQL;
 		int result = 0;
 		long startTime = System.currentTimeMillis();
 		PreparedStatement pStatement = SQLiteJDBCManager.getConnection().prepareStatement(updateSql);
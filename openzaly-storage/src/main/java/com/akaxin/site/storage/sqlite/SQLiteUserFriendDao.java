@@ -18,6 +18,8 @@ package com.akaxin.site.storage.sqlite;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +36,8 @@ import com.akaxin.site.storage.sqlite.sql.SQLConst;
 public class SQLiteUserFriendDao {
 	private static final Logger logger = LoggerFactory.getLogger(SQLiteUserFriendDao.class);
 	private static final String USER_FRIEND_TABLE = SQLConst.SITE_USER_FRIEND;
+	// 关注/好友关系
+	private static final int RELATION_FRIEND = 1;
 	private static SQLiteUserFriendDao instance = new SQLiteUserFriendDao();
 
 	public static SQLiteUserFriendDao getInstance() {
@@ -99,6 +103,29 @@ public class SQLiteUserFriendDao {
 		return relation;
 	}
 
+	/**
+	 * 查询用户单向关注（relation=1）的所有用户id
+	 */
+	public List<String> queryFriendIds(String siteUserId) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		List<String> friendIds = new ArrayList<String>();
+		String sql = "SELECT site_friend_id FROM " + USER_FRIEND_TABLE + " WHERE site_user_id=? AND relation=?;";
+
+		PreparedStatement preState = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		preState.setString(1, siteUserId);
+		preState.setInt(2, RELATION_FRIEND);
+
+		ResultSet rs = preState.executeQuery();
+		while (rs.next()) {
+			friendIds.add(rs.getString(1));
+		}
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, friendIds.size() + "", sql + siteUserId);
+
+		return friendIds;
+	}
+
 	public boolean deleteRelation(String siteUserId, String siteFriendId) throws SQLException {
 		long startTime = System.currentTimeMillis();
 		int result = 0;
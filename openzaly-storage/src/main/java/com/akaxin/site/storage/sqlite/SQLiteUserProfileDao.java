@@ -185,6 +185,42 @@ public class SQLiteUserProfileDao {
 		return userList;
 	}
 
+	/**
+	 * 批量查询用户简要资料，一次最多查询的数量由调用方控制（SQLite单条语句参数上限999），不存在的用户不返回
+	 */
+	public List<SimpleUserBean> querySimpleProfilesById(List<String> userIds) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		List<SimpleUserBean> userList = new ArrayList<SimpleUserBean>();
+		if (userIds == null || userIds.isEmpty()) {
+			return userList;
+		}
+		StringBuilder sqlBuilder = new StringBuilder("SELECT site_user_id,user_name,user_photo,user_status FROM ")
+				.append(USER_PROFILE_TABLE).append(" WHERE site_user_id IN (");
+		for (int i = 0; i < userIds.size(); i++) {
+			sqlBuilder.append(i == 0 ? "?" : ",?");
+		}
+		String sql = sqlBuilder.append(");").toString();
+
+		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(sql);
+		for (int i = 0; i < userIds.size(); i++) {
+			preStatement.setString(i + 1, userIds.get(i));
+		}
+
+		ResultSet rs = preStatement.executeQuery();
+		while (rs.next()) {
+			SimpleUserBean userBean = new SimpleUserBean();
+			userBean.setUserId(rs.getString(1));
+			userBean.setUserName(rs.getString(2));
+			userBean.setUserPhoto(rs.getString(3));
+			userBean.setUserStatus(rs.getInt(4));
+			userList.add(userBean);
+		}
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, userList.size(), sql + "," + userIds.size());
+		return userList;
+	}
+
 	/**
 	 * 通过站点用户ID，查询用户
 	 * 
@@ -124,6 +124,25 @@ public class SQLiteUserSessionDao {
 		return sessionDeviceId != null;
 	}
 
+	public String querySessionId(String siteUserId, String deviceId) throws SQLException {
+		long startTime = System.currentTimeMillis();
+		String sessionId = null;
+		String querySql = "SELECT session_id FROM " + USER_SESSION_TABLE + " WHERE site_user_id=? AND device_id=?;";
+
+		PreparedStatement preStatement = SQLiteJDBCManager.getConnection().prepareStatement(querySql);
+		preStatement.setString(1, siteUserId);
+		preStatement.setString(2, deviceId);
+		ResultSet rs = preStatement.executeQuery();
+		if (rs.next()) {
+			sessionId = rs.getString(1);
+		}
+
+		long endTime = System.currentTimeMillis();
+		LogUtils.printDBLog(logger, endTime - startTime, sessionId, querySql + "=" + siteUserId + "," + deviceId);
+
+		return sessionId;
+	}
+
 	public SimpleAuthBean queryAuthSession(String sessionId) throws SQLException {
 		long startTime = System.currentTimeMillis();
 		SimpleAuthBean authBean = new SimpleAuthBean();
@@ -25,7 +25,18 @@ import com.akaxin.common.utils.GsonUtils;
  * @since 2018-01-31 12:13:35
  */
 public class DBConfigBean {
+	public static final String DB_MODE_SINGLE = "single";
+	public static final String DB_MODE_POOL = "pool";
+	public static final String DB_SYNCHRONOUS_FULL = "full";
+	public static final String DB_SYNCHRONOUS_NORMAL = "normal";
+	public static final String GROUP_STORAGE_JOIN = "join";
+	public static final String GROUP_STORAGE_INBOX = "inbox";
+
 	private String dbDir;
+	private String dbMode = DB_MODE_SINGLE;
+	private int dbReaders = 4;
+	private String dbSynchronous = DB_SYNCHRONOUS_FULL;
+	private String groupStorage = GROUP_STORAGE_JOIN;
 	private String adminServerName;
 	private String adminAddress;
 	private int adminPort;
@@ -42,6 +53,38 @@ public class DBConfigBean {
 		this.dbDir = dbDir;
 	}
 
+	public String getDbMode() {
+		return dbMode;
+	}
+
+	public void setDbMode(String dbMode) {
+		this.dbMode = dbMode;
+	}
+
+	public int getDbReaders() {
+		return dbReaders;
+	}
+
+	public void setDbReaders(int dbReaders) {
+		this.dbReaders = dbReaders;
+	}
+
+	public String getGroupStorage() {
+		return groupStorage;
+	}
+
+	public void setGroupStorage(String groupStorage) {
+		this.groupStorage = groupStorage;
+	}
+
+	public String getDbSynchronous() {
+		return dbSynchronous;
+	}
+
+	public void setDbSynchronous(String dbSynchronous) {
+		this.dbSynchronous = dbSynchronous;
+	}
+
 	public String getAdminServerName() {
 		return adminServerName;
 	}
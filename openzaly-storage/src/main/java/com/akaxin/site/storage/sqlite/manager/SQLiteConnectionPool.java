@@ -0,0 +1,478 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.sqlite.manager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * <pre>
+ * SQLite连接池模式（site.db.mode=pool）
+ * 		1.数据库使用WAL模式，读写互不阻塞；写连接默认synchronous=FULL，每次提交都fsync，提交返回后断电不丢数据
+ * 			site.db.synchronous=normal时使用NORMAL，写入更快，但断电或系统崩溃时可能丢失最近已提交的事务
+ * 		2.查询使用只读连接池，每次查询借出一个连接，结果集读入内存后立即归还
+ * 		3.所有写操作（executeUpdate/executeBatch）通过队列交给唯一的写线程执行
+ * 		4.每个物理连接缓存PreparedStatement（LRU），DAO中不再泄漏statement
+ * 	DAO通过SQLiteJDBCManager.getConnection()拿到的是代理连接，原有代码无需修改
+ * </pre>
+ * 
+ * @author Sam{@link an.guoyue254@gmail.com}
+ * @since 2018-03-16 14:10:27
+ */
+public class SQLiteConnectionPool {
+	private static final Logger logger = LoggerFactory.getLogger(SQLiteConnectionPool.class);
+	private static final int STATEMENT_CACHE_SIZE = 128;
+	private static final String BUSY_TIMEOUT = "5000";
+
+	private final BlockingQueue<PooledConnection> readers;
+	private final PooledConnection writer;
+	private final ExecutorService writerExecutor;
+	private final Connection connectionProxy;
+
+	public SQLiteConnectionPool(String dbUrl, int readerCount, String synchronous) throws SQLException {
+		SQLiteConfig.SynchronousMode synchronousMode = DBConfigBean.DB_SYNCHRONOUS_NORMAL.equalsIgnoreCase(synchronous)
+				? SQLiteConfig.SynchronousMode.NORMAL : SQLiteConfig.SynchronousMode.FULL;
+		SQLiteConfig writeConfig = new SQLiteConfig();
+		writeConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+		writeConfig.setSynchronous(synchronousMode);
+		writeConfig.setBusyTimeout(BUSY_TIMEOUT);
+		this.writer = new PooledConnection(writeConfig.createConnection(dbUrl));
+
+		this.readers = new ArrayBlockingQueue<PooledConnection>(readerCount);
+		for (int i = 0; i < readerCount; i++) {
+			SQLiteConfig readConfig = new SQLiteConfig();
+			readConfig.setReadOnly(true);
+			readConfig.setBusyTimeout(BUSY_TIMEOUT);
+			readers.add(new PooledConnection(readConfig.createConnection(dbUrl)));
+		}
+
+		this.writerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sqlite-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.connectionProxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler());
+		logger.info("start sqlite connection pool url={} readers={} synchronous={}", dbUrl, readerCount,
+				synchronousMode);
+	}
+
+	/**
+	 * 提供给DAO使用的代理连接，线程安全
+	 */
+	public Connection getConnection() {
+		return connectionProxy;
+	}
+
+	public ResultSet executeQuery(String sql, Map<Integer, Object> params) throws SQLException {
+		PooledConnection reader;
+		try {
+			reader = readers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("borrow sqlite read connection interrupted", e);
+		}
+		try {
+			PreparedStatement statement = reader.prepare(sql);
+			bind(statement, params);
+			ResultSet rs = statement.executeQuery();
+			try {
+				return materialize(rs);
+			} finally {
+				rs.close();
+			}
+		} finally {
+			readers.offer(reader);
+		}
+	}
+
+	public int executeUpdate(final String sql, final Map<Integer, Object> params) throws SQLException {
+		return submitWrite(new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				PreparedStatement statement = writer.prepare(sql);
+				bind(statement, params);
+				return statement.executeUpdate();
+			}
+		});
+	}
+
+	/**
+	 * 批量写入在一个事务中完成
+	 */
+	public int[] executeBatch(final String sql, final List<Map<Integer, Object>> batchParams) throws SQLException {
+		return submitWrite(new Callable<int[]>() {
+
+			@Override
+			public int[] call() throws Exception {
+				Connection conn = writer.connection;
+				PreparedStatement statement = writer.prepare(sql);
+				conn.setAutoCommit(false);
+				try {
+					for (Map<Integer, Object> params : batchParams) {
+						bind(statement, params);
+						statement.addBatch();
+					}
+					int[] results = statement.executeBatch();
+					conn.commit();
+					return results;
+				} catch (SQLException e) {
+					statement.clearBatch();
+					conn.rollback();
+					throw e;
+				} finally {
+					conn.setAutoCommit(true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 在写线程中执行任意写任务，供需要自行控制事务的场景使用
+	 */
+	public <T> T submitWrite(Callable<T> task) throws SQLException {
+		try {
+			return writerExecutor.submit(task).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("sqlite write interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("sqlite write error", e.getCause());
+		}
+	}
+
+	public Connection getWriterConnection() {
+		return writer.connection;
+	}
+
+	public PreparedStatement prepareWriterStatement(String sql) throws SQLException {
+		return writer.prepare(sql);
+	}
+
+	public void close() {
+		writerExecutor.shutdown();
+		writer.close();
+		for (PooledConnection reader : readers) {
+			reader.close();
+		}
+	}
+
+	private static void bind(PreparedStatement statement, Map<Integer, Object> params) throws SQLException {
+		statement.clearParameters();
+		for (Map.Entry<Integer, Object> param : params.entrySet()) {
+			int index = param.getKey();
+			Object value = param.getValue();
+			if (value == null) {
+				statement.setNull(index, Types.NULL);
+			} else if (value instanceof String) {
+				statement.setString(index, (String) value);
+			} else if (value instanceof Integer) {
+				statement.setInt(index, (Integer) value);
+			} else if (value instanceof Long) {
+				statement.setLong(index, (Long) value);
+			} else if (value instanceof Boolean) {
+				statement.setBoolean(index, (Boolean) value);
+			} else if (value instanceof Double) {
+				statement.setDouble(index, (Double) value);
+			} else if (value instanceof byte[]) {
+				statement.setBytes(index, (byte[]) value);
+			} else {
+				statement.setObject(index, value);
+			}
+		}
+	}
+
+	private static ResultSet materialize(ResultSet rs) throws SQLException {
+		ResultSetMetaData metaData = rs.getMetaData();
+		int columnCount = metaData.getColumnCount();
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = 1; i <= columnCount; i++) {
+			labels.put(metaData.getColumnLabel(i).toLowerCase(), i);
+		}
+		List<Object[]> rows = new ArrayList<Object[]>();
+		while (rs.next()) {
+			Object[] row = new Object[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				row[i] = rs.getObject(i + 1);
+			}
+			rows.add(row);
+		}
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				new ResultSetHandler(rows, labels));
+	}
+
+	/**
+	 * 物理连接以及该连接上的statement缓存，同一时刻只会被一个线程使用
+	 */
+	private static class PooledConnection {
+		private final Connection connection;
+		private final Map<String, PreparedStatement> statements;
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+			this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+					if (size() > STATEMENT_CACHE_SIZE) {
+						closeQuietly(eldest.getValue());
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement statement = statements.get(sql);
+			if (statement == null) {
+				statement = connection.prepareStatement(sql);
+				statements.put(sql, statement);
+			}
+			return statement;
+		}
+
+		void close() {
+			for (PreparedStatement statement : statements.values()) {
+				closeQuietly(statement);
+			}
+			statements.clear();
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				logger.error("close sqlite connection error", e);
+			}
+		}
+
+		private static void closeQuietly(PreparedStatement statement) {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				logger.error("close sqlite statement error", e);
+			}
+		}
+	}
+
+	private class ConnectionHandler implements InvocationHandler {
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("prepareStatement".equals(name) && args.length == 1) {
+				return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+						new Class<?>[] { PreparedStatement.class }, new StatementHandler((String) args[0]));
+			} else if ("close".equals(name)) {
+				return null;
+			} else if ("isClosed".equals(name)) {
+				return false;
+			} else if ("getAutoCommit".equals(name)) {
+				return true;
+			} else if ("toString".equals(name)) {
+				return "SQLiteConnectionPool$Connection";
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("equals".equals(name)) {
+				return proxy == args[0];
+			}
+			throw new SQLException("connection method not supported in pool mode: " + name);
+		}
+	}
+
+	/**
+	 * 记录参数，执行时再交给读连接池或写线程
+	 */
+	private class StatementHandler implements InvocationHandler {
+		private final String sql;
+		private Map<Integer, Object> params = new HashMap<Integer, Object>();
+		private List<Map<Integer, Object>> batchParams;
+
+		StatementHandler(String sql) {
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+				params.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+				return null;
+			} else if ("executeQuery".equals(name) && args == null) {
+				return executeQuery(sql, params);
+			} else if ("executeUpdate".equals(name) && args == null) {
+				return executeUpdate(sql, params);
+			} else if ("addBatch".equals(name) && args == null) {
+				if (batchParams == null) {
+					batchParams = new ArrayList<Map<Integer, Object>>();
+				}
+				batchParams.add(params);
+				params = new HashMap<Integer, Object>();
+				return null;
+			} else if ("executeBatch".equals(name)) {
+				if (batchParams == null) {
+					return new int[0];
+				}
+				List<Map<Integer, Object>> currentBatch = batchParams;
+				batchParams = null;
+				return executeBatch(sql, currentBatch);
+			} else if ("clearParameters".equals(name)) {
+				params.clear();
+				return null;
+			} else if ("clearBatch".equals(name)) {
+				batchParams = null;
+				return null;
+			} else if ("close".equals(name)) {
+				return null;
+			} else if ("isClosed".equals(name)) {
+				return false;
+			} else if ("toString".equals(name)) {
+				return sql;
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("equals".equals(name)) {
+				return proxy == args[0];
+			}
+			throw new SQLException("statement method not supported in pool mode: " + name);
+		}
+	}
+
+	/**
+	 * 已读入内存的结果集
+	 */
+	private static class ResultSetHandler implements InvocationHandler {
+		private final List<Object[]> rows;
+		private final Map<String, Integer> labels;
+		private int cursor = -1;
+		private boolean wasNull;
+
+		ResultSetHandler(List<Object[]> rows, Map<String, Integer> labels) {
+			this.rows = rows;
+			this.labels = labels;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("next".equals(name)) {
+				cursor++;
+				return cursor < rows.size();
+			} else if (name.startsWith("get") && args != null && args.length == 1) {
+				Object value = getValue(args[0]);
+				wasNull = value == null;
+				return convert(name, value);
+			} else if ("wasNull".equals(name)) {
+				return wasNull;
+			} else if ("close".equals(name)) {
+				return null;
+			} else if ("isClosed".equals(name)) {
+				return false;
+			} else if ("toString".equals(name)) {
+				return "rows=" + rows.size();
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			} else if ("equals".equals(name)) {
+				return proxy == args[0];
+			}
+			throw new SQLException("result set method not supported in pool mode: " + name);
+		}
+
+		private Object getValue(Object column) throws SQLException {
+			if (cursor < 0 || cursor >= rows.size()) {
+				throw new SQLException("result set cursor out of range");
+			}
+			int index;
+			if (column instanceof Integer) {
+				index = (Integer) column;
+			} else {
+				Integer labelIndex = labels.get(String.valueOf(column).toLowerCase());
+				if (labelIndex == null) {
+					throw new SQLException("no such column: " + column);
+				}
+				index = labelIndex;
+			}
+			return rows.get(cursor)[index - 1];
+		}
+
+		private Object convert(String getter, Object value) throws SQLException {
+			if ("getObject".equals(getter)) {
+				return value;
+			} else if ("getString".equals(getter)) {
+				if (value == null) {
+					return null;
+				}
+				return value instanceof byte[] ? new String((byte[]) value) : value.toString();
+			} else if ("getBytes".equals(getter)) {
+				if (value == null) {
+					return null;
+				}
+				return value instanceof byte[] ? value : value.toString().getBytes();
+			} else if ("getInt".equals(getter)) {
+				return toNumber(value).intValue();
+			} else if ("getLong".equals(getter)) {
+				return toNumber(value).longValue();
+			} else if ("getDouble".equals(getter)) {
+				return toNumber(value).doubleValue();
+			} else if ("getBoolean".equals(getter)) {
+				return toNumber(value).intValue() != 0;
+			}
+			throw new SQLException("getter not supported in pool mode: " + getter);
+		}
+
+		private Number toNumber(Object value) {
+			if (value == null) {
+				return 0;
+			} else if (value instanceof Number) {
+				return (Number) value;
+			}
+			try {
+				return Double.valueOf(value.toString());
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+	}
+}
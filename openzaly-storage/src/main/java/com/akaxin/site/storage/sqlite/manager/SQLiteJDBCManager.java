@@ -30,6 +30,7 @@ import com.akaxin.proto.core.ConfigProto;
 import com.akaxin.proto.core.PluginProto;
 import com.akaxin.proto.core.UicProto;
 import com.akaxin.site.storage.bean.UicBean;
+import com.akaxin.site.storage.sqlite.SQLiteGroupInboxDao;
 import com.akaxin.site.storage.sqlite.SQLiteSiteConfigDao;
 import com.akaxin.site.storage.sqlite.SQLiteUICDao;
 import com.akaxin.site.storage.sqlite.sql.SQLConst;
@@ -39,10 +40,12 @@ import com.akaxin.site.storage.sqlite.sql.SQLIndex;
  * <pre>
  * SQLite数据源连接管理
  * 		1.数据源加载
- * 		2.检测数据库中的表
+ * 		2.检测数据库中的表（旧表缺少的列自动添加）
  * 		3.初始化站点设置信息
  * 		4.添加后台管理扩展
  * 		5.设置初始管理员邀请码UIC
+ * 		6.pool模式下切换到WAL连接池（单写线程+只读连接池）
+ * 		7.inbox模式下inbox为空时重建群消息写扩散表
  * </pre>
  * 
  * @author Sam{@link an.guoyue254@gmail.com}
@@ -54,16 +57,78 @@ public class SQLiteJDBCManager {
 
 	private static String sqliteDriverName = "org.sqlite.JDBC";
 	private static Connection sqlitConnection = null;
+	private static volatile SQLiteConnectionPool connectionPool = null;
+	private static String sqliteDbUrl = null;
+	private static volatile boolean groupInboxMode = false;
 	private static final String checkTableSql = "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=? AND tbl_name=?;";
 	private static final String DB_FILE_PATH = "openzalyDB.sqlite3";
 
 	public static void initSqliteDB(DBConfigBean bean) {
 		loadDatabaseDriver(bean.getDbDir());
 		checkDatabaseTable();
+		checkDatabaseColumn();
 		checkDatabaseIndex();
 		initSiteConfig(bean.getConfigMap());
 		addSiteManagerPlugin(bean.getAdminServerName(), bean.getSiteServer(), bean.getAdminApi(), bean.getAdminIcon());
 		initAdminUic(bean.getAdminUic());
+		startConnectionPool(bean);
+		initGroupInbox(bean.getGroupStorage());
+	}
+
+	/**
+	 * inbox只在为空（新建或者上次以join模式运行）或者指定site.group.inbox.rebuild时重建，启动时间不随群消息总量增长
+	 */
+	private static void initGroupInbox(String groupStorage) {
+		if (!DBConfigBean.GROUP_STORAGE_INBOX.equalsIgnoreCase(groupStorage)) {
+			groupInboxMode = false;
+			try {
+				SQLiteGroupInboxDao.getInstance().dropFanOutTrigger();
+				int result = SQLiteGroupInboxDao.getInstance().clear();
+				logger.info("clear group inbox in join group storage, result={}", result);
+			} catch (SQLException e) {
+				logger.error("clear group inbox error.", e);
+			}
+			return;
+		}
+		try {
+			if (Boolean.getBoolean("site.group.inbox.rebuild") || SQLiteGroupInboxDao.getInstance().isEmpty()) {
+				int result = SQLiteGroupInboxDao.getInstance().rebuild();
+				logger.info("rebuild group inbox result={}", result);
+			}
+			// single模式由触发器在INSERT语句内扩散；pool模式在写线程的事务中扩散
+			if (connectionPool == null) {
+				SQLiteGroupInboxDao.getInstance().createFanOutTrigger();
+			} else {
+				SQLiteGroupInboxDao.getInstance().dropFanOutTrigger();
+			}
+			groupInboxMode = true;
+		} catch (SQLException e) {
+			logger.error("rebuild group inbox error, use join group storage.", e);
+			try {
+				SQLiteGroupInboxDao.getInstance().dropFanOutTrigger();
+			} catch (SQLException ex) {
+				logger.error("drop group inbox trigger error.", ex);
+			}
+		}
+	}
+
+	private static void startConnectionPool(DBConfigBean bean) {
+		if (!DBConfigBean.DB_MODE_POOL.equalsIgnoreCase(bean.getDbMode()) || sqliteDbUrl == null) {
+			return;
+		}
+		try {
+			// 切换WAL需要独占数据库文件，先关闭初始化使用的单连接
+			sqlitConnection.close();
+			connectionPool = new SQLiteConnectionPool(sqliteDbUrl, Math.max(1, bean.getDbReaders()),
+					bean.getDbSynchronous());
+		} catch (SQLException e) {
+			logger.error("start sqlite connection pool error, use single connection.", e);
+			try {
+				sqlitConnection = DriverManager.getConnection(sqliteDbUrl);
+			} catch (SQLException ex) {
+				logger.error("reload sqlite single connection error.", ex);
+			}
+		}
 	}
 
 	private static void loadDatabaseDriver(String dbDir) {
@@ -80,6 +145,7 @@ public class SQLiteJDBCManager {
 				dbUrl += "./" + DB_FILE_PATH;
 			}
 			logger.info("load data base connectionUrl={}", dbUrl);
+			sqliteDbUrl = dbUrl;
 			sqlitConnection = DriverManager.getConnection(dbUrl);
 		} catch (ClassNotFoundException e) {
 			logger.error("class not found.", e);
@@ -121,6 +187,35 @@ public class SQLiteJDBCManager {
 		}
 	}
 
+	private static void checkDatabaseColumn() {
+		for (String[] column : SQLConst.SITE_TABLE_COLUMNS) {
+			if (existColumn(column[0], column[1])) {
+				continue;
+			}
+			String sql = "ALTER TABLE " + column[0] + " ADD COLUMN " + column[1] + " " + column[2] + ";";
+			try {
+				sqlitConnection.prepareStatement(sql).executeUpdate();
+				logger.info("add table column sql={}", sql);
+			} catch (SQLException e) {
+				logger.error("add table column sql=" + sql + " error.", e);
+			}
+		}
+	}
+
+	private static boolean existColumn(String tableName, String columnName) {
+		try {
+			ResultSet rs = sqlitConnection.prepareStatement("PRAGMA table_info(" + tableName + ");").executeQuery();
+			while (rs.next()) {
+				if (columnName.equalsIgnoreCase(rs.getString("name"))) {
+					return true;
+				}
+			}
+		} catch (SQLException e) {
+			logger.error("check table column error.", e);
+		}
+		return false;
+	}
+
 	private static void checkDatabaseIndex() {
 		for (String indexSql : SQLIndex.DB_INDEXS_SQL) {
 			boolean result = createIndex(indexSql);
@@ -228,7 +323,21 @@ public class SQLiteJDBCManager {
 	}
 
 	public static Connection getConnection() {
+		if (connectionPool != null) {
+			return connectionPool.getConnection();
+		}
 		return sqlitConnection;
 	}
 
+	public static boolean isGroupInboxMode() {
+		return groupInboxMode;
+	}
+
+	/**
+	 * pool模式下返回连接池，single模式返回null
+	 */
+	public static SQLiteConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
 }
@@ -24,6 +24,8 @@ public interface SQLConst {
 	String SITE_USER_DEVICE = "site_user_device";
 	String SITE_PLUGIN_MANAGER = "site_plugin_manager";
 	String SITE_USER_UIC = "site_user_uic";// 用户邀请码存放信息表名称
+	String SITE_USER_GROUP_INBOX = "site_user_group_inbox";// 群消息写扩散，用户每个群的最新消息id
+	String SITE_FILE_REF = "site_file_ref";// 内容寻址存储的文件引用计数
 
 	String CREATE_SITE_CONFIG_INFO_TABLE = "CREATE TABLE IF NOT EXISTS " + SITE_CONFIG_INFO
 			+ "(id INTEGER primary key not null, config_key INTEGER UNIQUE NOT NULL, config_value TEXT);";
@@ -67,6 +69,15 @@ public interface SQLConst {
 	String CREATE_SITE_USER_UIC_TABLE = "CREATE TABLE IF NOT EXISTS " + SITE_USER_UIC
 			+ "(id INTEGER PRIMARY KEY NOT NULL,uic VARCHAR(10) UNIQUE NOT NULL,site_user_id VARCHAR(50),status INTEGER,create_time LONG,use_time LONG)";
 
+	String CREATE_SITE_USER_GROUP_INBOX_TABLE = "CREATE TABLE IF NOT EXISTS " + SITE_USER_GROUP_INBOX
+			+ "(id INTEGER PRIMARY KEY NOT NULL, site_user_id VARCHAR(50) NOT NULL, site_group_id VARCHAR(50) NOT NULL, last_msg_id INTEGER);";
+
+	String CREATE_SITE_FILE_REF_TABLE = "CREATE TABLE IF NOT EXISTS " + SITE_FILE_REF
+			+ "(id INTEGER PRIMARY KEY NOT NULL, file_id VARCHAR(100) UNIQUE NOT NULL, ref_count INTEGER, file_size LONG, file_type INTEGER DEFAULT 0, create_time LONG);";
+
+	// 已存在的表上后来增加的列：{表名, 列名, 列定义}，启动时缺少则ALTER TABLE添加
+	public String[][] SITE_TABLE_COLUMNS = { { SITE_FILE_REF, "file_type", "INTEGER DEFAULT 0" } };
+
 	public HashMap<String, String> SITE_TABLES_MAP = new HashMap<String, String>() {
 		//
 		private static final long serialVersionUID = 1L;
@@ -86,6 +97,8 @@ public interface SQLConst {
 			put(SITE_USER_DEVICE, CREATE_SITE_USER_DEVICE_TABLE);
 			put(SITE_PLUGIN_MANAGER, CREATE_SITE_PLUGIN_MANAGER_TABLE);
 			put(SITE_USER_UIC, CREATE_SITE_USER_UIC_TABLE);
+			put(SITE_USER_GROUP_INBOX, CREATE_SITE_USER_GROUP_INBOX_TABLE);
+			put(SITE_FILE_REF, CREATE_SITE_FILE_REF_TABLE);
 		}
 	};
 }
@@ -42,6 +42,8 @@ public interface SQLIndex {
 			+ INDEX_DEVICEID + ")";
 	public String DEVICE_INDEXSQL = "CREATE UNIQUE INDEX IF NOT EXISTS index_user_device ON "
 			+ SQLConst.SITE_USER_DEVICE + "(" + INDEX_SITEUSERID + "," + INDEX_DEVICEID + ")";
+	public String USER_GROUP_INBOX_INDEXSQL = "CREATE UNIQUE INDEX IF NOT EXISTS index_user_group_inbox ON "
+			+ SQLConst.SITE_USER_GROUP_INBOX + "(" + INDEX_SITEUSERID + "," + INDEX_SITEGROUPID + ")";
 
 	public List<String> DB_INDEXS_SQL = Arrays.asList(//
 			USER_PROFILE_SITEUSERID_INDEXSQL, //
@@ -55,5 +57,6 @@ public interface SQLIndex {
 			GROUP_PROFILE_INDEXSQL, //
 			GROUP_MESSAGE_INDEXSQL, //
 			GROUP_POINTER_INDEXSQL, //
-			DEVICE_INDEXSQL);
+			DEVICE_INDEXSQL, //
+			USER_GROUP_INBOX_INDEXSQL);
 }
@@ -0,0 +1,158 @@
+/** 
+ * Copyright 2018-2028 Akaxin Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package com.akaxin.site.storage.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.akaxin.site.storage.api.IMessageDao;
+import com.akaxin.site.storage.bean.GroupMessageBean;
+import com.akaxin.site.storage.bean.U2MessageBean;
+import com.akaxin.site.storage.service.MessageDaoService;
+import com.akaxin.site.storage.sqlite.manager.DBConfigBean;
+import com.akaxin.site.storage.sqlite.manager.SQLiteJDBCManager;
+
+/**
+ * <pre>
+ * 消息写入吞吐（messages/second），1/8/64个并发发送者，二人消息和群消息各一半
+ * 	两组对比都使用pool模式（WAL），journal和synchronous相同，只比较是否组提交：
+ * 		row   : site.message.batch.size=1，每条消息单独一个事务
+ * 		batch : 组提交（默认site.message.batch.size），每条消息在调用返回时已经提交
+ * 	synchronous分别使用full和normal各跑一遍；每组在独立的JVM中运行（batch.size在类加载时读取）
+ * 	(JMH不在构建依赖中，这里使用main方法直接运行)
+ * 
+ * java -cp target/classes:target/test-classes:... com.akaxin.site.storage.test.MessageBatchBenchmark [dir]
+ * </pre>
+ */
+public class MessageBatchBenchmark {
+	private static final int[] SENDERS = { 1, 8, 64 };
+	private static final int MESSAGES_PER_ROUND = 4000;
+	private static final String[] SYNCHRONOUS = { DBConfigBean.DB_SYNCHRONOUS_FULL,
+			DBConfigBean.DB_SYNCHRONOUS_NORMAL };
+
+	public static void main(String[] args) throws Exception {
+		String baseDir = args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir") + "/openzaly-bench";
+		if (args.length > 2) {
+			// 子进程：args = dir, synchronous, label
+			initDatabase(baseDir, args[1]);
+			runRounds(args[2]);
+			System.exit(0);
+		}
+		for (String synchronous : SYNCHRONOUS) {
+			runArm(baseDir + "/row-" + synchronous, synchronous, "1", "row   sync=" + synchronous);
+			runArm(baseDir + "/batch-" + synchronous, synchronous, null, "batch sync=" + synchronous);
+		}
+	}
+
+	private static void runArm(String dbDir, String synchronous, String batchSize, String label) throws Exception {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + "/bin/java");
+		if (batchSize != null) {
+			command.add("-Dsite.message.batch.size=" + batchSize);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(MessageBatchBenchmark.class.getName());
+		command.add(dbDir);
+		command.add(synchronous);
+		command.add(label);
+		new ProcessBuilder(command).inheritIO().start().waitFor();
+	}
+
+	private static void initDatabase(String dbDir, String synchronous) {
+		File dir = new File(dbDir);
+		dir.mkdirs();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		DBConfigBean bean = new DBConfigBean();
+		bean.setDbDir(dbDir);
+		bean.setDbMode(DBConfigBean.DB_MODE_POOL);
+		bean.setDbSynchronous(synchronous);
+		bean.setAdminAddress("127.0.0.1");
+		bean.setAdminPort(8288);
+		bean.setAdminServerName("bench");
+		bean.setAdminUic("000000");
+		bean.setConfigMap(new HashMap<Integer, String>());
+		SQLiteJDBCManager.initSqliteDB(bean);
+	}
+
+	private static void runRounds(String mode) throws Exception {
+		// 预热
+		run(8, MESSAGES_PER_ROUND / 4);
+		for (int senders : SENDERS) {
+			long start = System.nanoTime();
+			long saved = run(senders, MESSAGES_PER_ROUND);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("%-17s senders=%-3d messages=%d %10.0f msg/s", mode, senders, saved,
+					saved / seconds));
+		}
+	}
+
+	private static long run(int senders, int messages) throws InterruptedException {
+		final IMessageDao messageDao = new MessageDaoService();
+		final AtomicLong saved = new AtomicLong();
+		final int perSender = messages / senders;
+		final CountDownLatch done = new CountDownLatch(senders);
+		for (int i = 0; i < senders; i++) {
+			final String sender = "bench-user-" + i;
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < perSender; j++) {
+							boolean result;
+							if (j % 2 == 0) {
+								U2MessageBean u2Bean = new U2MessageBean();
+								u2Bean.setMsgId(sender + "-" + System.nanoTime());
+								u2Bean.setMsgType(1);
+								u2Bean.setSendUserId(sender);
+								u2Bean.setSiteUserId("bench-friend");
+								u2Bean.setContent("hello openzaly " + j);
+								u2Bean.setMsgTime(System.currentTimeMillis());
+								result = messageDao.saveU2Message(u2Bean);
+							} else {
+								GroupMessageBean gmsgBean = new GroupMessageBean();
+								gmsgBean.setMsgId(sender + "-" + System.nanoTime());
+								gmsgBean.setMsgType(4);
+								gmsgBean.setSendUserId(sender);
+								gmsgBean.setSendDeviceId("bench-device");
+								gmsgBean.setSiteGroupId("bench-group");
+								gmsgBean.setContent("hello group " + j);
+								gmsgBean.setMsgTime(System.currentTimeMillis());
+								result = messageDao.saveGroupMessage(gmsgBean);
+							}
+							if (result) {
+								saved.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		done.await();
+		return saved.get();
+	}
+}